@@ -0,0 +1,51 @@
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.util.AsciiString;
+import router.Router;
+
+
+/**
+ * 示例路由，启动时构建一次，所有连接共享。没有匹配的请求仍由 HttpServletHandler 处理。
+ */
+public final class ApiRoutes {
+
+    private static final AsciiString TEXT_PLAIN_UTF_8 = AsciiString.cached("text/plain; charset=UTF-8");
+
+    private ApiRoutes() {
+    }
+
+    public static Router create() {
+        return new Router()
+                .get("/health", (ctx, request, match) -> text(ctx, HttpResponseStatus.OK, "OK"))
+                .get("/hello/:name", (ctx, request, match) ->
+                        text(ctx, HttpResponseStatus.OK, "Hello, " + match.param("name")))
+                .get("/users/:id", (ctx, request, match) -> {
+                    long id = match.paramAsLong("id", -1);
+                    if (id < 0) {
+                        return text(ctx, HttpResponseStatus.BAD_REQUEST, "Invalid user id");
+                    }
+                    return text(ctx, HttpResponseStatus.OK, "User " + id);
+                })
+                .get("/users/:id/orders/:orderId", (ctx, request, match) ->
+                        text(ctx, HttpResponseStatus.OK, "User " + match.param("id") + ", order " + match.param("orderId")))
+                .delete("/users/:id", (ctx, request, match) ->
+                        text(ctx, HttpResponseStatus.OK, "Deleted user " + match.param("id")));
+    }
+
+    private static FullHttpResponse text(ChannelHandlerContext ctx, HttpResponseStatus status, String message) {
+        ByteBuf content = ctx.alloc().directBuffer(ByteBufUtil.utf8MaxBytes(message) + 2);
+        ByteBufUtil.writeUtf8(content, message);
+        content.writeByte('\r').writeByte('\n');
+        FullHttpResponse response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, status, content, false);
+        response.headers()
+                .set(HttpHeaderNames.CONTENT_TYPE, TEXT_PLAIN_UTF_8)
+                .setInt(HttpHeaderNames.CONTENT_LENGTH, content.readableBytes());
+        return response;
+    }
+}
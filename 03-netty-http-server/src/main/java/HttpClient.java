@@ -1,56 +1,171 @@
 import io.netty.bootstrap.Bootstrap;
-import io.netty.buffer.Unpooled;
-import io.netty.channel.ChannelFuture;
+import io.netty.channel.Channel;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelOption;
 import io.netty.channel.EventLoopGroup;
-import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.SocketChannel;
-import io.netty.channel.socket.nio.NioSocketChannel;
 import io.netty.handler.codec.http.*;
-import io.netty.util.CharsetUtil;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import transport.Transport;
 
-import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
 
+/**
+ * HTTP 压测客户端，可以在没有外部压测工具的机器上对 HttpServer 做容量测试。
+ *
+ * 启动 connections 个长连接组成连接池，每个连接上最多同时有 depth 个 pipelining 请求：
+ * - 闭环模式（rate = 0）：每收到一个响应立刻发送下一个请求，测的是最大吞吐。
+ * - 开环模式（rate > 0）：按固定速率发送请求，不受响应快慢影响。延迟从“计划发送时间”开始计算，
+ *   连接上请求已满时在本地排队，排队时间也计入延迟，避免 coordinated omission 导致延迟被低估。
+ *
+ * 延迟使用 HdrHistogram 统计，结束时输出各分位数。
+ *
+ * 服务端默认开启准入控制（AdmissionControl），压测前确认它不会干扰结果：
+ * 所有连接来自同一个地址，设置了 -Dadmission.maxConnectionsPerAddress 时 connections 不能超过它；
+ * -Dadmission.requestsPerSecond 按地址限速，超出的请求返回 429；EventLoop 延迟超过 -Dadmission.lagTargetMillis 时
+ * 开始返回 503。非 2xx 响应都计入 errors，只测服务端容量时可以用 -Dadmission.enabled=false 关闭。
+ *
+ * 用法：HttpClient [-h host] [-P port] [-u uri] [-c connections] [-p depth] [-r rate] [-d seconds] [-w seconds]
+ */
 public class HttpClient {
 
-    public void connect(String host, int port) throws Exception{
-        EventLoopGroup group = new NioEventLoopGroup();
+    private final Options options;
+    private final Recorder recorder = new Recorder(3);
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+
+    public HttpClient(Options options) {
+        this.options = options;
+    }
+
+    public void run() throws Exception{
+        Transport transport = Transport.select();
+        EventLoopGroup group = transport.newWorkerGroup();
         try {
+            // 所有连接共用同一个请求头，不携带请求体
+            HttpHeaders headers = new DefaultHttpHeaders()
+                    .set(HttpHeaderNames.HOST,options.host)
+                    .set(HttpHeaderNames.CONNECTION,HttpHeaderValues.KEEP_ALIVE)
+                    .set(HttpHeaderNames.CONTENT_LENGTH,0);
+
+            long startNanos = System.nanoTime();
+            final long warmupEndNanos = startNanos + TimeUnit.SECONDS.toNanos(options.warmupSeconds);
+            final long deadlineNanos = warmupEndNanos + TimeUnit.SECONDS.toNanos(options.durationSeconds);
+            // 开环模式下总速率平均分配到每个连接上
+            final long intervalNanos = options.rate > 0 ? TimeUnit.SECONDS.toNanos(options.connections) / options.rate : 0;
+
             Bootstrap b = new Bootstrap();
             b.group(group)
-                    .channel(NioSocketChannel.class)
+                    .channel(transport.socketChannelClass())
                     .option(ChannelOption.SO_KEEPALIVE,true)
+                    .option(ChannelOption.TCP_NODELAY,true)
                     .handler(new ChannelInitializer<SocketChannel>() {
                         @Override
                         protected void initChannel(SocketChannel socketChannel) throws Exception {
                             socketChannel.pipeline()
                                     .addLast(new HttpResponseDecoder())
                                     .addLast(new HttpRequestEncoder())
-                                    .addLast(new HttpClientHandler());
+                                    .addLast(new HttpClientHandler(options.uri, headers, options.depth,
+                                            intervalNanos, deadlineNanos, recorder, completed, errors));
                         }
                     });
 
-            ChannelFuture f = b.connect(host, port).sync();
-            URI uri = new URI("http://127.0.0.1:8088");
-            String content = "hello world";
-            DefaultFullHttpRequest request = new DefaultFullHttpRequest(
-                    HttpVersion.HTTP_1_1, HttpMethod.GET, uri.toASCIIString(),
-                    Unpooled.wrappedBuffer(content.getBytes(CharsetUtil.UTF_8))
-            );
-            request.headers().set(HttpHeaderNames.HOST,host)
-                    .set(HttpHeaderNames.CONNECTION,HttpHeaderValues.KEEP_ALIVE)
-                    .set(HttpHeaderNames.CONTENT_LENGTH,request.content().readableBytes());
+            List<Channel> channels = new ArrayList<Channel>(options.connections);
+            for (int i = 0; i < options.connections; i++) {
+                channels.add(b.connect(options.host, options.port).sync().channel());
+            }
+            System.out.println("Connected " + options.connections + " connections to " + options.host + ":" + options.port
+                    + ", depth: " + options.depth + ", rate: " + (options.rate > 0 ? options.rate + " req/s" : "closed loop"));
 
-            f.channel().writeAndFlush(request);
-            f.channel().closeFuture().sync();
+            if (options.warmupSeconds > 0) {
+                TimeUnit.NANOSECONDS.sleep(warmupEndNanos - System.nanoTime());
+                // 丢弃预热阶段的统计
+                recorder.reset();
+                completed.reset();
+                errors.reset();
+            }
+            long measureStartNanos = System.nanoTime();
+            // 到达压测时长后，每个连接发完积压的请求、等待剩余响应返回再自行关闭
+            for (Channel channel : channels) {
+                channel.closeFuture().sync();
+            }
+            report(recorder.getIntervalHistogram(), System.nanoTime() - measureStartNanos);
         }finally {
             group.shutdownGracefully();
         }
     }
 
+    private void report(Histogram histogram, long elapsedNanos) {
+        double seconds = elapsedNanos / 1e9;
+        System.out.printf("Requests: %d, errors: %d, duration: %.2f s, throughput: %.1f req/s%n",
+                completed.sum(), errors.sum(), seconds, completed.sum() / seconds);
+        System.out.printf("Latency (us): min %d, p50 %d, p90 %d, p99 %d, p99.9 %d, p99.99 %d, max %d, mean %.1f%n",
+                histogram.getMinValue(),
+                histogram.getValueAtPercentile(50),
+                histogram.getValueAtPercentile(90),
+                histogram.getValueAtPercentile(99),
+                histogram.getValueAtPercentile(99.9),
+                histogram.getValueAtPercentile(99.99),
+                histogram.getMaxValue(),
+                histogram.getMean());
+    }
+
     public static void main(String[] args) throws Exception {
-        new HttpClient().connect("127.0.0.1",8088);
+        new HttpClient(Options.parse(args)).run();
+    }
+
+    static final class Options {
+        String host = "127.0.0.1";
+        int port = 8088;
+        String uri = "/";
+        int connections = 4;
+        int depth = 1;
+        int rate;
+        int durationSeconds = 10;
+        int warmupSeconds;
+
+        static Options parse(String[] args) {
+            Options options = new Options();
+            for (int i = 0; i < args.length; i++) {
+                String name = args[i];
+                if (i + 1 >= args.length) {
+                    throw new IllegalArgumentException("missing value for " + name);
+                }
+                String value = args[++i];
+                if ("-h".equals(name)) {
+                    options.host = value;
+                } else if ("-P".equals(name)) {
+                    options.port = Integer.parseInt(value);
+                } else if ("-u".equals(name)) {
+                    options.uri = value;
+                } else if ("-c".equals(name)) {
+                    options.connections = positive(name, value);
+                } else if ("-p".equals(name)) {
+                    options.depth = positive(name, value);
+                } else if ("-r".equals(name)) {
+                    options.rate = Integer.parseInt(value);
+                } else if ("-d".equals(name)) {
+                    options.durationSeconds = positive(name, value);
+                } else if ("-w".equals(name)) {
+                    options.warmupSeconds = Integer.parseInt(value);
+                } else {
+                    throw new IllegalArgumentException("unknown option: " + name);
+                }
+            }
+            return options;
+        }
+
+        private static int positive(String name, String value) {
+            int n = Integer.parseInt(value);
+            if (n <= 0) {
+                throw new IllegalArgumentException(name + ": " + n + " (expected: > 0)");
+            }
+            return n;
+        }
     }
 }
@@ -1,21 +1,175 @@
 
-import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInboundHandlerAdapter;
-import io.netty.handler.codec.http.HttpContent;
-import io.netty.util.CharsetUtil;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.EmptyHttpHeaders;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpStatusClass;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http.LastHttpContent;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.concurrent.ScheduledFuture;
+import org.HdrHistogram.Recorder;
 
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
 
+/**
+ * 单个压测连接：维护已发送未响应的请求，收到完整响应后记录延迟并补发请求。
+ * 所有状态只在连接所属的 EventLoop 中访问，不需要加锁。
+ */
 public class HttpClientHandler extends ChannelInboundHandlerAdapter {
 
+    // 开环模式下定时任务的最小间隔，速率很高时一次补发多个到期的请求
+    private static final long MIN_TICK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+    private final String uri;
+    private final HttpHeaders headers;
+    private final int depth;
+    private final long intervalNanos;
+    private final long deadlineNanos;
+    private final Recorder recorder;
+    private final LongAdder completed;
+    private final LongAdder errors;
+
+    // 已发送请求的计划发送时间，响应按顺序返回，与队列一一对应
+    private final ArrayDeque<Long> inFlight = new ArrayDeque<Long>();
+    // 开环模式下已经到期但连接上请求已满、还没发出的请求。
+    // 到达截止时间后继续随响应补发直到清空，延迟从计划发送时间算起，不能丢弃（否则会漏掉最慢的请求）
+    private final ArrayDeque<Long> backlog = new ArrayDeque<Long>();
+    private long nextIntendedNanos;
+    private ScheduledFuture<?> ticker;
+    private boolean failed;
+
+    public HttpClientHandler(String uri, HttpHeaders headers, int depth, long intervalNanos, long deadlineNanos,
+                             Recorder recorder, LongAdder completed, LongAdder errors) {
+        this.uri = uri;
+        this.headers = headers;
+        this.depth = depth;
+        this.intervalNanos = intervalNanos;
+        this.deadlineNanos = deadlineNanos;
+        this.recorder = recorder;
+        this.completed = completed;
+        this.errors = errors;
+    }
+
+    @Override
+    public void channelActive(final ChannelHandlerContext ctx) throws Exception {
+        if (intervalNanos > 0) {
+            nextIntendedNanos = System.nanoTime();
+            ticker = ctx.executor().scheduleAtFixedRate(new Runnable() {
+                @Override
+                public void run() {
+                    tick(ctx);
+                }
+            }, 0, Math.max(intervalNanos, MIN_TICK_NANOS), TimeUnit.NANOSECONDS);
+        } else {
+            long now = System.nanoTime();
+            for (int i = 0; i < depth; i++) {
+                send(ctx, now);
+            }
+            ctx.flush();
+        }
+        ctx.fireChannelActive();
+    }
+
     @Override
     public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
-        if(msg instanceof HttpContent){
-            HttpContent context = (HttpContent)msg;
-            ByteBuf buf = context.content();
-            System.out.println(buf.toString(CharsetUtil.UTF_8));
-            buf.release();
+        try {
+            if (msg instanceof HttpResponse
+                    && ((HttpResponse) msg).status().codeClass() != HttpStatusClass.SUCCESS) {
+                failed = true;
+            }
+            if (msg instanceof LastHttpContent) {
+                responseCompleted(ctx);
+            }
+        } finally {
+            ReferenceCountUtil.release(msg);
+        }
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        if (ticker != null) {
+            ticker.cancel(false);
+        }
+        // 连接被服务端提前关闭，未完成的请求都算失败
+        errors.add(inFlight.size() + backlog.size());
+        inFlight.clear();
+        backlog.clear();
+        ctx.fireChannelInactive();
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception {
+        System.out.println("Connection error: " + cause);
+        ctx.close();
+    }
+
+    private void responseCompleted(ChannelHandlerContext ctx) {
+        Long intended = inFlight.poll();
+        if (intended == null) {
+            return;
+        }
+        long now = System.nanoTime();
+        recorder.recordValue(TimeUnit.NANOSECONDS.toMicros(now - intended));
+        if (failed) {
+            errors.increment();
+            failed = false;
+        } else {
+            completed.increment();
+        }
+
+        if (intervalNanos > 0) {
+            Long next = backlog.poll();
+            if (next != null) {
+                send(ctx, next);
+                ctx.flush();
+            }
+        } else if (now < deadlineNanos) {
+            send(ctx, now);
+            ctx.flush();
+        }
+        closeIfFinished(ctx, now);
+    }
+
+    private void tick(ChannelHandlerContext ctx) {
+        long now = System.nanoTime();
+        boolean sent = false;
+        // 截止时间之前计划的请求都要发出，截止时间之后不再产生新的请求
+        while (nextIntendedNanos <= now && nextIntendedNanos < deadlineNanos) {
+            if (inFlight.size() < depth) {
+                send(ctx, nextIntendedNanos);
+                sent = true;
+            } else {
+                backlog.add(nextIntendedNanos);
+            }
+            nextIntendedNanos += intervalNanos;
+        }
+        if (sent) {
+            ctx.flush();
+        }
+        if (now >= deadlineNanos) {
+            ticker.cancel(false);
+            closeIfFinished(ctx, now);
+        }
+    }
+
+    private void send(ChannelHandlerContext ctx, long intendedNanos) {
+        inFlight.add(intendedNanos);
+        // 共用请求头，不需要为每个请求复制 HttpHeaders
+        ctx.write(new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, uri,
+                Unpooled.EMPTY_BUFFER, headers, EmptyHttpHeaders.INSTANCE), ctx.voidPromise());
+    }
+
+    private void closeIfFinished(ChannelHandlerContext ctx, long now) {
+        if (now >= deadlineNanos && inFlight.isEmpty() && backlog.isEmpty()) {
+            ctx.close();
         }
     }
 }
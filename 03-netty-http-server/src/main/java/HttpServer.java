@@ -1,20 +1,66 @@
+import admission.AdmissionControl;
+import admission.HttpAdmissionHandler;
+import backpressure.BackPressureHandler;
+import backpressure.BackPressureMetrics;
+import cache.ResponseCache;
+import cache.ResponseCacheHandler;
+import compression.AdaptiveHttpContentCompressor;
+import flush.FlushConsolidation;
+import flush.FlushMetricsHandler;
+import http2.Http2Alpn;
+import http2.Http2Cleartext;
 import io.netty.bootstrap.ServerBootstrap;
-import io.netty.channel.ChannelFuture;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelOption;
 import io.netty.channel.EventLoopGroup;
-import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.group.ChannelGroup;
 import io.netty.channel.socket.SocketChannel;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
-import io.netty.handler.codec.http.HttpContentCompressor;
-import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpRequest;
 import io.netty.handler.codec.http.HttpServerCodec;
+import io.netty.handler.codec.http2.Http2StreamFrameToHttpObjectCodec;
+import io.netty.handler.ssl.ApplicationProtocolNames;
+import io.netty.handler.stream.ChunkedWriteHandler;
+import io.netty.handler.timeout.IdleStateHandler;
+import io.netty.util.internal.SystemPropertyUtil;
+import offload.BusinessExecutor;
+import pipelining.HttpPipeliningHandler;
+import router.RouterHandler;
+import ssl.SslTermination;
+import staticfile.FileCache;
+import staticfile.StaticFileHandler;
+import streaming.SelectiveHttpObjectAggregator;
+import transport.Transport;
 
 import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
 
 
 public class HttpServer {
 
+    // 空闲连接的回收时间，超过这个时间没有任何读写的长连接会被关闭
+    private static final int IDLE_TIMEOUT_SECONDS = SystemPropertyUtil.getInt("http.idleTimeoutSeconds", 60);
+    // 单个连接上允许排队的 pipelining 请求数，超过后暂停读取
+    private static final int MAX_PIPELINED_REQUESTS = SystemPropertyUtil.getInt("http.maxPipelinedRequests", 16);
+    // 聚合的请求体上限，流式上传不受这个限制
+    private static final int MAX_CONTENT_LENGTH = SystemPropertyUtil.getInt("http.maxContentLength", 65535);
+    // 流式上传 /upload，没有鉴权，默认关闭；临时文件的目录和单个请求的大小上限
+    private static final boolean UPLOAD_ENABLED = SystemPropertyUtil.getBoolean("upload.enabled", false);
+    private static final Path UPLOAD_DIR = Paths.get(SystemPropertyUtil.get("upload.dir",
+            System.getProperty("java.io.tmpdir") + "/netty-study-uploads"));
+    private static final long MAX_UPLOAD_BYTES = SystemPropertyUtil.getLong("upload.maxBytes", 16 * 1024 * 1024);
+    // 静态文件目录，通过 /static/ 访问
+    private static final Path STATIC_ROOT = Paths.get(SystemPropertyUtil.get("static.root", "static"));
+    // 缓存的文件描述符数量和空闲关闭时间
+    private static final int STATIC_MAX_OPEN_FILES = SystemPropertyUtil.getInt("static.maxOpenFiles", 256);
+    private static final int STATIC_FD_IDLE_SECONDS = SystemPropertyUtil.getInt("static.fdIdleSeconds", 60);
+    // 同一端口上支持 h2c（Upgrade 和 prior knowledge），关闭时只有 HTTP/1.1
+    private static final boolean HTTP2_ENABLED = SystemPropertyUtil.getBoolean("http2.enabled", true);
+
     public void start(int port) throws Exception{
         /**
          * NioEventLoopGroup 可以设置参数，，表示不同的线程模式
@@ -25,51 +71,177 @@ public class HttpServer {
          * 它们分别使用不同的 NioEventLoopGroup，主 Reactor 负责处理 Accept，然后把 Channel 注册到从 Reactor 上，
          * 从 Reactor 主要负责 Channel 生命周期内的所有 I/O 事件。
          */
-        EventLoopGroup boosGroup = new NioEventLoopGroup();
-        EventLoopGroup workerGroup = new NioEventLoopGroup();
+        // Linux 下自动选择 Epoll，其他环境退回 NIO
+        Transport transport = Transport.select();
+        EventLoopGroup boosGroup = transport.newBossGroup();
+        EventLoopGroup workerGroup = transport.newWorkerGroup();
+        // 准入控制：连接数上限、按客户端限速和 EventLoop 过载时丢弃请求，统计可以通过 JMX 查看
+        final AdmissionControl admission = AdmissionControl.fromProperties("http", workerGroup);
+        // 业务线程池，可能阻塞的业务逻辑不在 EventLoop 中执行
+        final BusinessExecutor businessExecutor = BusinessExecutor.fromProperties("business");
+        // 所有连接共用打开的文件描述符
+        final FileCache fileCache = new FileCache(STATIC_MAX_OPEN_FILES, STATIC_FD_IDLE_SECONDS, TimeUnit.SECONDS);
+        // 所有连接共用的 flush 统计，writesPerFlush 可以通过 JMX 查看
+        final FlushMetricsHandler flushMetrics = FlushConsolidation.newMetrics("http");
+        // 所有连接共用的背压统计，慢连接等待写出的字节数可以通过 JMX 查看
+        final BackPressureMetrics backPressure = BackPressureMetrics.create("http");
+        // 路由表启动时构建一次，所有连接共享
+        final RouterHandler router = new RouterHandler(ApiRoutes.create(), businessExecutor);
+        // 所有连接共用的响应缓存，命中率可以通过 JMX 查看，responseCache.maxBytes=0 时关闭
+        final ResponseCache responseCache = ResponseCache.fromProperties("http");
+        // HTTP/2 每个 stream 是一个子 Channel，转换成 HttpObject 之后复用 HTTP/1 的 Handler。
+        // stream 之间互不阻塞，不需要 pipelining；空闲检测在连接上，见 Http2Activation
+        final ChannelHandler streamInitializer = new StreamInitializer(fileCache, businessExecutor, responseCache, router,
+                admission);
+        final SslTermination ssl = HTTP2_ENABLED
+                ? SslTermination.fromProperties("http", ApplicationProtocolNames.HTTP_2, ApplicationProtocolNames.HTTP_1_1)
+                : SslTermination.fromProperties("http");
         try {
             ServerBootstrap b = new ServerBootstrap();
             b.group(boosGroup,workerGroup)
                     // 设置channel类型，netty推荐服务端使用NioServerSocketChannel，客户端采用NioSocketChannel。
                     // 也可以使用其他的，比如OioServerSocketChannel或者EpollServerSocketChannel等.
-                    .channel(NioServerSocketChannel.class)
+                    // 这里由 Transport 根据运行环境选择 EpollServerSocketChannel 或 NioServerSocketChannel
+                    .channel(transport.serverChannelClass())
                     .localAddress(new InetSocketAddress(port))
                     // 注册 ChannelHandler，可以使用pipeline注册多个ChannelHandler
                     .childHandler(new ChannelInitializer<SocketChannel>() {
                         @Override
                         protected void initChannel(SocketChannel socketChannel) throws Exception {
+                            // flush 合并，一次读循环内的多个响应合并成一次系统调用
+                            FlushConsolidation.addFirst(socketChannel.pipeline(), flushMetrics, businessExecutor != null);
+                            // 出站缓冲区超过高水位时暂停读取，长时间不可写的慢连接直接关闭
+                            socketChannel.pipeline().addLast("backPressure", new BackPressureHandler(backPressure));
                             // Channel初始化的时候会绑定一个pipeline用于服务编排。
                             // IO事件会依次在ChannelHandler中传播，入正向传播，出反向传播
+                            if (ssl != null) {
+                                ssl.addLast(socketChannel.pipeline());
+                            }
+                            // http编解码，开启 HTTP/2 时明文连接在收到 h2c 升级请求或者连接前言后切换成 HTTP/2，
+                            // TLS 连接按 ALPN 的协商结果选择
+                            socketChannel.pipeline().addLast("codec", !HTTP2_ENABLED ? new HttpServerCodec()
+                                    : ssl != null ? Http2Alpn.newHandler(IDLE_TIMEOUT_SECONDS, streamInitializer)
+                                    : Http2Cleartext.newHandler(MAX_CONTENT_LENGTH, IDLE_TIMEOUT_SECONDS, streamInitializer));
+                            socketChannel.pipeline()
+                                    // 空闲检测，配合 HttpPipeliningHandler 回收空闲长连接。
+                                    // observeOutput：大文件还在发送时也算活跃，不会被当成空闲连接
+                                    .addLast("idle",new IdleStateHandler(true,0,0,IDLE_TIMEOUT_SECONDS,TimeUnit.SECONDS))
+                                    // HttpContent 压缩，按大小、内容类型和 CPU 预算决定是否压缩
+                                    .addLast("compressor",new AdaptiveHttpContentCompressor())
+                                    // 长连接 & pipelining，保证同一连接上的响应顺序
+                                    .addLast("pipelining",new HttpPipeliningHandler(MAX_PIPELINED_REQUESTS));
+                            if (admission != null) {
+                                // 过载（503）和超过速率限制（429）的请求在聚合请求体之前拒绝
+                                socketChannel.pipeline().addLast("admission",new HttpAdmissionHandler(admission));
+                            }
                             socketChannel.pipeline()
-                                    // http编解码
-                                    .addLast("codec",new HttpServerCodec())
-                                    // HttpContent 压缩
-                                    .addLast("compressor",new HttpContentCompressor())
-                                    // HTTP 消息聚合
-                                    .addLast("aggregator",new HttpObjectAggregator(65535))
+                                    // HTTP 消息聚合，上传请求不聚合，交给 upload 流式处理
+                                    .addLast("aggregator",new SelectiveHttpObjectAggregator(MAX_CONTENT_LENGTH,
+                                            request -> !isUpload(request)))
+                                    // 分块写出 ChunkedInput（TLS 下的静态文件），需要在 pipelining 之后
+                                    .addLast("chunked",new ChunkedWriteHandler())
+                                    // 静态文件，明文连接使用 sendfile 零拷贝，stat / open 在业务线程池中执行
+                                    .addLast("static",new StaticFileHandler("/static/", STATIC_ROOT, fileCache, businessExecutor));
+                            if (UPLOAD_ENABLED) {
+                                // 流式上传，请求体边读边写入文件
+                                socketChannel.pipeline().addLast("upload",
+                                        new HttpUploadHandler(businessExecutor, UPLOAD_DIR, MAX_UPLOAD_BYTES));
+                            }
+                            if (responseCache != null) {
+                                // 响应缓存，命中时直接返回，请求不再经过路由和业务逻辑
+                                socketChannel.pipeline().addLast("cache",new ResponseCacheHandler(responseCache));
+                            }
+                            socketChannel.pipeline()
+                                    // 按方法和路径分发到注册的路由，没有匹配的路由时交给 handler
+                                    .addLast("router",router)
                                     // 自定义业务逻辑处理器
-                                    .addLast("handler",new HttpServletHandler());
+                                    .addLast("handler",new HttpServletHandler(businessExecutor));
                         }
                     })
                     // 设Channel参数，option方法用于给bossGroup设置参数，childOption用于给workerGroup设置参数
-                    .childOption(ChannelOption.SO_KEEPALIVE,true);
+                    .childOption(ChannelOption.SO_KEEPALIVE,true)
+                    // 出站缓冲区高低水位，决定 Channel 何时变为不可写
+                    .childOption(ChannelOption.WRITE_BUFFER_WATER_MARK, BackPressureHandler.WATER_MARK);
+
+            if (admission != null) {
+                // ServerChannel 上检查连接数，超过上限的连接在注册到 Worker 之前关闭
+                b.handler(admission.connectionLimiter());
+            }
 
-            ChannelFuture f = b
-                    // 端口绑定，正真触发启动
-                    .bind()
-                    // 阻塞，直到整个启动过程完成。
-                    .sync();
+            // 端口绑定，正真触发启动，阻塞直到整个启动过程完成。开启 SO_REUSEPORT 时同一端口会绑定多个 ServerChannel
+            ChannelGroup serverChannels = transport.bind(b);
             System.out.println("Http Server started, Listening on " + port);
             // 保让线程进入wait状态，保持服务端一直处于运行状态
-            f.channel().closeFuture().sync();
+            serverChannels.newCloseFuture().sync();
         }finally {
             // 关闭连接
             workerGroup.shutdownGracefully();
             boosGroup.shutdownGracefully();
+            if (businessExecutor != null) {
+                businessExecutor.shutdownGracefully();
+            }
+            if (responseCache != null) {
+                responseCache.clear();
+            }
+            if (ssl != null) {
+                ssl.shutdown();
+            }
         }
     }
 
 
+    /**
+     * HTTP/2 stream 子 Channel 的初始化器，所有连接共用
+     */
+    @ChannelHandler.Sharable
+    private static final class StreamInitializer extends ChannelInitializer<Channel> {
+
+        private final FileCache fileCache;
+        private final BusinessExecutor businessExecutor;
+        private final ResponseCache responseCache;
+        private final RouterHandler router;
+        private final AdmissionControl admission;
+
+        StreamInitializer(FileCache fileCache, BusinessExecutor businessExecutor, ResponseCache responseCache,
+                          RouterHandler router, AdmissionControl admission) {
+            this.fileCache = fileCache;
+            this.businessExecutor = businessExecutor;
+            this.responseCache = responseCache;
+            this.router = router;
+            this.admission = admission;
+        }
+
+        @Override
+        protected void initChannel(Channel channel) throws Exception {
+            channel.pipeline()
+                    // HEADERS / DATA 帧和 HttpRequest / HttpContent / HttpResponse 互相转换
+                    .addLast("codec", new Http2StreamFrameToHttpObjectCodec(true))
+                    .addLast("compressor", new AdaptiveHttpContentCompressor());
+            if (admission != null) {
+                channel.pipeline().addLast("admission", new HttpAdmissionHandler(admission));
+            }
+            channel.pipeline()
+                    .addLast("aggregator", new SelectiveHttpObjectAggregator(MAX_CONTENT_LENGTH,
+                            request -> !isUpload(request)))
+                    .addLast("chunked", new ChunkedWriteHandler())
+                    .addLast("static", new StaticFileHandler("/static/", STATIC_ROOT, fileCache, businessExecutor));
+            if (UPLOAD_ENABLED) {
+                channel.pipeline().addLast("upload", new HttpUploadHandler(businessExecutor, UPLOAD_DIR, MAX_UPLOAD_BYTES));
+            }
+            if (responseCache != null) {
+                channel.pipeline().addLast("cache", new ResponseCacheHandler(responseCache));
+            }
+            channel.pipeline()
+                    .addLast("router", router)
+                    .addLast("handler", new HttpServletHandler(businessExecutor));
+        }
+    }
+
+    private static boolean isUpload(HttpRequest request) {
+        return UPLOAD_ENABLED && (HttpMethod.POST.equals(request.method()) || HttpMethod.PUT.equals(request.method()))
+                && request.uri().startsWith("/upload");
+    }
+
     public static void main(String[] args) throws Exception {
         new HttpServer().start(8088);
     }
@@ -1,24 +1,124 @@
-import io.netty.buffer.Unpooled;
-import io.netty.channel.ChannelFutureListener;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.SimpleChannelInboundHandler;
 import io.netty.handler.codec.http.DefaultFullHttpResponse;
 import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpHeaderNames;
 import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpUtil;
 import io.netty.handler.codec.http.HttpVersion;
+import io.netty.util.AsciiString;
 import io.netty.util.CharsetUtil;
+import io.netty.util.internal.SystemPropertyUtil;
+import logging.RateLimitedLogger;
+import offload.BusinessExecutor;
 
 
 public class HttpServletHandler extends SimpleChannelInboundHandler<FullHttpRequest> {
 
+    private static final AsciiString TEXT_PLAIN_UTF_8 = AsciiString.cached("text/plain; charset=UTF-8");
+    private static final byte[] URI_PREFIX = "Receive http request, uri: ".getBytes(CharsetUtil.US_ASCII);
+    private static final byte[] METHOD_PREFIX = ", method: ".getBytes(CharsetUtil.US_ASCII);
+    private static final byte[] CONTENT_PREFIX = ", content: ".getBytes(CharsetUtil.US_ASCII);
+    private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes(CharsetUtil.US_ASCII);
+    private static final int TEMPLATE_LENGTH =
+            URI_PREFIX.length + METHOD_PREFIX.length + CONTENT_PREFIX.length + LINE_SEPARATOR.length;
+
+    // 业务异常的日志限速输出，所有连接共用，错误风暴时不会每个请求都输出一行
+    private static final RateLimitedLogger ERROR_LOGGER = new RateLimitedLogger("business-error-logger",
+            SystemPropertyUtil.getInt("http.errorLogPermitsPerSecond", 10), 1024);
+
+    // 为空时业务逻辑直接在 EventLoop 中执行
+    private final BusinessExecutor executor;
+
+    public HttpServletHandler() {
+        this(null);
+    }
+
+    public HttpServletHandler(BusinessExecutor executor) {
+        // 请求可能交给业务线程处理，由业务线程负责 release
+        super(false);
+        this.executor = executor;
+    }
+
     @Override
-    protected void channelRead0(ChannelHandlerContext ctx, FullHttpRequest msg) throws Exception {
-        String content = String.format("Receive http request, uri: %s, method: %s, content: %s%n", msg.uri(), msg.method(), msg.content().toString(CharsetUtil.UTF_8));
-        DefaultFullHttpResponse response = new DefaultFullHttpResponse(
-                HttpVersion.HTTP_1_1,
-                HttpResponseStatus.OK,
-                Unpooled.wrappedBuffer(content.getBytes())
-        );
-        ctx.writeAndFlush(response).addListener(ChannelFutureListener.CLOSE);
+    protected void channelRead0(final ChannelHandlerContext ctx, final FullHttpRequest msg) throws Exception {
+        if (!msg.decoderResult().isSuccess()) {
+            // 请求行或请求头无法解析，之后的字节也无法对齐到下一个请求，返回 400 并关闭连接
+            msg.release();
+            FullHttpResponse response = errorResponse(HttpResponseStatus.BAD_REQUEST);
+            HttpUtil.setKeepAlive(response, false);
+            ctx.writeAndFlush(response);
+            return;
+        }
+        if (executor == null) {
+            ctx.writeAndFlush(handle(ctx, msg));
+            return;
+        }
+        boolean accepted = executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                // 不在 EventLoop 中调用时，Netty 会把写操作提交到 Channel 所属的 EventLoop 执行
+                ctx.writeAndFlush(handle(ctx, msg));
+            }
+        });
+        if (!accepted) {
+            // 业务线程池已满，快速失败，不让请求在队列中无限等待
+            msg.release();
+            ctx.writeAndFlush(errorResponse(HttpResponseStatus.SERVICE_UNAVAILABLE));
+        }
+    }
+
+    /**
+     * 执行业务逻辑并释放请求。业务异常时返回 500，每个请求都有响应，
+     * 否则 HttpPipeliningHandler 会一直等待这个请求，后面排队的请求也无法响应
+     */
+    private FullHttpResponse handle(ChannelHandlerContext ctx, FullHttpRequest msg) {
+        try {
+            return service(ctx, msg);
+        } catch (Throwable cause) {
+            ERROR_LOGGER.log("Business error", cause);
+            return errorResponse(HttpResponseStatus.INTERNAL_SERVER_ERROR);
+        } finally {
+            msg.release();
+        }
+    }
+
+    /**
+     * 业务逻辑，可能在业务线程中执行，不能依赖 EventLoop 线程
+     */
+    protected FullHttpResponse service(ChannelHandlerContext ctx, FullHttpRequest msg) throws Exception {
+        // 响应内容：Receive http request, uri: %s, method: %s, content: %s%n
+        // 固定部分预先编码好，可变部分直接编码进池化的直接内存，不经过 String 和 byte[]，写出时也不需要再拷贝
+        String uri = msg.uri();
+        AsciiString method = msg.method().asciiName();
+        ByteBuf body = msg.content();
+        int length = TEMPLATE_LENGTH + uri.length() + method.length() + body.readableBytes();
+        ByteBuf content = ctx.alloc().directBuffer(length);
+        content.writeBytes(URI_PREFIX);
+        // HttpObjectDecoder 按单字节解析请求行，每个 char 就是原始的一个字节，按 ASCII 写回即可还原
+        ByteBufUtil.writeAscii(content, uri);
+        content.writeBytes(METHOD_PREFIX);
+        ByteBufUtil.copy(method, content);
+        content.writeBytes(CONTENT_PREFIX);
+        // 请求体原样拷贝，不需要先解码成字符串再编码
+        content.writeBytes(body, body.readerIndex(), body.readableBytes());
+        content.writeBytes(LINE_SEPARATOR);
+
+        // 响应头都是预先创建的 AsciiString，不再校验头部
+        FullHttpResponse response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK, content, false);
+        // 长连接下客户端依靠 Content-Length 判断响应结束，是否关闭连接交给 HttpPipeliningHandler 决定
+        response.headers()
+                .set(HttpHeaderNames.CONTENT_TYPE, TEXT_PLAIN_UTF_8)
+                .setInt(HttpHeaderNames.CONTENT_LENGTH, length);
+        return response;
+    }
+
+    private static FullHttpResponse errorResponse(HttpResponseStatus status) {
+        FullHttpResponse response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, status);
+        HttpUtil.setContentLength(response, 0);
+        return response;
     }
 }
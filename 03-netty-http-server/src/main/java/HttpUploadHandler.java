@@ -0,0 +1,235 @@
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpContent;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaderValues;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpUtil;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.util.CharsetUtil;
+import io.netty.util.concurrent.EventExecutor;
+import offload.BusinessExecutor;
+import streaming.StreamingHttpHandler;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.RejectedExecutionException;
+
+
+/**
+ * 流式上传：请求体边读边写入文件，不在内存中聚合。
+ *
+ * 文件写入是阻塞操作，交给业务线程执行（同一个请求固定使用同一个业务线程，保证写入顺序）。
+ * 还没写完的 HttpContent 达到 MAX_PENDING_WRITES 时暂停读取，写完一半后恢复，内存占用与上传大小无关。
+ * 临时文件只在请求期间存在，响应之后（以及失败时）删除，不会在磁盘上累积；响应中只有接收的字节数，不返回文件路径。
+ */
+public class HttpUploadHandler extends StreamingHttpHandler {
+
+    private static final int MAX_PENDING_WRITES = 8;
+
+    private final BusinessExecutor executor;
+    private final Path directory;
+    private final long maxUploadBytes;
+
+    // 以下状态只在 EventLoop 中访问
+    private Upload upload;
+    private long received;
+    private int pendingWrites;
+    private boolean lastReceived;
+
+    public HttpUploadHandler(BusinessExecutor executor, Path directory, long maxUploadBytes) {
+        this.executor = executor;
+        this.directory = directory;
+        this.maxUploadBytes = maxUploadBytes;
+    }
+
+    @Override
+    protected void requestStarted(ChannelHandlerContext ctx, HttpRequest request) throws Exception {
+        if (HttpUtil.getContentLength(request, -1L) > maxUploadBytes) {
+            fail(ctx, HttpResponseStatus.REQUEST_ENTITY_TOO_LARGE);
+            return;
+        }
+        upload = new Upload(executor == null ? ctx.executor() : executor.next());
+        received = 0;
+        pendingWrites = 0;
+        lastReceived = false;
+    }
+
+    @Override
+    protected void contentReceived(final ChannelHandlerContext ctx, HttpContent content, boolean last) throws Exception {
+        final Upload current = upload;
+        if (current == null) {
+            // 请求已经失败，丢弃剩余的请求体
+            content.release();
+            return;
+        }
+        if (content.decoderResult().isFailure()) {
+            content.release();
+            fail(ctx, HttpResponseStatus.BAD_REQUEST);
+            return;
+        }
+        received += content.content().readableBytes();
+        if (received > maxUploadBytes) {
+            content.release();
+            fail(ctx, HttpResponseStatus.REQUEST_ENTITY_TOO_LARGE);
+            return;
+        }
+        lastReceived = last;
+        if (++pendingWrites >= MAX_PENDING_WRITES) {
+            pauseReading(ctx);
+        }
+        final ByteBuf data = content.content();
+        try {
+            current.writer.execute(new Runnable() {
+                @Override
+                public void run() {
+                    final IOException cause = current.write(data, directory);
+                    ctx.executor().execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            writeCompleted(ctx, current, cause);
+                        }
+                    });
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            content.release();
+            fail(ctx, HttpResponseStatus.SERVICE_UNAVAILABLE);
+        }
+    }
+
+    @Override
+    protected void requestAborted(ChannelHandlerContext ctx) throws Exception {
+        if (upload != null) {
+            upload.discard();
+            upload = null;
+        }
+        resumeReading(ctx);
+    }
+
+    private void writeCompleted(ChannelHandlerContext ctx, Upload current, IOException cause) {
+        if (current != upload) {
+            // 请求已经失败或者连接已经断开
+            return;
+        }
+        if (cause != null) {
+            System.out.println("Upload failed: " + cause);
+            fail(ctx, HttpResponseStatus.INTERNAL_SERVER_ERROR);
+            return;
+        }
+        if (--pendingWrites <= MAX_PENDING_WRITES / 2) {
+            resumeReading(ctx);
+        }
+        if (lastReceived && pendingWrites == 0) {
+            upload = null;
+            String message = "Received " + received + " bytes" + System.lineSeparator();
+            ctx.writeAndFlush(response(HttpResponseStatus.OK, message));
+            current.discard();
+        }
+    }
+
+    private void fail(ChannelHandlerContext ctx, HttpResponseStatus status) {
+        if (upload != null) {
+            upload.discard();
+            upload = null;
+        }
+        resumeReading(ctx);
+        // 请求体没有读完，连接上剩余的数据无法继续解析，响应之后关闭连接
+        FullHttpResponse response = response(status, status.reasonPhrase());
+        response.headers().set(HttpHeaderNames.CONNECTION, HttpHeaderValues.CLOSE);
+        ctx.writeAndFlush(response).addListener(ChannelFutureListener.CLOSE);
+    }
+
+    private static FullHttpResponse response(HttpResponseStatus status, String message) {
+        FullHttpResponse response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, status,
+                Unpooled.copiedBuffer(message, CharsetUtil.UTF_8));
+        response.headers().set(HttpHeaderNames.CONTENT_TYPE, HttpHeaderValues.TEXT_PLAIN);
+        HttpUtil.setContentLength(response, response.content().readableBytes());
+        return response;
+    }
+
+    /**
+     * 单次上传的文件，文件操作都在 writer 线程中执行
+     */
+    private static final class Upload {
+
+        final EventExecutor writer;
+        private Path path;
+        private FileChannel file;
+        private IOException failure;
+
+        Upload(EventExecutor writer) {
+            this.writer = writer;
+        }
+
+        /**
+         * 写入一块数据并释放，第一次写入时创建文件
+         */
+        IOException write(ByteBuf data, Path directory) {
+            try {
+                if (failure == null) {
+                    if (file == null) {
+                        Files.createDirectories(directory);
+                        path = Files.createTempFile(directory, "upload-", ".bin");
+                        file = FileChannel.open(path, StandardOpenOption.WRITE);
+                    }
+                    while (data.isReadable()) {
+                        data.readBytes(file, data.readableBytes());
+                    }
+                }
+            } catch (IOException e) {
+                failure = e;
+            } finally {
+                data.release();
+            }
+            return failure;
+        }
+
+        /**
+         * 关闭并删除文件，请求完成或者失败时调用
+         */
+        void discard() {
+            submit(new Runnable() {
+                @Override
+                public void run() {
+                    closeFile();
+                    if (path != null) {
+                        try {
+                            Files.deleteIfExists(path);
+                        } catch (IOException e) {
+                            System.out.println("Failed to delete " + path + ": " + e);
+                        }
+                    }
+                }
+            });
+        }
+
+        private void submit(Runnable task) {
+            try {
+                writer.execute(task);
+            } catch (RejectedExecutionException e) {
+                // 业务线程队列已满或者正在关闭，只能在当前线程中关闭文件
+                task.run();
+            }
+        }
+
+        private void closeFile() {
+            if (file != null) {
+                try {
+                    file.close();
+                } catch (IOException e) {
+                    System.out.println("Failed to close " + path + ": " + e);
+                }
+                file = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package cache;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.DefaultHttpHeaders;
+import io.netty.handler.codec.http.EmptyHttpHeaders;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpVersion;
+
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * 缓存的一个响应。content 是池化的直接内存，由缓存持有；headers 存入之后不再修改，可以多线程读取。
+ */
+final class CachedResponse {
+
+    private final HttpResponseStatus status;
+    private final HttpHeaders headers;
+    private final ByteBuf content;
+    private final long storedNanos;
+    private final long expiresNanos;
+
+    CachedResponse(HttpResponseStatus status, HttpHeaders headers, ByteBuf content, long storedNanos, long ttlNanos) {
+        this.status = status;
+        this.headers = headers;
+        this.content = content;
+        this.storedNanos = storedNanos;
+        this.expiresNanos = storedNanos + ttlNanos;
+    }
+
+    ByteBuf content() {
+        return content;
+    }
+
+    int size() {
+        return content.readableBytes();
+    }
+
+    boolean isExpired(long now) {
+        return now - expiresNanos >= 0;
+    }
+
+    /**
+     * 用缓存的内容创建新的响应，content 是 retainedDuplicate，后面的 Handler 修改头部不会影响缓存
+     */
+    FullHttpResponse toResponse(ByteBuf duplicate, long now) {
+        HttpHeaders copy = new DefaultHttpHeaders(false).set(headers);
+        copy.setInt(HttpHeaderNames.AGE, (int) TimeUnit.NANOSECONDS.toSeconds(now - storedNanos));
+        return new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, status, duplicate, copy, EmptyHttpHeaders.INSTANCE);
+    }
+}
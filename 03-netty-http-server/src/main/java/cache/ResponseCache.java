@@ -0,0 +1,398 @@
+package cache;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.handler.codec.http.DefaultHttpHeaders;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.util.internal.SystemPropertyUtil;
+import metrics.MetricsRegistry;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * 响应缓存，所有连接共用一个实例。
+ *
+ * - 一级 key 是 "方法 URI"，同一个 URI 的响应按 Vary 列出的请求头再区分（Variants）
+ * - 响应体拷贝到池化的直接内存中保存，命中时返回 retainedDuplicate，不再拷贝
+ * - 按响应体总字节数做 LRU 淘汰（以 URI 为单位），每个响应在 TTL 之后过期
+ *
+ * access-ordered 的 LinkedHashMap 读取也要修改链表，只能加互斥锁。所有 EventLoop 共用一把锁时，命中率越高竞争越激烈，
+ * 所以按 key 的哈希分成多个段，每段一把锁、一个 LinkedHashMap，容量平分。
+ * 代价是 LRU 和过期清理都只在段内进行，淘汰的不一定是全局最久未访问的响应。
+ * 段的容量不小于 maxEntryBytes，maxBytes 较小时会减少段数。
+ *
+ * 配置项（系统属性）：responseCache.maxBytes（0 表示关闭缓存）、responseCache.maxEntryBytes、responseCache.ttlSeconds、
+ * responseCache.segments（段数，向下取 2 的幂）
+ */
+public final class ResponseCache implements ResponseCacheMBean {
+
+    private static final String[] NO_VARY = new String[0];
+    private static final int DEFAULT_SEGMENTS = 16;
+
+    private final long maxBytes;
+    private final int maxEntryBytes;
+    private final long ttlNanos;
+    private final Segment[] segments;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder stores = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    public ResponseCache(long maxBytes, int maxEntryBytes, long ttl, TimeUnit unit) {
+        this(maxBytes, maxEntryBytes, ttl, unit, DEFAULT_SEGMENTS);
+    }
+
+    public ResponseCache(long maxBytes, int maxEntryBytes, long ttl, TimeUnit unit, int segments) {
+        this.maxBytes = maxBytes;
+        this.maxEntryBytes = maxEntryBytes;
+        this.ttlNanos = unit.toNanos(ttl);
+        // 每段至少能放下一个最大的响应
+        long count = Math.min(segments, Math.max(1, maxBytes / Math.max(maxEntryBytes, 1)));
+        count = Long.highestOneBit(Math.max(count, 1));
+        this.segments = new Segment[(int) count];
+        for (int i = 0; i < this.segments.length; i++) {
+            this.segments[i] = new Segment(maxBytes / count);
+        }
+    }
+
+    /**
+     * 按系统属性创建并注册到 MetricsRegistry，responseCache.maxBytes 不大于 0 时返回 null
+     */
+    public static ResponseCache fromProperties(String name) {
+        long maxBytes = SystemPropertyUtil.getLong("responseCache.maxBytes", 64 * 1024 * 1024);
+        if (maxBytes <= 0) {
+            return null;
+        }
+        int maxEntryBytes = SystemPropertyUtil.getInt("responseCache.maxEntryBytes", 1024 * 1024);
+        int ttlSeconds = SystemPropertyUtil.getInt("responseCache.ttlSeconds", 10);
+        int segments = SystemPropertyUtil.getInt("responseCache.segments", DEFAULT_SEGMENTS);
+        ResponseCache cache = new ResponseCache(maxBytes, maxEntryBytes, ttlSeconds, TimeUnit.SECONDS, segments);
+        MetricsRegistry.register("ResponseCache", "cache", name, cache);
+        System.out.println("Response cache: maxBytes " + maxBytes + ", ttl " + ttlSeconds + "s, segments "
+                + cache.segments.length);
+        return cache;
+    }
+
+    long ttlNanos() {
+        return ttlNanos;
+    }
+
+    /**
+     * 查找缓存的响应，返回的响应已经 retain，由调用方写出。没有命中时返回 null
+     */
+    FullHttpResponse get(String key, HttpHeaders requestHeaders) {
+        return segmentFor(key).get(key, requestHeaders);
+    }
+
+    /**
+     * 保存响应，响应体拷贝到 alloc 分配的直接内存中，response 本身不受影响。
+     * vary 是响应 Vary 头中的请求头名称（小写），requestHeaders 是对应请求的头部
+     */
+    void put(String key, String[] vary, HttpHeaders requestHeaders, FullHttpResponse response, long ttlNanos,
+             ByteBufAllocator alloc) {
+        Segment segment = segmentFor(key);
+        ByteBuf body = response.content();
+        int size = body.readableBytes();
+        if (size > maxEntryBytes || size > segment.maxBytes) {
+            return;
+        }
+        ByteBuf content = alloc.directBuffer(size).writeBytes(body, body.readerIndex(), size);
+        HttpHeaders headers = new DefaultHttpHeaders(false).set(response.headers());
+        CachedResponse cached = new CachedResponse(response.status(), headers, content, System.nanoTime(), ttlNanos);
+        segment.put(key, vary, variantKey(vary, requestHeaders), cached);
+    }
+
+    /**
+     * 删除一个 URI 的所有缓存响应，用于非幂等请求（POST / PUT / DELETE）之后
+     */
+    void invalidate(String key) {
+        segmentFor(key).invalidate(key);
+    }
+
+    /**
+     * 释放所有缓存的响应
+     */
+    public void clear() {
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+    }
+
+    /**
+     * 解析响应的 Vary 头，返回小写的请求头名称；Vary: * 表示不能缓存，返回 null
+     */
+    static String[] parseVary(List<String> values) {
+        if (values.isEmpty()) {
+            return NO_VARY;
+        }
+        TreeSet<String> names = new TreeSet<String>();
+        for (String value : values) {
+            for (String name : value.split(",")) {
+                name = name.trim().toLowerCase(Locale.ROOT);
+                if ("*".equals(name)) {
+                    return null;
+                }
+                if (!name.isEmpty()) {
+                    names.add(name);
+                }
+            }
+        }
+        // 排序之后，Vary 中顺序不同的响应也能识别为同一组请求头
+        return names.toArray(NO_VARY);
+    }
+
+    private static String variantKey(String[] vary, HttpHeaders requestHeaders) {
+        if (vary.length == 0) {
+            return "";
+        }
+        StringBuilder sb = new StringBuilder();
+        for (String name : vary) {
+            for (String value : requestHeaders.getAll(name)) {
+                sb.append(value).append(',');
+            }
+            sb.append('\n');
+        }
+        return sb.toString();
+    }
+
+    private Segment segmentFor(String key) {
+        int h = key.hashCode();
+        // String.hashCode 的低位分布不均匀，混入高位
+        h ^= h >>> 16;
+        return segments[h & (segments.length - 1)];
+    }
+
+    @Override
+    public long getHits() {
+        return hits.sum();
+    }
+
+    @Override
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    @Override
+    public double getHitRatio() {
+        long hits = this.hits.sum();
+        long total = hits + misses.sum();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    @Override
+    public long getStores() {
+        return stores.sum();
+    }
+
+    @Override
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    @Override
+    public long getExpirations() {
+        return expirations.sum();
+    }
+
+    @Override
+    public long getInvalidations() {
+        return invalidations.sum();
+    }
+
+    @Override
+    public int getResponses() {
+        int responses = 0;
+        for (Segment segment : segments) {
+            responses += segment.responses();
+        }
+        return responses;
+    }
+
+    @Override
+    public long getBytes() {
+        long bytes = 0;
+        for (Segment segment : segments) {
+            bytes += segment.bytes();
+        }
+        return bytes;
+    }
+
+    @Override
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * 一个段：独立的锁、LRU 链表和容量
+     */
+    private final class Segment {
+
+        final long maxBytes;
+        private final LinkedHashMap<String, Variants> entries = new LinkedHashMap<String, Variants>(16, 0.75f, true);
+        private long bytes;
+        private int responses;
+        private long lastSweepNanos = System.nanoTime();
+
+        Segment(long maxBytes) {
+            this.maxBytes = maxBytes;
+        }
+
+        FullHttpResponse get(String key, HttpHeaders requestHeaders) {
+            CachedResponse cached;
+            ByteBuf content;
+            long now = System.nanoTime();
+            synchronized (this) {
+                Variants variants = entries.get(key);
+                cached = variants == null ? null : variants.responses.get(variantKey(variants.vary, requestHeaders));
+                if (cached != null && cached.isExpired(now)) {
+                    remove(key, variants, variantKey(variants.vary, requestHeaders));
+                    expirations.increment();
+                    cached = null;
+                }
+                if (cached == null) {
+                    misses.increment();
+                    return null;
+                }
+                // 在锁内 retain，避免同时被淘汰释放
+                content = cached.content().retainedDuplicate();
+            }
+            hits.increment();
+            return cached.toResponse(content, now);
+        }
+
+        synchronized void put(String key, String[] vary, String variantKey, CachedResponse cached) {
+            sweepExpired();
+            Variants variants = entries.get(key);
+            if (variants != null && !Arrays.equals(variants.vary, vary)) {
+                // Vary 变了，之前按旧的请求头区分的响应都不能再用
+                removeAll(key, variants);
+                variants = null;
+            }
+            if (variants == null) {
+                variants = new Variants(vary);
+                entries.put(key, variants);
+            }
+            CachedResponse old = variants.responses.put(variantKey, cached);
+            if (old != null) {
+                bytes -= old.size();
+                responses--;
+                old.content().release();
+            }
+            bytes += cached.size();
+            responses++;
+            stores.increment();
+            Iterator<Map.Entry<String, Variants>> it = entries.entrySet().iterator();
+            while (bytes > maxBytes && it.hasNext()) {
+                Variants eldest = it.next().getValue();
+                it.remove();
+                release(eldest);
+                evictions.increment();
+            }
+        }
+
+        synchronized void invalidate(String key) {
+            Variants variants = entries.remove(key);
+            if (variants != null) {
+                release(variants);
+                invalidations.increment();
+            }
+        }
+
+        synchronized void clear() {
+            for (Variants variants : entries.values()) {
+                release(variants);
+            }
+            entries.clear();
+        }
+
+        synchronized int responses() {
+            return responses;
+        }
+
+        synchronized long bytes() {
+            return bytes;
+        }
+
+        private void remove(String key, Variants variants, String variantKey) {
+            CachedResponse removed = variants.responses.remove(variantKey);
+            if (removed != null) {
+                bytes -= removed.size();
+                responses--;
+                removed.content().release();
+            }
+            if (variants.responses.isEmpty()) {
+                entries.remove(key);
+            }
+        }
+
+        private void removeAll(String key, Variants variants) {
+            entries.remove(key);
+            release(variants);
+        }
+
+        private void release(Variants variants) {
+            for (CachedResponse cached : variants.responses.values()) {
+                bytes -= cached.size();
+                responses--;
+                cached.content().release();
+            }
+            variants.responses.clear();
+        }
+
+        /**
+         * 最多每秒一次，删除段内所有过期的响应，过期之后没有再被访问的响应不会一直占用内存
+         */
+        private void sweepExpired() {
+            long now = System.nanoTime();
+            if (now - lastSweepNanos < TimeUnit.SECONDS.toNanos(1)) {
+                return;
+            }
+            lastSweepNanos = now;
+            Iterator<Variants> it = entries.values().iterator();
+            while (it.hasNext()) {
+                Variants variants = it.next();
+                Iterator<CachedResponse> responses = variants.responses.values().iterator();
+                while (responses.hasNext()) {
+                    CachedResponse cached = responses.next();
+                    if (cached.isExpired(now)) {
+                        responses.remove();
+                        bytes -= cached.size();
+                        this.responses--;
+                        cached.content().release();
+                        expirations.increment();
+                    }
+                }
+                if (variants.responses.isEmpty()) {
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * 同一个 URI 下按 Vary 区分的多个响应
+     */
+    private static final class Variants {
+
+        final String[] vary;
+        final Map<String, CachedResponse> responses = new HashMap<String, CachedResponse>(2);
+
+        Variants(String[] vary) {
+            this.vary = vary;
+        }
+    }
+}
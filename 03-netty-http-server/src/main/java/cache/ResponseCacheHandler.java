@@ -0,0 +1,156 @@
+package cache;
+
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import io.netty.handler.codec.http.DefaultHttpHeaders;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpResponseStatus;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * 响应缓存，放在 HttpObjectAggregator 之后、业务处理器之前：
+ * - 可缓存的 GET 命中时直接写出缓存的响应，请求不再向后传递
+ * - 没有命中时记下请求，后面的 Handler 写出的 FullHttpResponse 经过这里时存入缓存
+ * - POST / PUT / DELETE 等请求会删除同一 URI 已经缓存的响应
+ *
+ * 依赖 HttpPipeliningHandler 保证同一个连接上同时只有一个请求在处理，写出的响应就是当前请求的响应；
+ * HTTP/2 下每个 stream 子 Channel 有自己的实例，只处理一个请求。
+ * 缓存的是压缩之前的响应，压缩由前面的 AdaptiveHttpContentCompressor 按每个请求的 Accept-Encoding 处理。
+ *
+ * 不缓存：带请求体、Authorization 或 Cache-Control: no-store 的请求；
+ * 非 200、带 Set-Cookie、Cache-Control 为 no-store / no-cache / private、max-age=0 或者 Vary: * 的响应。
+ * 请求带 Cache-Control: no-cache 时不读缓存，但响应仍然会更新缓存。
+ */
+public class ResponseCacheHandler extends ChannelDuplexHandler {
+
+    private final ResponseCache cache;
+    // 当前没有命中缓存、等待响应的请求
+    private String pendingKey;
+    private HttpHeaders pendingHeaders;
+
+    public ResponseCacheHandler(ResponseCache cache) {
+        this.cache = cache;
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        pendingKey = null;
+        pendingHeaders = null;
+        if (!(msg instanceof FullHttpRequest)) {
+            ctx.fireChannelRead(msg);
+            return;
+        }
+        FullHttpRequest request = (FullHttpRequest) msg;
+        HttpMethod method = request.method();
+        if (!HttpMethod.GET.equals(method)) {
+            if (!HttpMethod.HEAD.equals(method) && !HttpMethod.OPTIONS.equals(method)) {
+                // 非幂等请求可能修改了资源，之前缓存的 GET 响应不能再用
+                cache.invalidate(key(HttpMethod.GET, request.uri()));
+            }
+            ctx.fireChannelRead(msg);
+            return;
+        }
+        HttpHeaders headers = request.headers();
+        String cacheControl = headers.get(HttpHeaderNames.CACHE_CONTROL);
+        if (!request.decoderResult().isSuccess() || request.content().isReadable()
+                || headers.contains(HttpHeaderNames.AUTHORIZATION) || hasDirective(cacheControl, "no-store")) {
+            ctx.fireChannelRead(msg);
+            return;
+        }
+        String key = key(method, request.uri());
+        if (!hasDirective(cacheControl, "no-cache")) {
+            FullHttpResponse response = cache.get(key, headers);
+            if (response != null) {
+                request.release();
+                ctx.writeAndFlush(response);
+                return;
+            }
+        }
+        pendingKey = key;
+        // 请求会被后面的 Handler 释放，存入缓存时还需要按 Vary 取请求头，先复制一份
+        pendingHeaders = new DefaultHttpHeaders(false).set(headers);
+        ctx.fireChannelRead(msg);
+    }
+
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+        if (msg instanceof HttpResponse && pendingKey != null) {
+            String key = pendingKey;
+            HttpHeaders requestHeaders = pendingHeaders;
+            pendingKey = null;
+            pendingHeaders = null;
+            if (msg instanceof FullHttpResponse) {
+                store(ctx, key, requestHeaders, (FullHttpResponse) msg);
+            }
+        }
+        ctx.write(msg, promise);
+    }
+
+    private void store(ChannelHandlerContext ctx, String key, HttpHeaders requestHeaders, FullHttpResponse response) {
+        HttpHeaders headers = response.headers();
+        if (response.status().code() != HttpResponseStatus.OK.code()
+                || !response.decoderResult().isSuccess()
+                || headers.contains(HttpHeaderNames.SET_COOKIE)) {
+            return;
+        }
+        long ttlNanos = ttlNanos(headers.get(HttpHeaderNames.CACHE_CONTROL));
+        if (ttlNanos <= 0) {
+            return;
+        }
+        String[] vary = ResponseCache.parseVary(headers.getAll(HttpHeaderNames.VARY));
+        if (vary == null) {
+            return;
+        }
+        cache.put(key, vary, requestHeaders, response, ttlNanos, ctx.alloc());
+    }
+
+    /**
+     * 响应的缓存时间：max-age / s-maxage 与配置的 TTL 取较小值，不能缓存时返回 0
+     */
+    private long ttlNanos(String cacheControl) {
+        long ttl = cache.ttlNanos();
+        if (cacheControl == null) {
+            return ttl;
+        }
+        for (String directive : cacheControl.split(",")) {
+            directive = directive.trim().toLowerCase(Locale.ROOT);
+            if ("no-store".equals(directive) || "no-cache".equals(directive) || "private".equals(directive)) {
+                return 0;
+            }
+            if (directive.startsWith("max-age=") || directive.startsWith("s-maxage=")) {
+                try {
+                    long seconds = Long.parseLong(directive.substring(directive.indexOf('=') + 1));
+                    ttl = Math.min(ttl, TimeUnit.SECONDS.toNanos(seconds));
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        return ttl;
+    }
+
+    private static boolean hasDirective(String cacheControl, String directive) {
+        if (cacheControl == null) {
+            return false;
+        }
+        for (String value : cacheControl.split(",")) {
+            if (value.trim().equalsIgnoreCase(directive)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String key(HttpMethod method, String uri) {
+        return method.name() + ' ' + uri;
+    }
+}
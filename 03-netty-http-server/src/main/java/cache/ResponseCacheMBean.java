@@ -0,0 +1,30 @@
+package cache;
+
+/**
+ * 通过 JMX 暴露的响应缓存统计
+ */
+public interface ResponseCacheMBean {
+
+    long getHits();
+
+    long getMisses();
+
+    /**
+     * 命中次数占查找次数的比例
+     */
+    double getHitRatio();
+
+    long getStores();
+
+    long getEvictions();
+
+    long getExpirations();
+
+    long getInvalidations();
+
+    int getResponses();
+
+    long getBytes();
+
+    long getMaxBytes();
+}
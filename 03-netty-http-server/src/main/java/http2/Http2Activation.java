@@ -0,0 +1,92 @@
+package http2;
+
+import io.netty.channel.ChannelHandlerAdapter;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelPipeline;
+import io.netty.handler.codec.http2.DefaultHttp2WindowUpdateFrame;
+import io.netty.handler.codec.http2.Http2Connection;
+import io.netty.handler.codec.http2.Http2FrameCodec;
+import io.netty.handler.codec.http2.Http2MultiplexHandler;
+import io.netty.handler.timeout.IdleStateEvent;
+import io.netty.handler.timeout.IdleStateHandler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * 连接切换到 HTTP/2 时加入 Pipeline，完成切换之后删除自己：
+ * - prior knowledge 和 ALPN 协商出 h2 时由它加入 Http2FrameCodec 和 Http2MultiplexHandler（Upgrade 时由 Http2ServerUpgradeCodec 加入）
+ * - 删除后面的 HTTP/1 Handler，请求已经由 stream 子 Channel 处理，连接上不会再有 HttpObject
+ * - 在 Http2FrameCodec 之前重新加入空闲检测：Http2MultiplexHandler 不会把 stream 的数据传给后面的 Handler，
+ *   原来的 IdleStateHandler 看不到读操作
+ * - 把连接的接收窗口调大到 connectionWindowSize，所有 stream 共享这个窗口
+ */
+final class Http2Activation extends ChannelHandlerAdapter {
+
+    private final Http2FrameCodec frameCodec;
+    private final Http2MultiplexHandler multiplexHandler;
+    private final boolean addCodec;
+    private final int idleTimeoutSeconds;
+    private final int connectionWindowSize;
+
+    Http2Activation(Http2FrameCodec frameCodec, Http2MultiplexHandler multiplexHandler, boolean addCodec,
+                    int idleTimeoutSeconds, int connectionWindowSize) {
+        this.frameCodec = frameCodec;
+        this.multiplexHandler = multiplexHandler;
+        this.addCodec = addCodec;
+        this.idleTimeoutSeconds = idleTimeoutSeconds;
+        this.connectionWindowSize = connectionWindowSize;
+    }
+
+    @Override
+    public void handlerAdded(ChannelHandlerContext ctx) throws Exception {
+        ChannelPipeline pipeline = ctx.pipeline();
+        List<String> names = new ArrayList<String>(pipeline.toMap().keySet());
+        for (int i = names.indexOf(ctx.name()) + 1; i < names.size(); i++) {
+            pipeline.remove(names.get(i));
+        }
+        if (addCodec) {
+            pipeline.addBefore(ctx.name(), null, frameCodec);
+            pipeline.addBefore(ctx.name(), null, multiplexHandler);
+        }
+        String codecName = pipeline.context(frameCodec).name();
+        if (idleTimeoutSeconds > 0) {
+            pipeline.addBefore(codecName, "idle", new IdleStateHandler(true, 0, 0, idleTimeoutSeconds, TimeUnit.SECONDS));
+            pipeline.addBefore(codecName, "idleClose", new IdleConnectionCloser(frameCodec));
+        }
+        pipeline.remove(this);
+        // initialWindowSize 大于默认值时 Http2FrameCodec 已经把连接窗口扩大到它的两倍左右，这里补足到配置的大小
+        Http2Connection connection = frameCodec.connection();
+        int increment = connectionWindowSize - connection.local().flowController().windowSize(connection.connectionStream());
+        if (increment > 0) {
+            // stream 为空的 WINDOW_UPDATE 表示整个连接
+            ctx.channel().writeAndFlush(new DefaultHttp2WindowUpdateFrame(increment));
+        }
+    }
+
+    /**
+     * 没有活跃的 stream 时关闭空闲连接，Http2FrameCodec 关闭时会先发送 GOAWAY
+     */
+    private static final class IdleConnectionCloser extends ChannelInboundHandlerAdapter {
+
+        private final Http2FrameCodec frameCodec;
+
+        IdleConnectionCloser(Http2FrameCodec frameCodec) {
+            this.frameCodec = frameCodec;
+        }
+
+        @Override
+        public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
+            if (evt instanceof IdleStateEvent) {
+                if (frameCodec.connection().numActiveStreams() == 0) {
+                    ctx.close();
+                }
+                return;
+            }
+            ctx.fireUserEventTriggered(evt);
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package http2;
+
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.http.HttpServerCodec;
+import io.netty.handler.codec.http2.Http2MultiplexHandler;
+import io.netty.handler.ssl.ApplicationProtocolNames;
+import io.netty.handler.ssl.ApplicationProtocolNegotiationHandler;
+
+
+/**
+ * TLS 连接上按 ALPN 的协商结果选择 HTTP/2 或 HTTP/1.1，需要位于 SslHandler 之后、HTTP/1 Handler 之前。
+ * 握手完成后替换成对应的编解码器：h2 时与 prior knowledge 一样由 Http2Activation 完成切换，
+ * 客户端不支持 ALPN 时按 HTTP/1.1 处理。stream 的处理与 h2c 相同，见 Http2Cleartext。
+ */
+public final class Http2Alpn {
+
+    private Http2Alpn() {
+    }
+
+    /**
+     * 创建替代 HttpServerCodec 的 Handler
+     *
+     * @param idleTimeoutSeconds HTTP/2 连接上没有 stream 并且超过这个时间没有读写时关闭连接
+     * @param streamInitializer  每个 stream 子 Channel 的初始化器，必须是 @Sharable
+     */
+    public static ChannelHandler newHandler(final int idleTimeoutSeconds, final ChannelHandler streamInitializer) {
+        return new ApplicationProtocolNegotiationHandler(ApplicationProtocolNames.HTTP_1_1) {
+            @Override
+            protected void configurePipeline(ChannelHandlerContext ctx, String protocol) throws Exception {
+                if (ApplicationProtocolNames.HTTP_2.equals(protocol)) {
+                    ctx.pipeline().addAfter(ctx.name(), null, new Http2Activation(Http2Cleartext.newFrameCodec(),
+                            new Http2MultiplexHandler(streamInitializer), true, idleTimeoutSeconds,
+                            Http2Cleartext.CONNECTION_WINDOW_SIZE));
+                } else if (ApplicationProtocolNames.HTTP_1_1.equals(protocol)) {
+                    ctx.pipeline().addAfter(ctx.name(), null, new HttpServerCodec());
+                } else {
+                    throw new IllegalStateException("unknown protocol: " + protocol);
+                }
+            }
+
+            @Override
+            protected void handshakeFailure(ChannelHandlerContext ctx, Throwable cause) {
+                // 握手失败已经计入 SslTermination 的统计，扫描器和不信任证书的客户端很常见，不打印堆栈
+                ctx.close();
+            }
+        };
+    }
+}
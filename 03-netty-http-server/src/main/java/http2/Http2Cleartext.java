@@ -0,0 +1,73 @@
+package http2;
+
+import io.netty.channel.ChannelHandler;
+import io.netty.handler.codec.http.HttpServerCodec;
+import io.netty.handler.codec.http.HttpServerUpgradeHandler;
+import io.netty.handler.codec.http2.CleartextHttp2ServerUpgradeHandler;
+import io.netty.handler.codec.http2.Http2CodecUtil;
+import io.netty.handler.codec.http2.Http2FrameCodec;
+import io.netty.handler.codec.http2.Http2FrameCodecBuilder;
+import io.netty.handler.codec.http2.Http2MultiplexHandler;
+import io.netty.handler.codec.http2.Http2ServerUpgradeCodec;
+import io.netty.handler.codec.http2.Http2Settings;
+import io.netty.util.AsciiString;
+import io.netty.util.internal.SystemPropertyUtil;
+
+
+/**
+ * 明文 HTTP/2（h2c），同一个端口同时支持三种方式：
+ * - HTTP/1.1：和原来一样，由后面的 HTTP/1 Handler 处理
+ * - HTTP/1.1 Upgrade: h2c：升级请求本身作为 stream 1 处理
+ * - prior knowledge：连接一开始就是 HTTP/2 连接前言（PRI * HTTP/2.0）
+ *
+ * 切换到 HTTP/2 之后连接上是 Http2FrameCodec + Http2MultiplexHandler，每个 stream 是一个子 Channel，
+ * 子 Channel 的 Pipeline 由 streamInitializer 初始化，通常以 Http2StreamFrameToHttpObjectCodec 开头，
+ * 之后就可以复用 HTTP/1 的 Handler。原来 Pipeline 中的 HTTP/1 Handler 在切换时删除，见 Http2Activation。
+ *
+ * 配置项（系统属性）：
+ * - http2.maxConcurrentStreams：单个连接上同时处理的 stream 数量
+ * - http2.initialWindowSize：每个 stream 的接收窗口
+ * - http2.connectionWindowSize：整个连接的接收窗口，所有 stream 共享，应当大于 initialWindowSize
+ */
+public final class Http2Cleartext {
+
+    public static final int MAX_CONCURRENT_STREAMS = SystemPropertyUtil.getInt("http2.maxConcurrentStreams", 1000);
+    public static final int INITIAL_WINDOW_SIZE = SystemPropertyUtil.getInt("http2.initialWindowSize", 1024 * 1024);
+    public static final int CONNECTION_WINDOW_SIZE = SystemPropertyUtil.getInt("http2.connectionWindowSize", 16 * 1024 * 1024);
+
+    private Http2Cleartext() {
+    }
+
+    /**
+     * 创建替代 HttpServerCodec 的 Handler，加入 Pipeline 时会展开成 HttpServerCodec 和 HttpServerUpgradeHandler。
+     *
+     * @param maxContentLength   Upgrade 请求的请求体上限
+     * @param idleTimeoutSeconds HTTP/2 连接上没有 stream 并且超过这个时间没有读写时关闭连接
+     * @param streamInitializer  每个 stream 子 Channel 的初始化器，必须是 @Sharable
+     */
+    public static ChannelHandler newHandler(int maxContentLength, final int idleTimeoutSeconds,
+                                            final ChannelHandler streamInitializer) {
+        HttpServerCodec sourceCodec = new HttpServerCodec();
+        HttpServerUpgradeHandler upgradeHandler = new HttpServerUpgradeHandler(sourceCodec, protocol -> {
+            if (!AsciiString.contentEquals(Http2CodecUtil.HTTP_UPGRADE_PROTOCOL_NAME, protocol)) {
+                return null;
+            }
+            Http2FrameCodec frameCodec = newFrameCodec();
+            // 升级请求是 stream 1，同样交给 streamInitializer
+            Http2MultiplexHandler multiplexHandler = new Http2MultiplexHandler(streamInitializer, streamInitializer);
+            return new Http2ServerUpgradeCodec(frameCodec, multiplexHandler,
+                    new Http2Activation(frameCodec, multiplexHandler, false, idleTimeoutSeconds, CONNECTION_WINDOW_SIZE));
+        }, maxContentLength);
+        Http2FrameCodec frameCodec = newFrameCodec();
+        Http2MultiplexHandler multiplexHandler = new Http2MultiplexHandler(streamInitializer, streamInitializer);
+        return new CleartextHttp2ServerUpgradeHandler(sourceCodec, upgradeHandler,
+                new Http2Activation(frameCodec, multiplexHandler, true, idleTimeoutSeconds, CONNECTION_WINDOW_SIZE));
+    }
+
+    static Http2FrameCodec newFrameCodec() {
+        Http2Settings settings = Http2Settings.defaultSettings()
+                .maxConcurrentStreams(MAX_CONCURRENT_STREAMS)
+                .initialWindowSize(INITIAL_WINDOW_SIZE);
+        return Http2FrameCodecBuilder.forServer().initialSettings(settings).build();
+    }
+}
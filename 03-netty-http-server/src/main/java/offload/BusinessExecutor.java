@@ -0,0 +1,181 @@
+package offload;
+
+import io.netty.util.concurrent.DefaultEventExecutorGroup;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.EventExecutorGroup;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.RejectedExecutionHandlers;
+import io.netty.util.concurrent.SingleThreadEventExecutor;
+import io.netty.util.internal.SystemPropertyUtil;
+import metrics.LatencyHistogram;
+import metrics.MetricsRegistry;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * 业务线程池，把可能阻塞的业务逻辑从 I/O 线程（EventLoop）中移出去。
+ *
+ * 业务逻辑直接在 EventLoop 中执行时，一次慢调用会卡住同一个 EventLoop 上的所有连接。
+ * 交给业务线程执行后，EventLoop 只负责编解码和读写，响应通过 ctx.writeAndFlush 写回，
+ * Netty 会自动把写操作提交回 Channel 所属的 EventLoop 执行。
+ *
+ * 每个业务线程的任务队列都有上限，队列满时 execute 返回 false，由调用方快速失败（比如返回 503），
+ * 而不是无限堆积请求、让所有请求的延迟一起变差。
+ *
+ * 配置项：
+ * - business.threads：业务线程数，默认 CPU 核数的 4 倍（业务逻辑以阻塞调用为主），0 表示直接在 EventLoop 中执行
+ * - business.maxPendingTasks：每个业务线程的任务队列长度，默认 1024
+ *
+ * 注：虚拟线程需要 Java 21，这里按 Java 8 编译，仍然使用固定数量的平台线程。
+ */
+public final class BusinessExecutor implements BusinessExecutorMBean {
+
+    private final EventExecutorGroup group;
+    private final int threads;
+    private final int maxPendingTasks;
+    private final AtomicInteger activeTasks = new AtomicInteger();
+    private final LongAdder completedTasks = new LongAdder();
+    private final LongAdder rejectedTasks = new LongAdder();
+    private final LatencyHistogram queueWait = new LatencyHistogram();
+    private final LatencyHistogram execution = new LatencyHistogram();
+
+    public BusinessExecutor(String name, int threads, int maxPendingTasks) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("threads: " + threads + " (expected: > 0)");
+        }
+        this.threads = threads;
+        this.maxPendingTasks = maxPendingTasks;
+        this.group = new DefaultEventExecutorGroup(threads, new DefaultThreadFactory(name), maxPendingTasks,
+                RejectedExecutionHandlers.reject());
+    }
+
+    /**
+     * 按系统属性创建业务线程池，business.threads 为 0 时返回 null，表示不启用
+     */
+    public static BusinessExecutor fromProperties(String name) {
+        int threads = SystemPropertyUtil.getInt("business.threads", Runtime.getRuntime().availableProcessors() * 4);
+        if (threads <= 0) {
+            return null;
+        }
+        int maxPendingTasks = SystemPropertyUtil.getInt("business.maxPendingTasks", 1024);
+        BusinessExecutor executor = new BusinessExecutor(name, threads, maxPendingTasks);
+        MetricsRegistry.register("BusinessExecutor", "offload", name, executor);
+        System.out.println("Business executor: " + threads + " threads, maxPendingTasks: " + maxPendingTasks);
+        return executor;
+    }
+
+    /**
+     * 提交任务。当前线程的队列已满时依次尝试其他线程，所有队列都满时返回 false。
+     */
+    public boolean execute(final Runnable task) {
+        final long submitNanos = System.nanoTime();
+        Runnable wrapped = new Runnable() {
+            @Override
+            public void run() {
+                long startNanos = System.nanoTime();
+                queueWait.record(startNanos - submitNanos);
+                activeTasks.incrementAndGet();
+                try {
+                    task.run();
+                } finally {
+                    activeTasks.decrementAndGet();
+                    completedTasks.increment();
+                    execution.record(System.nanoTime() - startNanos);
+                }
+            }
+        };
+        for (int i = 0; i < threads; i++) {
+            try {
+                group.next().execute(wrapped);
+                return true;
+            } catch (RejectedExecutionException e) {
+                // 这个线程的队列已满或者线程池正在关闭，尝试下一个
+                if (group.isShuttingDown()) {
+                    break;
+                }
+            }
+        }
+        rejectedTasks.increment();
+        return false;
+    }
+
+    /**
+     * 固定返回其中一个业务线程，同一个线程上的任务按提交顺序执行，适合需要保证顺序的流式处理。
+     * 直接提交到返回的线程时不会经过 execute 的统计，队列已满时抛出 RejectedExecutionException。
+     */
+    public EventExecutor next() {
+        return group.next();
+    }
+
+    public Future<?> shutdownGracefully() {
+        return group.shutdownGracefully();
+    }
+
+    @Override
+    public int getThreads() {
+        return threads;
+    }
+
+    @Override
+    public int getMaxPendingTasks() {
+        return maxPendingTasks;
+    }
+
+    @Override
+    public int getPendingTasks() {
+        int pending = 0;
+        for (EventExecutor executor : group) {
+            pending += ((SingleThreadEventExecutor) executor).pendingTasks();
+        }
+        return pending;
+    }
+
+    @Override
+    public int getActiveTasks() {
+        return activeTasks.get();
+    }
+
+    @Override
+    public long getCompletedTasks() {
+        return completedTasks.sum();
+    }
+
+    @Override
+    public long getRejectedTasks() {
+        return rejectedTasks.sum();
+    }
+
+    @Override
+    public double getQueueWaitMean() {
+        return queueWait.meanNanos();
+    }
+
+    @Override
+    public long getQueueWaitP99() {
+        return queueWait.percentileNanos(99);
+    }
+
+    @Override
+    public long getQueueWaitMax() {
+        return queueWait.maxNanos();
+    }
+
+    @Override
+    public double getExecutionMean() {
+        return execution.meanNanos();
+    }
+
+    @Override
+    public long getExecutionP99() {
+        return execution.percentileNanos(99);
+    }
+
+    @Override
+    public long getExecutionMax() {
+        return execution.maxNanos();
+    }
+}
@@ -0,0 +1,34 @@
+package offload;
+
+/**
+ * 通过 JMX 暴露的业务线程池指标，时间单位为纳秒
+ */
+public interface BusinessExecutorMBean {
+
+    int getThreads();
+
+    int getMaxPendingTasks();
+
+    /**
+     * 所有业务线程中排队等待执行的任务数
+     */
+    int getPendingTasks();
+
+    int getActiveTasks();
+
+    long getCompletedTasks();
+
+    long getRejectedTasks();
+
+    double getQueueWaitMean();
+
+    long getQueueWaitP99();
+
+    long getQueueWaitMax();
+
+    double getExecutionMean();
+
+    long getExecutionP99();
+
+    long getExecutionMax();
+}
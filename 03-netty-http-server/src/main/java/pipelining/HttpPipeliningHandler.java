@@ -0,0 +1,202 @@
+package pipelining;
+
+import backpressure.ReadGate;
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpObject;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpStatusClass;
+import io.netty.handler.codec.http.HttpUtil;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http.LastHttpContent;
+import io.netty.handler.timeout.IdleStateEvent;
+import io.netty.util.ReferenceCountUtil;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+
+
+/**
+ * 长连接 + HTTP pipelining 处理器。
+ *
+ * HTTP/1.1 默认就是长连接，HTTP/1.0 需要客户端显式带上 Connection: keep-alive。
+ * 客户端可以在同一个连接上连续发送多个请求（pipelining），但响应必须严格按照请求的顺序返回。
+ *
+ * 这里的做法是同一个连接上同时只放行一个请求，后续到达的请求先在本地排队，
+ * 当前请求的响应（LastHttpContent）写出之后再放行下一个。这样即使业务处理器异步响应，响应顺序也不会乱。
+ * 排队的请求超过 maxPipelinedRequests 时通过 ReadGate 暂停读取，不再从 socket 读取数据。
+ * 请求体不经过聚合时（流式上传），当前请求的 HttpContent 直接放行，只有后续请求需要排队。
+ *
+ * 配合 IdleStateHandler 使用：没有请求在处理时收到 IdleStateEvent，关闭空闲连接。
+ */
+public class HttpPipeliningHandler extends ChannelDuplexHandler {
+
+    private final int maxPipelinedRequests;
+
+    // 排队中的请求以及它们的 HttpContent，按到达顺序存放
+    private final Queue<HttpObject> pending = new ArrayDeque<HttpObject>();
+    private int queuedRequests;
+
+    // 当前是否有请求还没有写完响应
+    private boolean inFlight;
+    private boolean keepAlive;
+    private HttpVersion requestVersion = HttpVersion.HTTP_1_1;
+    // HEAD 请求的响应没有响应体，不需要长度信息
+    private boolean headRequest;
+    // 正在写出的响应是否需要计入请求完成（1xx 响应不算）
+    private boolean responding;
+    // 防止写响应时在同一调用栈中递归放行下一个请求
+    private boolean dispatching;
+    private boolean readSuspended;
+
+    public HttpPipeliningHandler(int maxPipelinedRequests) {
+        if (maxPipelinedRequests <= 0) {
+            throw new IllegalArgumentException("maxPipelinedRequests: " + maxPipelinedRequests + " (expected: > 0)");
+        }
+        this.maxPipelinedRequests = maxPipelinedRequests;
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        if (!(msg instanceof HttpObject)) {
+            ctx.fireChannelRead(msg);
+            return;
+        }
+        boolean request = msg instanceof HttpRequest;
+        if (!pending.isEmpty() || request && inFlight) {
+            // 前面还有请求没有响应，先排队
+            pending.add((HttpObject) msg);
+            if (request && ++queuedRequests >= maxPipelinedRequests && !readSuspended) {
+                readSuspended = true;
+                ReadGate.pause(ctx.channel(), ReadGate.PIPELINING);
+            }
+            return;
+        }
+        if (request) {
+            requestStarted((HttpRequest) msg);
+        }
+        dispatching = true;
+        try {
+            ctx.fireChannelRead(msg);
+        } finally {
+            dispatching = false;
+        }
+        // 业务处理器可能在 channelRead 中同步写完了响应，继续放行排队的请求
+        dispatchPending(ctx);
+    }
+
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+        if (msg instanceof HttpResponse) {
+            HttpResponse response = (HttpResponse) msg;
+            responding = !isInformational(response);
+            if (responding) {
+                // 客户端只有在能判断响应结束位置的时候才能复用连接
+                if (!headRequest && !isSelfDefinedMessageLength(response)) {
+                    keepAlive = false;
+                }
+                // 业务处理器明确要求关闭连接（比如请求体没有读完就返回了错误）
+                if (!HttpUtil.isKeepAlive(response)) {
+                    keepAlive = false;
+                }
+                HttpUtil.setKeepAlive(response.headers(), requestVersion, keepAlive);
+            }
+        }
+        if (msg instanceof LastHttpContent && responding) {
+            responding = false;
+            if (!keepAlive) {
+                ctx.write(msg, promise.unvoid()).addListener(ChannelFutureListener.CLOSE);
+                return;
+            }
+            ctx.write(msg, promise);
+            inFlight = false;
+            dispatchPending(ctx);
+            return;
+        }
+        ctx.write(msg, promise);
+    }
+
+    @Override
+    public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
+        if (evt instanceof IdleStateEvent && !inFlight && pending.isEmpty()) {
+            // 连接空闲，回收连接
+            ctx.close();
+            return;
+        }
+        ctx.fireUserEventTriggered(evt);
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        releasePending();
+        ctx.fireChannelInactive();
+    }
+
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx) throws Exception {
+        releasePending();
+    }
+
+    private void dispatchPending(ChannelHandlerContext ctx) {
+        if (dispatching) {
+            // 外层的 channelRead 返回后会继续放行
+            return;
+        }
+        dispatching = true;
+        try {
+            for (;;) {
+                HttpObject next = pending.peek();
+                if (next == null || next instanceof HttpRequest && inFlight) {
+                    break;
+                }
+                pending.poll();
+                if (next instanceof HttpRequest) {
+                    queuedRequests--;
+                    requestStarted((HttpRequest) next);
+                }
+                ctx.fireChannelRead(next);
+            }
+        } finally {
+            dispatching = false;
+        }
+        if (readSuspended && queuedRequests < maxPipelinedRequests) {
+            readSuspended = false;
+            ReadGate.resume(ctx.channel(), ReadGate.PIPELINING);
+        }
+    }
+
+    private void requestStarted(HttpRequest request) {
+        inFlight = true;
+        keepAlive = HttpUtil.isKeepAlive(request);
+        requestVersion = request.protocolVersion();
+        headRequest = HttpMethod.HEAD.equals(request.method());
+    }
+
+    private void releasePending() {
+        HttpObject msg;
+        while ((msg = pending.poll()) != null) {
+            ReferenceCountUtil.release(msg);
+        }
+        queuedRequests = 0;
+    }
+
+    /**
+     * 1xx、204、304 的响应按协议没有响应体（RFC 7230 3.3.3），不带 Content-Length 也能判断结束位置
+     */
+    private static boolean isSelfDefinedMessageLength(HttpResponse response) {
+        int code = response.status().code();
+        return HttpUtil.isContentLengthSet(response) || HttpUtil.isTransferEncodingChunked(response)
+                || isInformational(response)
+                || code == HttpResponseStatus.NO_CONTENT.code()
+                || code == HttpResponseStatus.NOT_MODIFIED.code();
+    }
+
+    private static boolean isInformational(HttpResponse response) {
+        return response.status().codeClass() == HttpStatusClass.INFORMATIONAL;
+    }
+}
@@ -0,0 +1,15 @@
+package router;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+
+
+/**
+ * 路由处理器，可能在业务线程中执行，不能依赖 EventLoop 线程。
+ * request 由 RouterHandler 负责释放，返回的响应由 RouterHandler 写出。
+ */
+public interface RouteHandler {
+
+    FullHttpResponse handle(ChannelHandlerContext ctx, FullHttpRequest request, RouteMatch match) throws Exception;
+}
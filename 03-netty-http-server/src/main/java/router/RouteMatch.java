@@ -0,0 +1,128 @@
+package router;
+
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.QueryStringDecoder;
+import io.netty.util.CharsetUtil;
+
+import java.util.List;
+
+
+/**
+ * 一次路由匹配的结果。
+ *
+ * 路径参数只记录在 uri 中的起止位置，匹配时不截取字符串；
+ * param 在访问时才截取并做 URL 解码，数字参数用 paramAsLong 直接在 uri 上解析，不产生中间字符串。
+ * 路径存在但方法不支持时，结果只带有 allowedMethods，没有处理器和参数。
+ */
+public final class RouteMatch {
+
+    private final RouteHandler handler;
+    private final String pattern;
+    private final String[] names;
+    private final String uri;
+    // 第 i 个参数是 uri[bounds[2i], bounds[2i + 1])
+    private final int[] bounds;
+    // 只有方法不匹配时不为 null
+    private final List<HttpMethod> allowedMethods;
+
+    RouteMatch(RouteHandler handler, String pattern, String[] names, String uri, int[] bounds) {
+        this.handler = handler;
+        this.pattern = pattern;
+        this.names = names;
+        this.uri = uri;
+        this.bounds = bounds;
+        this.allowedMethods = null;
+    }
+
+    RouteMatch(List<HttpMethod> allowedMethods) {
+        this.handler = null;
+        this.pattern = null;
+        this.names = new String[0];
+        this.uri = null;
+        this.bounds = null;
+        this.allowedMethods = allowedMethods;
+    }
+
+    /**
+     * 路径存在但请求方法不支持（405）
+     */
+    public boolean methodNotAllowed() {
+        return allowedMethods != null;
+    }
+
+    /**
+     * methodNotAllowed 时路径支持的方法（用于 Allow 头），否则返回 null
+     */
+    public List<HttpMethod> allowedMethods() {
+        return allowedMethods;
+    }
+
+    RouteHandler handler() {
+        return handler;
+    }
+
+    /**
+     * 注册时的路由，例如 /users/:id
+     */
+    public String pattern() {
+        return pattern;
+    }
+
+    public int paramCount() {
+        return names.length;
+    }
+
+    public String paramName(int index) {
+        return names[index];
+    }
+
+    /**
+     * URL 解码之后的参数值，没有这个参数时返回 null
+     */
+    public String param(String name) {
+        int index = indexOf(name);
+        if (index < 0) {
+            return null;
+        }
+        return QueryStringDecoder.decodeComponent(uri.substring(bounds[index << 1], bounds[(index << 1) + 1]),
+                CharsetUtil.UTF_8);
+    }
+
+    /**
+     * 按十进制整数解析参数，没有这个参数、不是数字或者溢出时返回 defaultValue
+     */
+    public long paramAsLong(String name, long defaultValue) {
+        int index = indexOf(name);
+        if (index < 0) {
+            return defaultValue;
+        }
+        int start = bounds[index << 1];
+        int end = bounds[(index << 1) + 1];
+        boolean negative = start < end && uri.charAt(start) == '-';
+        if (negative) {
+            start++;
+        }
+        // 最多 18 位，不会溢出
+        if (start == end || end - start > 18) {
+            return defaultValue;
+        }
+        long value = 0;
+        for (int i = start; i < end; i++) {
+            int digit = uri.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return defaultValue;
+            }
+            value = value * 10 + digit;
+        }
+        return negative ? -value : value;
+    }
+
+    private int indexOf(String name) {
+        for (int i = 0; i < names.length; i++) {
+            if (names[i].equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,399 @@
+package router;
+
+import io.netty.handler.codec.http.HttpMethod;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+
+/**
+ * 路由表：按路径组织的基数树（radix trie），每个节点上按请求方法保存处理器。
+ *
+ * 路由格式：
+ * - 静态路径：/users/new
+ * - 路径参数：/users/:id，匹配一个非空的路径段（不含 /）
+ * - 通配参数：/files/*path，只能在最后，匹配剩余的全部路径（可以为空）
+ *
+ * 匹配优先级：静态 > 路径参数 > 通配，高优先级分支匹配失败时回溯。
+ * HEAD 请求在同一个节点上没有注册 HEAD 时使用 GET 的路由。
+ * 路径能匹配但请求方法都不匹配时，同一次遍历会记录下来，匹配结果带上 405 需要的 Allow 列表。
+ * 匹配直接在 uri 上按下标比较，遇到 ? 或 # 结束，不做 URL 解码，不使用正则，也不截取路径段。
+ *
+ * 路由在启动时注册完成，之后只读，可以被所有连接共享；运行期间不能再调用 add。
+ */
+public final class Router {
+
+    private static final int[] EMPTY_BOUNDS = new int[0];
+    // 路径匹配但方法不匹配的标记，只在匹配过程中使用
+    private static final Route PATH_ONLY = new Route(null, null, null);
+
+    private final Node root = new Node("");
+    private int maxParams;
+
+    public Router get(String pattern, RouteHandler handler) {
+        return add(HttpMethod.GET, pattern, handler);
+    }
+
+    public Router post(String pattern, RouteHandler handler) {
+        return add(HttpMethod.POST, pattern, handler);
+    }
+
+    public Router put(String pattern, RouteHandler handler) {
+        return add(HttpMethod.PUT, pattern, handler);
+    }
+
+    public Router delete(String pattern, RouteHandler handler) {
+        return add(HttpMethod.DELETE, pattern, handler);
+    }
+
+    public Router add(HttpMethod method, String pattern, RouteHandler handler) {
+        if (pattern.isEmpty() || pattern.charAt(0) != '/') {
+            throw new IllegalArgumentException("pattern must start with '/': " + pattern);
+        }
+        List<String> names = new ArrayList<String>();
+        Node node = root;
+        int i = 0;
+        while (i < pattern.length()) {
+            char c = pattern.charAt(i);
+            if (c == ':' || c == '*') {
+                int end = pattern.indexOf('/', i);
+                if (end < 0) {
+                    end = pattern.length();
+                }
+                String name = pattern.substring(i + 1, end);
+                if (name.isEmpty() || names.contains(name)) {
+                    throw new IllegalArgumentException("invalid parameter '" + name + "' in " + pattern);
+                }
+                if (pattern.charAt(i - 1) != '/') {
+                    throw new IllegalArgumentException("parameter must be a whole path segment: " + pattern);
+                }
+                names.add(name);
+                if (c == '*') {
+                    if (end != pattern.length()) {
+                        throw new IllegalArgumentException("wildcard must be the last segment: " + pattern);
+                    }
+                    if (node.wildcard == null) {
+                        node.wildcard = new Node("");
+                    }
+                    node = node.wildcard;
+                } else {
+                    if (node.param == null) {
+                        node.param = new Node("");
+                    }
+                    node = node.param;
+                }
+                i = end;
+            } else {
+                int end = i;
+                while (end < pattern.length() && pattern.charAt(end) != ':' && pattern.charAt(end) != '*') {
+                    end++;
+                }
+                node = node.insert(pattern.substring(i, end));
+                i = end;
+            }
+        }
+        node.addRoute(method, new Route(pattern, names.toArray(new String[0]), handler));
+        maxParams = Math.max(maxParams, names.size());
+        return this;
+    }
+
+    /**
+     * 匹配请求，路径不存在时返回 null。
+     * 路径存在但方法不支持时返回 methodNotAllowed 的结果，只有这时才收集路径支持的方法
+     */
+    public RouteMatch match(HttpMethod method, String uri) {
+        int end = pathEnd(uri);
+        int[] bounds = maxParams == 0 ? EMPTY_BOUNDS : new int[maxParams << 1];
+        Route route = match(root, method, uri, 0, end, bounds, 0);
+        if (route == null) {
+            return null;
+        }
+        if (route == PATH_ONLY) {
+            return new RouteMatch(allowedMethods(uri, end));
+        }
+        return new RouteMatch(route.handler, route.pattern, route.names, uri, bounds);
+    }
+
+    /**
+     * 路径匹配的所有节点上注册的方法（用于 405 的 Allow 头），支持 GET 的路径同时支持 HEAD
+     */
+    private List<HttpMethod> allowedMethods(String uri, int end) {
+        List<HttpMethod> methods = new ArrayList<HttpMethod>();
+        collectMethods(root, uri, 0, end, methods);
+        if (methods.contains(HttpMethod.GET) && !methods.contains(HttpMethod.HEAD)) {
+            methods.add(methods.indexOf(HttpMethod.GET) + 1, HttpMethod.HEAD);
+        }
+        return methods;
+    }
+
+    private static int pathEnd(String uri) {
+        for (int i = 0; i < uri.length(); i++) {
+            char c = uri.charAt(i);
+            if (c == '?' || c == '#') {
+                return i;
+            }
+        }
+        return uri.length();
+    }
+
+    /**
+     * node 的 prefix 已经匹配，从 uri[i] 继续匹配，depth 是已经匹配的参数个数。
+     * 没有匹配的路由时，如果有路径匹配但方法不匹配的节点返回 PATH_ONLY，否则返回 null
+     */
+    private static Route match(Node node, HttpMethod method, String uri, int i, int end, int[] bounds, int depth) {
+        Route pathOnly = null;
+        if (i == end) {
+            Route route = node.route(method);
+            if (route != null) {
+                return route;
+            }
+            if (node.hasRoutes()) {
+                pathOnly = PATH_ONLY;
+            }
+            if (node.wildcard != null) {
+                route = node.wildcard.route(method);
+                if (route != null) {
+                    bounds[depth << 1] = end;
+                    bounds[(depth << 1) + 1] = end;
+                    return route;
+                }
+                if (node.wildcard.hasRoutes()) {
+                    pathOnly = PATH_ONLY;
+                }
+            }
+            return pathOnly;
+        }
+        Node child = node.child(uri.charAt(i));
+        if (child != null) {
+            int next = child.matchPrefix(uri, i, end);
+            if (next >= 0) {
+                Route route = match(child, method, uri, next, end, bounds, depth);
+                if (route == PATH_ONLY) {
+                    pathOnly = PATH_ONLY;
+                } else if (route != null) {
+                    return route;
+                }
+            }
+        }
+        if (node.param != null) {
+            int segmentEnd = i;
+            while (segmentEnd < end && uri.charAt(segmentEnd) != '/') {
+                segmentEnd++;
+            }
+            if (segmentEnd > i) {
+                Route route = match(node.param, method, uri, segmentEnd, end, bounds, depth + 1);
+                if (route == PATH_ONLY) {
+                    pathOnly = PATH_ONLY;
+                } else if (route != null) {
+                    // 回溯时深层写入的位置可能被覆盖，匹配成功后再写当前层
+                    bounds[depth << 1] = i;
+                    bounds[(depth << 1) + 1] = segmentEnd;
+                    return route;
+                }
+            }
+        }
+        if (node.wildcard != null) {
+            Route route = node.wildcard.route(method);
+            if (route != null) {
+                bounds[depth << 1] = i;
+                bounds[(depth << 1) + 1] = end;
+                return route;
+            }
+            if (node.wildcard.hasRoutes()) {
+                pathOnly = PATH_ONLY;
+            }
+        }
+        return pathOnly;
+    }
+
+    /**
+     * 和 match 按同样的规则遍历，把路径匹配的节点上注册的方法依次加入 out（不重复）
+     */
+    private static void collectMethods(Node node, String uri, int i, int end, List<HttpMethod> out) {
+        if (i == end) {
+            node.addMethodsTo(out);
+            if (node.wildcard != null) {
+                node.wildcard.addMethodsTo(out);
+            }
+            return;
+        }
+        Node child = node.child(uri.charAt(i));
+        if (child != null) {
+            int next = child.matchPrefix(uri, i, end);
+            if (next >= 0) {
+                collectMethods(child, uri, next, end, out);
+            }
+        }
+        if (node.param != null) {
+            int segmentEnd = i;
+            while (segmentEnd < end && uri.charAt(segmentEnd) != '/') {
+                segmentEnd++;
+            }
+            if (segmentEnd > i) {
+                collectMethods(node.param, uri, segmentEnd, end, out);
+            }
+        }
+        if (node.wildcard != null) {
+            node.wildcard.addMethodsTo(out);
+        }
+    }
+
+    private static final class Route {
+
+        final String pattern;
+        final String[] names;
+        final RouteHandler handler;
+
+        Route(String pattern, String[] names, RouteHandler handler) {
+            this.pattern = pattern;
+            this.names = names;
+            this.handler = handler;
+        }
+    }
+
+    /**
+     * 基数树节点。静态子节点按首字符区分，首字符互不相同；参数和通配子节点单独保存
+     */
+    private static final class Node {
+
+        private static final Node[] NO_CHILDREN = new Node[0];
+        private static final HttpMethod[] NO_METHODS = new HttpMethod[0];
+        private static final Route[] NO_ROUTES = new Route[0];
+
+        String prefix;
+        char[] indices = new char[0];
+        Node[] children = NO_CHILDREN;
+        Node param;
+        Node wildcard;
+        HttpMethod[] methods = NO_METHODS;
+        Route[] routes = NO_ROUTES;
+
+        Node(String prefix) {
+            this.prefix = prefix;
+        }
+
+        Node child(char c) {
+            char[] indices = this.indices;
+            for (int i = 0; i < indices.length; i++) {
+                if (indices[i] == c) {
+                    return children[i];
+                }
+            }
+            return null;
+        }
+
+        /**
+         * uri[i, end) 以 prefix 开头时返回 prefix 之后的位置，否则返回 -1。
+         * 逐个字符比较，比 String.regionMatches 快（prefix 通常很短，不值得走通用的区间比较）
+         */
+        int matchPrefix(String uri, int i, int end) {
+            String prefix = this.prefix;
+            int length = prefix.length();
+            if (i + length > end) {
+                return -1;
+            }
+            for (int j = 0; j < length; j++) {
+                if (uri.charAt(i + j) != prefix.charAt(j)) {
+                    return -1;
+                }
+            }
+            return i + length;
+        }
+
+        /**
+         * 按请求方法查找路由，没有注册 HEAD 时 HEAD 使用 GET 的路由（响应体由 RouterHandler 去掉）
+         */
+        Route route(HttpMethod method) {
+            Route route = exactRoute(method);
+            if (route == null && HttpMethod.HEAD.equals(method)) {
+                route = exactRoute(HttpMethod.GET);
+            }
+            return route;
+        }
+
+        boolean hasRoutes() {
+            return methods.length > 0;
+        }
+
+        Route exactRoute(HttpMethod method) {
+            HttpMethod[] methods = this.methods;
+            // HttpObjectDecoder 解析出的标准方法都是 HttpMethod 中的常量，先按引用比较
+            for (int i = 0; i < methods.length; i++) {
+                if (methods[i] == method) {
+                    return routes[i];
+                }
+            }
+            for (int i = 0; i < methods.length; i++) {
+                if (methods[i].equals(method)) {
+                    return routes[i];
+                }
+            }
+            return null;
+        }
+
+        /**
+         * 插入静态路径，返回路径结束处的节点，必要时拆分已有节点的 prefix
+         */
+        Node insert(String path) {
+            Node node = this;
+            while (!path.isEmpty()) {
+                Node child = node.child(path.charAt(0));
+                if (child == null) {
+                    child = new Node(path);
+                    node.addChild(child);
+                    return child;
+                }
+                int common = 0;
+                int max = Math.min(child.prefix.length(), path.length());
+                while (common < max && child.prefix.charAt(common) == path.charAt(common)) {
+                    common++;
+                }
+                if (common < child.prefix.length()) {
+                    Node split = new Node(child.prefix.substring(0, common));
+                    child.prefix = child.prefix.substring(common);
+                    split.addChild(child);
+                    node.replaceChild(path.charAt(0), split);
+                    child = split;
+                }
+                node = child;
+                path = path.substring(common);
+            }
+            return node;
+        }
+
+        void addChild(Node child) {
+            indices = Arrays.copyOf(indices, indices.length + 1);
+            indices[indices.length - 1] = child.prefix.charAt(0);
+            children = Arrays.copyOf(children, children.length + 1);
+            children[children.length - 1] = child;
+        }
+
+        void replaceChild(char c, Node child) {
+            for (int i = 0; i < indices.length; i++) {
+                if (indices[i] == c) {
+                    children[i] = child;
+                    return;
+                }
+            }
+        }
+
+        void addRoute(HttpMethod method, Route route) {
+            if (exactRoute(method) != null) {
+                throw new IllegalArgumentException("duplicate route: " + method + ' ' + route.pattern);
+            }
+            methods = Arrays.copyOf(methods, methods.length + 1);
+            methods[methods.length - 1] = method;
+            routes = Arrays.copyOf(routes, routes.length + 1);
+            routes[routes.length - 1] = route;
+        }
+
+        void addMethodsTo(List<HttpMethod> out) {
+            for (HttpMethod method : methods) {
+                if (!out.contains(method)) {
+                    out.add(method);
+                }
+            }
+        }
+    }
+}
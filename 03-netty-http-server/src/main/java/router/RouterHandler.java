@@ -0,0 +1,119 @@
+package router;
+
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpUtil;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.util.internal.SystemPropertyUtil;
+import logging.RateLimitedLogger;
+import offload.BusinessExecutor;
+
+
+/**
+ * 按 Router 分发 FullHttpRequest：
+ * - 匹配到路由时调用对应的 RouteHandler，写出返回的响应
+ * - HEAD 请求和 GET 一样处理，写出前去掉响应体，保留 Content-Length
+ * - 路径存在但方法不支持时返回 405，带 Allow 头
+ * - 没有匹配的路由时继续向后传递，交给后面的 Handler（HttpServletHandler）处理
+ *
+ * Router 在启动时构建，所有连接共享同一个 RouterHandler。
+ */
+@ChannelHandler.Sharable
+public class RouterHandler extends ChannelInboundHandlerAdapter {
+
+    // 路由处理器的异常每个请求都可能出现，限流输出，不阻塞 EventLoop 和业务线程
+    private static final RateLimitedLogger ERROR_LOGGER = new RateLimitedLogger("route-error-logger",
+            SystemPropertyUtil.getInt("http.errorLogPermitsPerSecond", 10), 1024);
+
+    private final Router router;
+    // 为空时路由处理器直接在 EventLoop 中执行
+    private final BusinessExecutor executor;
+
+    public RouterHandler(Router router) {
+        this(router, null);
+    }
+
+    public RouterHandler(Router router, BusinessExecutor executor) {
+        this.router = router;
+        this.executor = executor;
+    }
+
+    @Override
+    public void channelRead(final ChannelHandlerContext ctx, Object msg) throws Exception {
+        if (!(msg instanceof FullHttpRequest)) {
+            ctx.fireChannelRead(msg);
+            return;
+        }
+        final FullHttpRequest request = (FullHttpRequest) msg;
+        final RouteMatch match = router.match(request.method(), request.uri());
+        if (match == null) {
+            ctx.fireChannelRead(msg);
+            return;
+        }
+        if (match.methodNotAllowed()) {
+            request.release();
+            FullHttpResponse response = errorResponse(HttpResponseStatus.METHOD_NOT_ALLOWED);
+            StringBuilder allow = new StringBuilder();
+            for (HttpMethod method : match.allowedMethods()) {
+                if (allow.length() > 0) {
+                    allow.append(", ");
+                }
+                allow.append(method.name());
+            }
+            response.headers().set(HttpHeaderNames.ALLOW, allow);
+            ctx.writeAndFlush(response);
+            return;
+        }
+        if (executor == null) {
+            ctx.writeAndFlush(handle(ctx, request, match));
+            return;
+        }
+        boolean accepted = executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                // 不在 EventLoop 中调用时，Netty 会把写操作提交到 Channel 所属的 EventLoop 执行
+                ctx.writeAndFlush(handle(ctx, request, match));
+            }
+        });
+        if (!accepted) {
+            // 业务线程池已满，快速失败，不让请求在队列中无限等待
+            request.release();
+            ctx.writeAndFlush(errorResponse(HttpResponseStatus.SERVICE_UNAVAILABLE));
+        }
+    }
+
+    private static FullHttpResponse handle(ChannelHandlerContext ctx, FullHttpRequest request, RouteMatch match) {
+        try {
+            FullHttpResponse response = match.handler().handle(ctx, request, match);
+            if (response == null) {
+                return errorResponse(HttpResponseStatus.NO_CONTENT);
+            }
+            if (HttpMethod.HEAD.equals(request.method()) && response.content().isReadable()) {
+                // HttpServerCodec 对 HEAD 的响应不写响应体，HTTP/2 的 Codec 不会，这里统一去掉
+                FullHttpResponse head = response.replace(Unpooled.EMPTY_BUFFER);
+                response.release();
+                return head;
+            }
+            return response;
+        } catch (Throwable cause) {
+            ERROR_LOGGER.log("Route " + match.pattern() + " failed", cause);
+            return errorResponse(HttpResponseStatus.INTERNAL_SERVER_ERROR);
+        } finally {
+            request.release();
+        }
+    }
+
+    private static FullHttpResponse errorResponse(HttpResponseStatus status) {
+        FullHttpResponse response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, status);
+        HttpUtil.setContentLength(response, 0);
+        return response;
+    }
+}
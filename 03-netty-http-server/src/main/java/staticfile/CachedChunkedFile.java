@@ -0,0 +1,29 @@
+package staticfile;
+
+import io.netty.handler.stream.ChunkedNioFile;
+
+import java.io.IOException;
+
+
+/**
+ * 使用缓存文件描述符的 ChunkedNioFile，用于 TLS 连接（数据需要加密，不能使用 sendfile）。
+ * 发送完之后只释放对 CachedFile 的引用，不关闭文件。
+ */
+public class CachedChunkedFile extends ChunkedNioFile {
+
+    private final CachedFile file;
+    private boolean closed;
+
+    public CachedChunkedFile(CachedFile file, long offset, long length, int chunkSize) throws IOException {
+        super(file.channel(), offset, length, chunkSize);
+        this.file = file;
+    }
+
+    @Override
+    public void close() throws Exception {
+        if (!closed) {
+            closed = true;
+            file.release();
+        }
+    }
+}
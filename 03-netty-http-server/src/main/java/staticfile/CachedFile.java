@@ -0,0 +1,87 @@
+package staticfile;
+
+import io.netty.util.AbstractReferenceCounted;
+import io.netty.util.ReferenceCounted;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+
+
+/**
+ * FileCache 中打开的文件。
+ *
+ * 引用计数：缓存本身持有一个引用，每个正在发送的响应再各持有一个引用，
+ * 被缓存淘汰并且所有响应都发送完之后才真正关闭文件描述符。
+ * FileChannel 只做按位置读取（transferTo / read(buffer, position)），多个连接可以同时使用同一个 FileChannel。
+ */
+public final class CachedFile extends AbstractReferenceCounted {
+
+    private final Path path;
+    private final FileChannel channel;
+    private final long length;
+    private final long lastModified;
+    private final String etag;
+    private volatile long lastAccess;
+
+    CachedFile(Path path, FileChannel channel, long length, long lastModified) {
+        this.path = path;
+        this.channel = channel;
+        this.length = length;
+        this.lastModified = lastModified;
+        // 文件大小 + 修改时间作为 ETag，文件内容变化时一定会变
+        this.etag = '"' + Long.toHexString(length) + '-' + Long.toHexString(lastModified) + '"';
+        this.lastAccess = System.nanoTime();
+    }
+
+    public Path path() {
+        return path;
+    }
+
+    public FileChannel channel() {
+        return channel;
+    }
+
+    public long length() {
+        return length;
+    }
+
+    /**
+     * 最后修改时间，毫秒
+     */
+    public long lastModified() {
+        return lastModified;
+    }
+
+    public String etag() {
+        return etag;
+    }
+
+    long lastAccess() {
+        return lastAccess;
+    }
+
+    void touchAccess() {
+        lastAccess = System.nanoTime();
+    }
+
+    @Override
+    protected void deallocate() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            System.out.println("Failed to close " + path + ": " + e);
+        }
+    }
+
+    @Override
+    public CachedFile retain() {
+        super.retain();
+        return this;
+    }
+
+    @Override
+    public ReferenceCounted touch(Object hint) {
+        return this;
+    }
+}
@@ -0,0 +1,23 @@
+package staticfile;
+
+import io.netty.channel.DefaultFileRegion;
+
+
+/**
+ * 使用缓存文件描述符的 DefaultFileRegion，发送完之后只释放对 CachedFile 的引用，不关闭文件。
+ * 明文连接下由 sendfile / transferTo 直接从页缓存发送到 socket，数据不经过用户态。
+ */
+public class CachedFileRegion extends DefaultFileRegion {
+
+    private final CachedFile file;
+
+    public CachedFileRegion(CachedFile file, long position, long count) {
+        super(file.channel(), position, count);
+        this.file = file;
+    }
+
+    @Override
+    protected void deallocate() {
+        file.release();
+    }
+}
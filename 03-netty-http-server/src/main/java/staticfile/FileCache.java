@@ -0,0 +1,105 @@
+package staticfile;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * 打开文件描述符的缓存，热点文件不需要每个请求都 open / close。
+ *
+ * - 按 LRU 淘汰，最多保留 maxOpenFiles 个打开的文件
+ * - 超过 idleTimeout 没有访问的文件在下一次 acquire 时关闭
+ * - 每次 acquire 都会比较文件大小和修改时间，文件被修改后重新打开
+ *
+ * 所有连接共用一个实例，内部加锁；阻塞的文件操作（stat、open）在调用线程中执行。
+ */
+public final class FileCache {
+
+    private final int maxOpenFiles;
+    private final long idleTimeoutNanos;
+    private final LinkedHashMap<Path, CachedFile> files = new LinkedHashMap<Path, CachedFile>(16, 0.75f, true);
+    private long lastSweepNanos = System.nanoTime();
+
+    public FileCache(int maxOpenFiles, long idleTimeout, TimeUnit unit) {
+        this.maxOpenFiles = maxOpenFiles;
+        this.idleTimeoutNanos = unit.toNanos(idleTimeout);
+    }
+
+    /**
+     * 获取文件，返回的 CachedFile 已经 retain，使用完毕后需要 release。文件不存在或者不是普通文件时返回 null。
+     */
+    public CachedFile acquire(Path path) throws IOException {
+        BasicFileAttributes attrs;
+        try {
+            attrs = Files.readAttributes(path, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+        if (!attrs.isRegularFile()) {
+            return null;
+        }
+        long length = attrs.size();
+        long lastModified = attrs.lastModifiedTime().toMillis();
+        synchronized (this) {
+            sweepIdle();
+            CachedFile file = files.get(path);
+            if (file != null) {
+                if (file.length() == length && file.lastModified() == lastModified) {
+                    file.touchAccess();
+                    return file.retain();
+                }
+                // 文件已经被修改
+                files.remove(path);
+                file.release();
+            }
+        }
+        CachedFile opened = new CachedFile(path, FileChannel.open(path, StandardOpenOption.READ), length, lastModified);
+        if (maxOpenFiles <= 0) {
+            // 不缓存时文件只由响应持有
+            return opened;
+        }
+        synchronized (this) {
+            CachedFile old = files.put(path, opened);
+            if (old != null) {
+                old.release();
+            }
+            opened.retain();
+            Iterator<CachedFile> it = files.values().iterator();
+            while (files.size() > maxOpenFiles && it.hasNext()) {
+                CachedFile eldest = it.next();
+                it.remove();
+                eldest.release();
+            }
+            return opened;
+        }
+    }
+
+    public synchronized int size() {
+        return files.size();
+    }
+
+    private void sweepIdle() {
+        long now = System.nanoTime();
+        if (now - lastSweepNanos < TimeUnit.SECONDS.toNanos(1)) {
+            return;
+        }
+        lastSweepNanos = now;
+        Iterator<Map.Entry<Path, CachedFile>> it = files.entrySet().iterator();
+        while (it.hasNext()) {
+            CachedFile file = it.next().getValue();
+            if (now - file.lastAccess() > idleTimeoutNanos) {
+                it.remove();
+                file.release();
+            }
+        }
+    }
+}
@@ -0,0 +1,411 @@
+package staticfile;
+
+import compression.CompressionPolicy;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.handler.codec.DateFormatter;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.DefaultHttpResponse;
+import io.netty.handler.codec.http.DefaultLastHttpContent;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpChunkedInput;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaderValues;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpUtil;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http.LastHttpContent;
+import io.netty.handler.codec.http.QueryStringDecoder;
+import io.netty.handler.codec.http2.Http2StreamChannel;
+import io.netty.handler.ssl.SslHandler;
+import io.netty.util.ReferenceCountUtil;
+import offload.BusinessExecutor;
+
+import java.io.IOException;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+
+/**
+ * 静态文件服务，处理以 prefix 开头的 GET / HEAD 请求，其他请求继续向后传递。
+ *
+ * - 明文连接使用 CachedFileRegion（sendfile 零拷贝），TLS 连接和 HTTP/2 stream 使用 CachedChunkedFile 分块读取，
+ *   后者需要 Pipeline 中有 ChunkedWriteHandler，并且位于 HttpPipeliningHandler 之后
+ * - 支持单个 Range（206 / 416）和 If-Range
+ * - 支持 ETag / If-None-Match 和 Last-Modified / If-Modified-Since 条件请求（304）
+ * - 文件描述符由 FileCache 缓存
+ * - FileRegion / ChunkedFile 不经过 AdaptiveHttpContentCompressor，可压缩的小文件在客户端接受 gzip / deflate 时
+ *   使用 CompressionPolicy 的预压缩缓存，返回整个压缩后的内容（弱 ETag），Range 请求仍然返回原始内容
+ * - 每个请求都要 stat，未缓存的文件还要 open，这些阻塞的文件操作在业务线程池中执行；没有业务线程池时在 EventLoop 中执行
+ *
+ * 只能访问 root 目录下的文件，路径中的 .. 等会在 normalize 之后检查。
+ */
+public class StaticFileHandler extends ChannelInboundHandlerAdapter {
+
+    private static final int CHUNK_SIZE = 8192;
+    private static final Map<String, String> CONTENT_TYPES = new HashMap<String, String>();
+
+    static {
+        CONTENT_TYPES.put("html", "text/html; charset=UTF-8");
+        CONTENT_TYPES.put("htm", "text/html; charset=UTF-8");
+        CONTENT_TYPES.put("css", "text/css; charset=UTF-8");
+        CONTENT_TYPES.put("js", "application/javascript; charset=UTF-8");
+        CONTENT_TYPES.put("json", "application/json; charset=UTF-8");
+        CONTENT_TYPES.put("txt", "text/plain; charset=UTF-8");
+        CONTENT_TYPES.put("xml", "application/xml; charset=UTF-8");
+        CONTENT_TYPES.put("svg", "image/svg+xml");
+        CONTENT_TYPES.put("png", "image/png");
+        CONTENT_TYPES.put("jpg", "image/jpeg");
+        CONTENT_TYPES.put("jpeg", "image/jpeg");
+        CONTENT_TYPES.put("gif", "image/gif");
+        CONTENT_TYPES.put("ico", "image/x-icon");
+        CONTENT_TYPES.put("pdf", "application/pdf");
+        CONTENT_TYPES.put("zip", "application/zip");
+        CONTENT_TYPES.put("gz", "application/gzip");
+        CONTENT_TYPES.put("mp4", "video/mp4");
+        CONTENT_TYPES.put("woff2", "font/woff2");
+    }
+
+    private final String prefix;
+    private final Path root;
+    private final FileCache fileCache;
+    // 为空时文件操作直接在 EventLoop 中执行
+    private final BusinessExecutor executor;
+    // 为空时不预压缩
+    private final CompressionPolicy compression;
+
+    public StaticFileHandler(String prefix, Path root, FileCache fileCache) {
+        this(prefix, root, fileCache, null);
+    }
+
+    public StaticFileHandler(String prefix, Path root, FileCache fileCache, BusinessExecutor executor) {
+        this(prefix, root, fileCache, executor, CompressionPolicy.defaultPolicy());
+    }
+
+    public StaticFileHandler(String prefix, Path root, FileCache fileCache, BusinessExecutor executor,
+                             CompressionPolicy compression) {
+        this.prefix = prefix;
+        this.root = root.toAbsolutePath().normalize();
+        this.fileCache = fileCache;
+        this.executor = executor;
+        this.compression = compression;
+    }
+
+    @Override
+    public void channelRead(final ChannelHandlerContext ctx, Object msg) throws Exception {
+        if (!(msg instanceof FullHttpRequest) || !((FullHttpRequest) msg).uri().startsWith(prefix)) {
+            ctx.fireChannelRead(msg);
+            return;
+        }
+        final FullHttpRequest request = (FullHttpRequest) msg;
+        if (executor == null) {
+            serveAndRelease(ctx, request);
+            return;
+        }
+        boolean accepted = executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                // 不在 EventLoop 中调用时，Netty 会把写操作按提交顺序交给 Channel 所属的 EventLoop 执行
+                serveAndRelease(ctx, request);
+            }
+        });
+        if (!accepted) {
+            request.release();
+            sendError(ctx, HttpResponseStatus.SERVICE_UNAVAILABLE);
+        }
+    }
+
+    private void serveAndRelease(ChannelHandlerContext ctx, FullHttpRequest request) {
+        try {
+            serve(ctx, request);
+        } catch (IOException e) {
+            System.out.println("Failed to serve " + request.uri() + ": " + e);
+            sendError(ctx, HttpResponseStatus.INTERNAL_SERVER_ERROR);
+        } catch (Exception e) {
+            ctx.fireExceptionCaught(e);
+        } finally {
+            ReferenceCountUtil.release(request);
+        }
+    }
+
+    private void serve(ChannelHandlerContext ctx, FullHttpRequest request) throws Exception {
+        if (!request.decoderResult().isSuccess()) {
+            sendError(ctx, HttpResponseStatus.BAD_REQUEST);
+            return;
+        }
+        boolean head = HttpMethod.HEAD.equals(request.method());
+        if (!head && !HttpMethod.GET.equals(request.method())) {
+            sendError(ctx, HttpResponseStatus.METHOD_NOT_ALLOWED);
+            return;
+        }
+        Path path = resolve(request.uri());
+        if (path == null) {
+            sendError(ctx, HttpResponseStatus.FORBIDDEN);
+            return;
+        }
+        CachedFile file = fileCache.acquire(path);
+        if (file == null) {
+            sendError(ctx, HttpResponseStatus.NOT_FOUND);
+            return;
+        }
+        // 响应写出之前 file 由这里负责释放，交给 FileRegion / ChunkedFile 之后由它们释放
+        boolean handedOver = false;
+        try {
+            HttpHeaders headers = request.headers();
+            if (isNotModified(headers, file)) {
+                FullHttpResponse response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.NOT_MODIFIED);
+                setValidators(response, file);
+                ctx.writeAndFlush(response);
+                return;
+            }
+
+            long length = file.length();
+            long start = 0;
+            long end = length - 1;
+            String range = headers.get(HttpHeaderNames.RANGE);
+            boolean partial = false;
+            if (range != null && isRangeApplicable(headers, file)) {
+                long[] bounds = parseRange(range, length);
+                if (bounds == null) {
+                    FullHttpResponse response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1,
+                            HttpResponseStatus.REQUESTED_RANGE_NOT_SATISFIABLE);
+                    response.headers().set(HttpHeaderNames.CONTENT_RANGE, "bytes */" + length);
+                    HttpUtil.setContentLength(response, 0);
+                    ctx.writeAndFlush(response);
+                    return;
+                }
+                if (bounds.length == 2) {
+                    partial = true;
+                    start = bounds[0];
+                    end = bounds[1];
+                }
+            }
+            long count = end - start + 1;
+
+            String contentType = contentType(path);
+            boolean precompressible = !partial && compression != null && compression.isPrecompressible(length, contentType);
+            if (precompressible && sendPrecompressed(ctx, request, path, file, contentType, head)) {
+                return;
+            }
+
+            HttpResponse response = new DefaultHttpResponse(HttpVersion.HTTP_1_1,
+                    partial ? HttpResponseStatus.PARTIAL_CONTENT : HttpResponseStatus.OK);
+            HttpHeaders responseHeaders = response.headers();
+            HttpUtil.setContentLength(response, count);
+            responseHeaders.set(HttpHeaderNames.CONTENT_TYPE, contentType);
+            if (precompressible) {
+                // 同一个 URL 可能返回压缩或者不压缩的内容
+                responseHeaders.set(HttpHeaderNames.VARY, HttpHeaderNames.ACCEPT_ENCODING);
+            }
+            responseHeaders.set(HttpHeaderNames.ACCEPT_RANGES, HttpHeaderValues.BYTES);
+            setValidators(response, file);
+            if (partial) {
+                responseHeaders.set(HttpHeaderNames.CONTENT_RANGE, "bytes " + start + '-' + end + '/' + length);
+            }
+
+            ctx.write(response);
+            if (head || count == 0) {
+                ctx.writeAndFlush(LastHttpContent.EMPTY_LAST_CONTENT);
+                return;
+            }
+            // HTTP/2 的 stream 子 Channel 只能写出 DATA 帧，和 TLS 一样分块读取
+            if (ctx.pipeline().get(SslHandler.class) == null && !(ctx.channel() instanceof Http2StreamChannel)) {
+                ctx.write(new CachedFileRegion(file, start, count));
+                handedOver = true;
+                ctx.writeAndFlush(LastHttpContent.EMPTY_LAST_CONTENT);
+            } else {
+                // HttpChunkedInput 会在最后输出 LastHttpContent
+                ctx.writeAndFlush(new HttpChunkedInput(new CachedChunkedFile(file, start, count, CHUNK_SIZE)));
+                handedOver = true;
+            }
+        } finally {
+            if (!handedOver) {
+                file.release();
+            }
+        }
+    }
+
+    /**
+     * 客户端接受 gzip / deflate 时发送预压缩的内容，返回 false 表示需要发送原始内容（不接受压缩或者超过 CPU 预算）。
+     * 压缩后是另一种表示，ETag 使用弱 ETag，If-None-Match 仍然可以命中，If-Range 不会命中
+     */
+    private boolean sendPrecompressed(ChannelHandlerContext ctx, FullHttpRequest request, Path path, CachedFile file,
+                                      String contentType, boolean head) throws Exception {
+        String encoding = CompressionPolicy.selectEncoding(request.headers().get(HttpHeaderNames.ACCEPT_ENCODING));
+        if (encoding == null) {
+            return false;
+        }
+        ByteBuf body = compression.precompressed(path.toString(), file.etag(), encoding, () -> readFully(file));
+        if (body == null) {
+            return false;
+        }
+        HttpResponse response = new DefaultHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK);
+        HttpUtil.setContentLength(response, body.readableBytes());
+        setValidators(response, file);
+        response.headers()
+                .set(HttpHeaderNames.CONTENT_TYPE, contentType)
+                .set(HttpHeaderNames.CONTENT_ENCODING, encoding)
+                .set(HttpHeaderNames.VARY, HttpHeaderNames.ACCEPT_ENCODING)
+                .set(HttpHeaderNames.ETAG, "W/" + file.etag());
+        // 已经带 Content-Encoding，AdaptiveHttpContentCompressor 不会再压缩
+        ctx.write(response);
+        if (head) {
+            body.release();
+            ctx.writeAndFlush(LastHttpContent.EMPTY_LAST_CONTENT);
+        } else {
+            ctx.writeAndFlush(new DefaultLastHttpContent(body));
+        }
+        return true;
+    }
+
+    private static ByteBuf readFully(CachedFile file) throws IOException {
+        int length = (int) file.length();
+        ByteBuf content = Unpooled.buffer(length);
+        try {
+            while (content.writerIndex() < length) {
+                if (content.writeBytes(file.channel(), content.writerIndex(), length - content.writerIndex()) < 0) {
+                    throw new IOException("Unexpected end of " + file.path());
+                }
+            }
+        } catch (IOException e) {
+            content.release();
+            throw e;
+        }
+        return content;
+    }
+
+    /**
+     * 把请求路径映射到 root 下的文件，越界时返回 null
+     */
+    private Path resolve(String uri) {
+        String decoded = new QueryStringDecoder(uri).path();
+        String relative = decoded.substring(Math.min(prefix.length(), decoded.length()));
+        if (relative.indexOf('\0') >= 0 || relative.indexOf('\\') >= 0) {
+            return null;
+        }
+        while (relative.startsWith("/")) {
+            relative = relative.substring(1);
+        }
+        try {
+            Path path = root.resolve(relative).normalize();
+            return path.startsWith(root) ? path : null;
+        } catch (InvalidPathException e) {
+            return null;
+        }
+    }
+
+    private static boolean isNotModified(HttpHeaders headers, CachedFile file) {
+        String ifNoneMatch = headers.get(HttpHeaderNames.IF_NONE_MATCH);
+        if (ifNoneMatch != null) {
+            // If-None-Match 优先于 If-Modified-Since
+            return matchesEtag(ifNoneMatch, file.etag());
+        }
+        String ifModifiedSince = headers.get(HttpHeaderNames.IF_MODIFIED_SINCE);
+        if (ifModifiedSince == null) {
+            return false;
+        }
+        Date date = DateFormatter.parseHttpDate(ifModifiedSince);
+        // HTTP 日期只精确到秒
+        return date != null && file.lastModified() / 1000 <= date.getTime() / 1000;
+    }
+
+    /**
+     * 带 If-Range 时，只有文件没有变化才返回部分内容，否则返回整个文件
+     */
+    private static boolean isRangeApplicable(HttpHeaders headers, CachedFile file) {
+        String ifRange = headers.get(HttpHeaderNames.IF_RANGE);
+        if (ifRange == null) {
+            return true;
+        }
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+            return ifRange.equals(file.etag());
+        }
+        Date date = DateFormatter.parseHttpDate(ifRange);
+        return date != null && file.lastModified() / 1000 == date.getTime() / 1000;
+    }
+
+    private static boolean matchesEtag(String header, String etag) {
+        for (String candidate : header.split(",")) {
+            candidate = candidate.trim();
+            if (candidate.startsWith("W/")) {
+                candidate = candidate.substring(2);
+            }
+            if ("*".equals(candidate) || etag.equals(candidate)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 解析 Range 头。
+     * 返回 null 表示格式正确但范围无法满足（416）；返回空数组表示忽略 Range 返回整个文件
+     * （格式不支持、范围无效或者多个范围）；否则返回 [start, end]。
+     */
+    static long[] parseRange(String range, long length) {
+        if (!range.startsWith("bytes=") || range.indexOf(',') >= 0) {
+            return new long[0];
+        }
+        String spec = range.substring("bytes=".length()).trim();
+        int dash = spec.indexOf('-');
+        if (dash < 0) {
+            return new long[0];
+        }
+        try {
+            long start;
+            long end;
+            if (dash == 0) {
+                // bytes=-n，最后 n 个字节
+                long suffix = Long.parseLong(spec.substring(1));
+                if (suffix <= 0 || length == 0) {
+                    return null;
+                }
+                start = Math.max(0, length - suffix);
+                end = length - 1;
+            } else {
+                start = Long.parseLong(spec.substring(0, dash));
+                long last = dash == spec.length() - 1 ? Long.MAX_VALUE : Long.parseLong(spec.substring(dash + 1));
+                if (last < start) {
+                    // 结束位置在开始位置之前的范围无效，忽略 Range（RFC 7233 2.1）
+                    return new long[0];
+                }
+                if (start >= length) {
+                    return null;
+                }
+                end = Math.min(last, length - 1);
+            }
+            return new long[]{start, end};
+        } catch (NumberFormatException e) {
+            return new long[0];
+        }
+    }
+
+    private static void setValidators(HttpResponse response, CachedFile file) {
+        response.headers()
+                .set(HttpHeaderNames.ETAG, file.etag())
+                .set(HttpHeaderNames.LAST_MODIFIED, DateFormatter.format(new Date(file.lastModified())));
+    }
+
+    private static String contentType(Path path) {
+        String name = path.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        String type = dot < 0 ? null : CONTENT_TYPES.get(name.substring(dot + 1).toLowerCase(Locale.ROOT));
+        return type == null ? "application/octet-stream" : type;
+    }
+
+    private static void sendError(ChannelHandlerContext ctx, HttpResponseStatus status) {
+        FullHttpResponse response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, status);
+        HttpUtil.setContentLength(response, 0);
+        ctx.writeAndFlush(response);
+    }
+}
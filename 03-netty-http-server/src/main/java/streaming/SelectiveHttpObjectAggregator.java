@@ -0,0 +1,42 @@
+package streaming;
+
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.LastHttpContent;
+
+import java.util.function.Predicate;
+
+
+/**
+ * 按路由选择是否聚合的 HttpObjectAggregator。
+ *
+ * aggregate 返回 true 的请求和原来一样聚合成 FullHttpRequest（受 maxContentLength 限制），
+ * 其他请求的 HttpRequest 和后续 HttpContent 原样向后传递，交给 StreamingHttpHandler 边读边处理，
+ * 大文件上传不会先整个缓存在内存里，也不受 maxContentLength 的限制。
+ */
+public class SelectiveHttpObjectAggregator extends HttpObjectAggregator {
+
+    private final Predicate<? super HttpRequest> aggregate;
+    // 当前请求不聚合，直到 LastHttpContent 为止都直接放行
+    private boolean passThrough;
+
+    public SelectiveHttpObjectAggregator(int maxContentLength, Predicate<? super HttpRequest> aggregate) {
+        super(maxContentLength);
+        this.aggregate = aggregate;
+    }
+
+    @Override
+    public boolean acceptInboundMessage(Object msg) throws Exception {
+        if (msg instanceof HttpRequest && !(msg instanceof FullHttpRequest)) {
+            passThrough = !aggregate.test((HttpRequest) msg);
+        }
+        if (passThrough) {
+            if (msg instanceof LastHttpContent) {
+                passThrough = false;
+            }
+            return false;
+        }
+        return super.acceptInboundMessage(msg);
+    }
+}
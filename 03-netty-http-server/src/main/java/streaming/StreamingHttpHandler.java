@@ -0,0 +1,88 @@
+package streaming;
+
+import backpressure.ReadGate;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.HttpContent;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpUtil;
+import io.netty.handler.codec.http.LastHttpContent;
+
+
+/**
+ * 流式处理请求体的 Handler 基类，放在 SelectiveHttpObjectAggregator 后面。
+ *
+ * 没有被聚合的请求（HttpRequest 不是 FullHttpRequest）由这里处理：先回调 requestStarted，
+ * 之后每收到一个 HttpContent 回调一次 contentReceived，最后一块为 LastHttpContent。
+ * 已经聚合的 FullHttpRequest 以及其他消息继续向后传递。
+ *
+ * 背压：子类异步消费 HttpContent 时，消费不过来就调用 pauseReading 暂停从 socket 读取，处理完再 resumeReading。
+ * 暂停之后已经解码出来的 HttpContent 仍然会送达，子类需要能够接收。
+ *
+ * 所有回调都在 EventLoop 中执行。
+ */
+public abstract class StreamingHttpHandler extends ChannelInboundHandlerAdapter {
+
+    private boolean streaming;
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        if (msg instanceof HttpRequest && !(msg instanceof FullHttpRequest)) {
+            HttpRequest request = (HttpRequest) msg;
+            streaming = true;
+            if (HttpUtil.is100ContinueExpected(request)) {
+                // 客户端在等待 100 Continue 才会发送请求体，聚合器不处理这个请求，需要在这里回复
+                ctx.writeAndFlush(new DefaultFullHttpResponse(request.protocolVersion(), HttpResponseStatus.CONTINUE));
+                request.headers().remove(HttpHeaderNames.EXPECT);
+            }
+            requestStarted(ctx, request);
+            return;
+        }
+        if (streaming && msg instanceof HttpContent) {
+            boolean last = msg instanceof LastHttpContent;
+            if (last) {
+                streaming = false;
+            }
+            contentReceived(ctx, (HttpContent) msg, last);
+            return;
+        }
+        ctx.fireChannelRead(msg);
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        if (streaming) {
+            streaming = false;
+            requestAborted(ctx);
+        }
+        ctx.fireChannelInactive();
+    }
+
+    /**
+     * 收到请求头
+     */
+    protected abstract void requestStarted(ChannelHandlerContext ctx, HttpRequest request) throws Exception;
+
+    /**
+     * 收到一块请求体，content 的所有权交给子类，使用完毕后需要 release
+     */
+    protected abstract void contentReceived(ChannelHandlerContext ctx, HttpContent content, boolean last) throws Exception;
+
+    /**
+     * 请求体还没有接收完连接就断开了
+     */
+    protected void requestAborted(ChannelHandlerContext ctx) throws Exception {
+    }
+
+    protected final void pauseReading(ChannelHandlerContext ctx) {
+        ReadGate.pause(ctx.channel(), ReadGate.STREAMING);
+    }
+
+    protected final void resumeReading(ChannelHandlerContext ctx) {
+        ReadGate.resume(ctx.channel(), ReadGate.STREAMING);
+    }
+}
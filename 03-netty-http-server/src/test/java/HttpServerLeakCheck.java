@@ -0,0 +1,460 @@
+import admission.AdmissionControl;
+import admission.HttpAdmissionHandler;
+import cache.ResponseCache;
+import cache.ResponseCacheHandler;
+import compression.AdaptiveHttpContentCompressor;
+import compression.CompressionPolicy;
+import http2.Http2Cleartext;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.DefaultHttpHeaders;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpServerCodec;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http2.DefaultHttp2DataFrame;
+import io.netty.handler.codec.http2.DefaultHttp2Headers;
+import io.netty.handler.codec.http2.DefaultHttp2HeadersFrame;
+import io.netty.handler.codec.http2.Http2FrameCodecBuilder;
+import io.netty.handler.codec.http2.Http2Headers;
+import io.netty.handler.codec.http2.Http2HeadersFrame;
+import io.netty.handler.codec.http2.Http2MultiplexHandler;
+import io.netty.handler.codec.http2.Http2StreamChannel;
+import io.netty.handler.codec.http2.Http2StreamChannelBootstrap;
+import io.netty.handler.codec.http2.Http2StreamFrameToHttpObjectCodec;
+import io.netty.handler.stream.ChunkedWriteHandler;
+import io.netty.util.CharsetUtil;
+import io.netty.util.ReferenceCountUtil;
+import leak.HttpResponses;
+import leak.LeakCheck;
+import org.HdrHistogram.Recorder;
+import pipelining.HttpPipeliningHandler;
+import router.RouterHandler;
+import staticfile.FileCache;
+import staticfile.StaticFileHandler;
+import streaming.SelectiveHttpObjectAggregator;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+
+/**
+ * HttpServer Pipeline 的泄漏检查，Handler 顺序与 HttpServer 保持一致（不含 flush / 背压等不持有消息的 Handler）。
+ * h2c 场景用另一个 EmbeddedChannel 作为 HTTP/2 客户端，两边的字节在同一个线程中来回传递。
+ * 业务逻辑和上传都在 EventLoop 中执行，不启动业务线程池。每个场景检查响应状态以及连接是否保持打开。
+ *
+ * mvn test 时由 exec-maven-plugin 运行，也可以直接运行 main。
+ */
+public class HttpServerLeakCheck {
+
+    private static final int MAX_CONTENT_LENGTH = 64 * 1024;
+    private static final long MAX_UPLOAD_BYTES = 64 * 1024;
+    private static final int PAGE_SIZE = 4096;
+    // 一次写入中每个请求的请求行，用来登记请求方法（请求体中只有 a，不会误匹配）
+    private static final Pattern REQUEST_LINE = Pattern.compile("(?m)^([A-Z]+) \\S+ HTTP/1\\.[01]\r\n");
+
+    private final Path root;
+    private final Path uploadDir;
+    private final FileCache fileCache = new FileCache(16, 60, TimeUnit.SECONDS);
+    private final RouterHandler router = new RouterHandler(ApiRoutes.create());
+    private final ResponseCache responseCache = new ResponseCache(1024 * 1024, 64 * 1024, 10, TimeUnit.SECONDS);
+    // 静态文件的预压缩缓存，CPU 预算放开，保证一定会压缩
+    private final CompressionPolicy compression = new CompressionPolicy(1024, CompressionPolicy.DEFAULT_MIME_TYPES, 6,
+            100, 1024 * 1024, 64 * 1024);
+
+    public HttpServerLeakCheck(Path root, Path uploadDir) {
+        this.root = root;
+        this.uploadDir = uploadDir;
+    }
+
+    private ChannelHandler[] handlers() {
+        return handlers(new HttpServerCodec());
+    }
+
+    private ChannelHandler[] handlers(ChannelHandler codec) {
+        return new ChannelHandler[]{
+                codec,
+                new AdaptiveHttpContentCompressor(),
+                new HttpPipeliningHandler(16),
+                new SelectiveHttpObjectAggregator(MAX_CONTENT_LENGTH, request -> !isUpload(request)),
+                new ChunkedWriteHandler(),
+                new StaticFileHandler("/static/", root, fileCache, null, compression),
+                new HttpUploadHandler(null, uploadDir, MAX_UPLOAD_BYTES),
+                new ResponseCacheHandler(responseCache),
+                router,
+                new HttpServletHandler()
+        };
+    }
+
+    /**
+     * HTTP/2 stream 子 Channel 的 Handler，与 HttpServer.StreamInitializer 保持一致
+     */
+    private ChannelHandler[] streamHandlers() {
+        return new ChannelHandler[]{
+                new Http2StreamFrameToHttpObjectCodec(true),
+                new AdaptiveHttpContentCompressor(),
+                new SelectiveHttpObjectAggregator(MAX_CONTENT_LENGTH, request -> !isUpload(request)),
+                new ChunkedWriteHandler(),
+                new StaticFileHandler("/static/", root, fileCache, null, compression),
+                new HttpUploadHandler(null, uploadDir, MAX_UPLOAD_BYTES),
+                new ResponseCacheHandler(responseCache),
+                router,
+                new HttpServletHandler()
+        };
+    }
+
+    private EmbeddedChannel newHttp2Server(LeakCheck check) {
+        return check.newChannel(handlers(Http2Cleartext.newHandler(MAX_CONTENT_LENGTH, 0,
+                new ChannelInitializer<Channel>() {
+                    @Override
+                    protected void initChannel(Channel channel) {
+                        channel.pipeline().addLast(streamHandlers());
+                    }
+                })));
+    }
+
+    /**
+     * 用 prior knowledge 的 HTTP/2 客户端在同一个连接上同时发出多个请求，客户端也使用场景的分配器。
+     * 每个请求是 [path, body]，body 为 null 时是 GET。返回每个请求的响应状态，连接应当保持打开
+     */
+    private List<String> http2Request(LeakCheck check, String[]... requests) {
+        EmbeddedChannel server = newHttp2Server(check);
+        EmbeddedChannel client = check.newChannel(Http2FrameCodecBuilder.forClient().build(),
+                new Http2MultiplexHandler(new ChannelInboundHandlerAdapter()));
+        final String[] statuses = new String[requests.length];
+        for (int i = 0; i < requests.length; i++) {
+            final int index = i;
+            String[] request = requests[i];
+            Http2StreamChannel stream = new Http2StreamChannelBootstrap(client)
+                    .handler(new ChannelInboundHandlerAdapter() {
+                        @Override
+                        public void channelRead(ChannelHandlerContext ctx, Object msg) {
+                            if (msg instanceof Http2HeadersFrame && statuses[index] == null) {
+                                statuses[index] = String.valueOf(((Http2HeadersFrame) msg).headers().status());
+                            }
+                            ReferenceCountUtil.release(msg);
+                        }
+                    }).open().syncUninterruptibly().getNow();
+            Http2Headers headers = new DefaultHttp2Headers().scheme("http").authority("localhost")
+                    .method(request[1] == null ? "GET" : "POST").path(request[0]);
+            if (request[1] == null) {
+                stream.writeAndFlush(new DefaultHttp2HeadersFrame(headers, true));
+            } else {
+                stream.write(new DefaultHttp2HeadersFrame(headers, false));
+                stream.writeAndFlush(new DefaultHttp2DataFrame(
+                        check.buffer(request[1].getBytes(CharsetUtil.ISO_8859_1)), true));
+            }
+        }
+        exchange(check, client, server);
+        responseCache.clear();
+        LeakCheck.expect(true, server.isOpen(), "connection open");
+        return Arrays.asList(statuses);
+    }
+
+    /**
+     * 在两个 EmbeddedChannel 之间来回传递字节，直到双方都没有新的输出
+     */
+    private static void exchange(LeakCheck check, EmbeddedChannel client, EmbeddedChannel server) {
+        boolean moved = true;
+        while (moved) {
+            moved = transfer(client, server) | transfer(server, client);
+        }
+        check.drainOutbound(client);
+        check.drainOutbound(server);
+    }
+
+    private static boolean transfer(EmbeddedChannel from, EmbeddedChannel to) {
+        from.runPendingTasks();
+        boolean moved = false;
+        Object msg;
+        while ((msg = from.readOutbound()) != null) {
+            to.writeInbound(msg);
+            moved = true;
+        }
+        // 入站消息都应该被 Pipeline 消费，剩下的释放掉
+        while ((msg = to.readInbound()) != null) {
+            ReferenceCountUtil.release(msg);
+        }
+        return moved;
+    }
+
+    private static boolean isUpload(HttpRequest request) {
+        return (HttpMethod.POST.equals(request.method()) || HttpMethod.PUT.equals(request.method()))
+                && request.uri().startsWith("/upload");
+    }
+
+    /**
+     * 依次写入请求（一次写入中可以有多个 pipelining 的请求），检查响应状态和连接是否保持打开，返回所有响应
+     */
+    private List<HttpResponses.Response> request(LeakCheck check, int[] statuses, boolean open, String... requests)
+            throws Exception {
+        return request(check, check.newChannel(handlers()), statuses, open, requests);
+    }
+
+    private List<HttpResponses.Response> request(LeakCheck check, EmbeddedChannel channel, int[] statuses,
+                                                 boolean open, String... requests) throws Exception {
+        HttpResponses reader = new HttpResponses(check);
+        List<HttpResponses.Response> responses = new ArrayList<HttpResponses.Response>();
+        for (String request : requests) {
+            Matcher matcher = REQUEST_LINE.matcher(request);
+            while (matcher.find()) {
+                reader.request(HttpMethod.valueOf(matcher.group(1)));
+            }
+            channel.writeInbound(check.buffer(request.getBytes(CharsetUtil.ISO_8859_1)));
+            responses.addAll(reader.read(channel));
+        }
+        // 缓存的响应体来自场景的分配器，场景结束前释放
+        responseCache.clear();
+        int[] actual = new int[responses.size()];
+        for (int i = 0; i < actual.length; i++) {
+            actual[i] = responses.get(i).status();
+        }
+        LeakCheck.expect(Arrays.toString(statuses), Arrays.toString(actual), "status");
+        LeakCheck.expect(open, channel.isOpen(), "connection open");
+        return responses;
+    }
+
+    private static int[] status(int... statuses) {
+        return statuses;
+    }
+
+    private static String post(String uri, String headers, int length) {
+        char[] body = new char[length];
+        Arrays.fill(body, 'a');
+        return "POST " + uri + " HTTP/1.1\r\nHost: localhost\r\n" + headers + "Content-Length: " + length + "\r\n\r\n"
+                + new String(body);
+    }
+
+    public void run(LeakCheck check) {
+        final String get = "GET /hello?name=netty HTTP/1.1\r\nHost: localhost\r\n\r\n";
+        check.run("get", c -> request(c, status(200), true, get));
+        check.run("pipelined", c -> request(c, status(200, 200, 200), true, get + get + get));
+        check.run("post gzip", c -> {
+            HttpResponses.Response response = request(c, status(200), true,
+                    post("/echo", "Accept-Encoding: gzip\r\n", 8192)).get(0);
+            LeakCheck.expect("gzip", response.headers().get(HttpHeaderNames.CONTENT_ENCODING), "content-encoding");
+        });
+        // 长连接上 HttpObjectAggregator 返回 413 之后丢弃请求体，连接继续使用
+        check.run("post too large", c -> request(c, status(413, 200), true, post("/echo", "", MAX_CONTENT_LENGTH + 1), get));
+        check.run("connection close", c -> request(c, status(200), false,
+                "GET / HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n"));
+        check.run("bad request", c -> request(c, status(400), false, "NOT A VALID REQUEST\r\n\r\n"));
+        check.run("business error", c -> {
+            // 业务逻辑在 EventLoop 中执行时抛出异常，也要返回 500，后面 pipelining 的请求不能被卡住
+            EmbeddedChannel channel = c.newChannel(handlers());
+            channel.pipeline().replace(HttpServletHandler.class, "handler", new HttpServletHandler() {
+                @Override
+                protected FullHttpResponse service(ChannelHandlerContext ctx, FullHttpRequest msg) throws Exception {
+                    if (msg.uri().startsWith("/fail")) {
+                        throw new IllegalStateException("business failure");
+                    }
+                    return super.service(ctx, msg);
+                }
+            });
+            request(c, channel, status(500, 200), true, "GET /fail HTTP/1.1\r\nHost: localhost\r\n\r\n" + get);
+        });
+        check.run("static", c -> {
+            HttpResponses.Response response = request(c, status(200), true,
+                    "GET /static/index.html HTTP/1.1\r\nHost: localhost\r\n\r\n").get(0);
+            LeakCheck.expect(PAGE_SIZE, response.body().length(), "body length");
+        });
+        check.run("static range", c -> {
+            HttpResponses.Response response = request(c, status(206), true,
+                    "GET /static/index.html HTTP/1.1\r\nHost: localhost\r\nRange: bytes=10-99\r\n\r\n").get(0);
+            LeakCheck.expect("bytes 10-99/" + PAGE_SIZE, response.headers().get(HttpHeaderNames.CONTENT_RANGE), "content-range");
+            LeakCheck.expect(90, response.body().length(), "body length");
+        });
+        check.run("static invalid range", c -> request(c, status(200), true,
+                "GET /static/index.html HTTP/1.1\r\nHost: localhost\r\nRange: bytes=99-10\r\n\r\n"));
+        check.run("static unsatisfiable range", c -> request(c, status(416), true,
+                "GET /static/index.html HTTP/1.1\r\nHost: localhost\r\nRange: bytes=" + PAGE_SIZE + "-\r\n\r\n"));
+        check.run("static head", c -> {
+            HttpResponses.Response response = request(c, status(200), true,
+                    "HEAD /static/index.html HTTP/1.1\r\nHost: localhost\r\n\r\n").get(0);
+            LeakCheck.expect(String.valueOf(PAGE_SIZE), response.headers().get(HttpHeaderNames.CONTENT_LENGTH), "content-length");
+        });
+        check.run("static not modified", c -> request(c, status(304, 200), true,
+                "GET /static/index.html HTTP/1.1\r\nHost: localhost\r\nIf-None-Match: *\r\n\r\n", get));
+        check.run("static not found", c -> request(c, status(404), true,
+                "GET /static/missing.html HTTP/1.1\r\nHost: localhost\r\n\r\n"));
+        check.run("static precompressed", c -> {
+            // 第一次请求压缩后放入预压缩缓存，之后的 GET / HEAD 直接命中，带弱 ETag 的 If-None-Match 返回 304
+            String gzip = "/static/index.html HTTP/1.1\r\nHost: localhost\r\nAccept-Encoding: gzip\r\n";
+            long hits = compression.getCacheHits();
+            List<HttpResponses.Response> responses = request(c, status(200, 200, 200), true,
+                    "GET " + gzip + "\r\n", "GET " + gzip + "\r\n", "HEAD " + gzip + "\r\n");
+            for (HttpResponses.Response response : responses) {
+                LeakCheck.expect("gzip", response.headers().get(HttpHeaderNames.CONTENT_ENCODING), "content-encoding");
+                LeakCheck.expect("accept-encoding", response.headers().get(HttpHeaderNames.VARY), "vary");
+            }
+            int length = Integer.parseInt(responses.get(0).headers().get(HttpHeaderNames.CONTENT_LENGTH));
+            LeakCheck.expect(true, length < PAGE_SIZE, "compressed length " + length);
+            LeakCheck.expect(String.valueOf(length), responses.get(2).headers().get(HttpHeaderNames.CONTENT_LENGTH),
+                    "head content-length");
+            LeakCheck.expect(hits + 2, compression.getCacheHits(), "cache hits");
+            String etag = responses.get(0).headers().get(HttpHeaderNames.ETAG);
+            LeakCheck.expect(true, etag.startsWith("W/"), "etag " + etag);
+            request(c, status(304), true, "GET " + gzip + "If-None-Match: " + etag + "\r\n\r\n");
+            compression.clearCache();
+        });
+        check.run("route", c -> {
+            HttpResponses.Response response = request(c, status(200), true,
+                    "GET /users/42/orders/7 HTTP/1.1\r\nHost: localhost\r\n\r\n").get(0);
+            LeakCheck.expect("User 42, order 7\r\n", response.body(), "body");
+        });
+        check.run("route head", c -> {
+            HttpResponses.Response response = request(c, status(200, 200), true,
+                    "HEAD /users/42 HTTP/1.1\r\nHost: localhost\r\n\r\n", get).get(0);
+            LeakCheck.expect("9", response.headers().get(HttpHeaderNames.CONTENT_LENGTH), "content-length");
+        });
+        check.run("route invalid param", c -> request(c, status(400), true,
+                "GET /users/abc HTTP/1.1\r\nHost: localhost\r\n\r\n"));
+        check.run("route method not allowed", c -> {
+            HttpResponses.Response response = request(c, status(405), true, post("/users/42", "", 16)).get(0);
+            LeakCheck.expect("GET, HEAD, DELETE", response.headers().get(HttpHeaderNames.ALLOW), "allow");
+        });
+        check.run("cached get", c -> {
+            long hits = responseCache.getHits();
+            List<HttpResponses.Response> responses = request(c, status(200, 200, 200), true, get, get, get);
+            LeakCheck.expect(hits + 2, responseCache.getHits(), "cache hits");
+            // 第一次由处理器生成，之后的两次来自缓存，带 Age
+            LeakCheck.expect(null, responses.get(0).headers().get(HttpHeaderNames.AGE), "first age");
+            LeakCheck.expect("0", responses.get(1).headers().get(HttpHeaderNames.AGE), "cached age");
+            LeakCheck.expect("0", responses.get(2).headers().get(HttpHeaderNames.AGE), "cached age");
+            LeakCheck.expect(responses.get(0).body(), responses.get(2).body(), "cached body");
+        });
+        check.run("cache invalidated", c -> {
+            long hits = responseCache.getHits();
+            long invalidations = responseCache.getInvalidations();
+            String user = "GET /users/42 HTTP/1.1\r\nHost: localhost\r\n\r\n";
+            List<HttpResponses.Response> responses = request(c, status(200, 200, 200, 200), true,
+                    user, user, "DELETE /users/42 HTTP/1.1\r\nHost: localhost\r\n\r\n", user);
+            LeakCheck.expect(hits + 1, responseCache.getHits(), "cache hits");
+            LeakCheck.expect(invalidations + 1, responseCache.getInvalidations(), "cache invalidations");
+            LeakCheck.expect("0", responses.get(1).headers().get(HttpHeaderNames.AGE), "cached age");
+            // DELETE 之后缓存已删除，重新由处理器生成
+            LeakCheck.expect(null, responses.get(3).headers().get(HttpHeaderNames.AGE), "age after invalidation");
+        });
+        check.run("admission rejected", c -> {
+            // 每秒 1 个请求，第一个之后的请求都返回 429，POST 的请求体被丢弃
+            AdmissionControl admission = new AdmissionControl(0, 0, 1, 1, 0, 0, TimeUnit.MILLISECONDS);
+            EmbeddedChannel channel = c.newChannel(handlers());
+            channel.pipeline().addAfter(channel.pipeline().context(HttpPipeliningHandler.class).name(), "admission",
+                    new HttpAdmissionHandler(admission));
+            request(c, channel, status(200, 429, 429), true, get + post("/echo", "", 8192) + get);
+        });
+        check.run("h2c get", c -> LeakCheck.expect(Arrays.asList("200"),
+                http2Request(c, new String[]{"/hello?name=netty", null}), "status"));
+        check.run("h2c concurrent streams", c -> LeakCheck.expect(
+                Arrays.asList("200", "200", "200", "200", "200", "200", "404"),
+                http2Request(c,
+                        new String[]{"/users/42", null}, new String[]{"/users/42", null}, new String[]{"/hello/netty", null},
+                        new String[]{"/echo", "body"}, new String[]{"/static/index.html", null},
+                        new String[]{"/upload", "upload"}, new String[]{"/static/missing.html", null}),
+                "status"));
+        check.run("h2c post too large", c -> LeakCheck.expect(Arrays.asList("413"),
+                http2Request(c, new String[]{"/echo", post("/", "", MAX_CONTENT_LENGTH + 1)}), "status"));
+        check.run("h2c upgrade", c -> {
+            EmbeddedChannel channel = newHttp2Server(c);
+            channel.writeInbound(c.buffer(("GET /hello HTTP/1.1\r\nHost: localhost\r\n"
+                    + "Connection: Upgrade, HTTP2-Settings\r\nUpgrade: h2c\r\nHTTP2-Settings: AAMAAABkAAQAAP__\r\n\r\n")
+                    .getBytes(CharsetUtil.ISO_8859_1)));
+            channel.runPendingTasks();
+            ByteBuf switching = channel.readOutbound();
+            String statusLine = switching.toString(CharsetUtil.ISO_8859_1);
+            switching.release();
+            LeakCheck.expect(true, statusLine.startsWith("HTTP/1.1 101 "), "upgrade response " + statusLine);
+            c.drainOutbound(channel);
+            // 升级之后客户端发送连接前言和空的 SETTINGS
+            channel.writeInbound(c.buffer("PRI * HTTP/2.0\r\n\r\nSM\r\n\r\n".getBytes(CharsetUtil.ISO_8859_1)));
+            channel.writeInbound(c.buffer(new byte[]{0, 0, 0, 4, 0, 0, 0, 0, 0}));
+            c.drainOutbound(channel);
+            responseCache.clear();
+            LeakCheck.expect(true, channel.isOpen(), "connection open");
+        });
+        check.run("upload", c -> {
+            String body = request(c, status(200), true, post("/upload", "", 32 * 1024)).get(0).body();
+            // 响应不暴露服务端路径，临时文件在响应之后删除
+            LeakCheck.expect(false, body.contains(uploadDir.toString()), "server path in " + body.trim());
+            try (java.util.stream.Stream<Path> files = Files.list(uploadDir)) {
+                LeakCheck.expect(0L, files.count(), "uploaded files left");
+            }
+        });
+        check.run("upload too large", c -> request(c, status(413), false, post("/upload", "", (int) MAX_UPLOAD_BYTES + 1)));
+        check.run("upload aborted", c -> {
+            EmbeddedChannel channel = c.newChannel(handlers());
+            String partial = post("/upload", "", 16 * 1024);
+            channel.writeInbound(c.buffer(partial.substring(0, partial.length() / 2).getBytes(CharsetUtil.ISO_8859_1)));
+            c.drainOutbound(channel);
+            channel.close();
+            LeakCheck.expect(0, c.drainOutbound(channel), "responses");
+        });
+        check.run("client backlog at deadline", c -> {
+            // 开环压测，每个连接只允许 1 个未响应的请求，服务端在截止时间之后才开始响应：
+            // 截止之前积压的请求要继续发出并记录，不能在截止时直接丢弃
+            Recorder recorder = new Recorder(3);
+            LongAdder completed = new LongAdder();
+            LongAdder errors = new LongAdder();
+            long intervalNanos = TimeUnit.MILLISECONDS.toNanos(1);
+            long deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(20);
+            EmbeddedChannel channel = c.newChannel(new HttpClientHandler("/", new DefaultHttpHeaders(), 1,
+                    intervalNanos, deadlineNanos, recorder, completed, errors));
+            // Handler 在 Channel 激活之后才加入，这里补发 channelActive 开始计划请求
+            channel.pipeline().fireChannelActive();
+            TimeUnit.NANOSECONDS.sleep(deadlineNanos - System.nanoTime() + intervalNanos);
+            channel.runPendingTasks();
+            int requests = 0;
+            Object request;
+            while ((request = channel.readOutbound()) != null) {
+                ReferenceCountUtil.release(request);
+                requests++;
+                channel.writeInbound(new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK));
+            }
+            LeakCheck.expect(true, requests >= 15, requests + " requests sent");
+            LeakCheck.expect((long) requests, completed.sum(), "completed");
+            LeakCheck.expect(0L, errors.sum(), "errors");
+            LeakCheck.expect((long) requests, recorder.getIntervalHistogram().getTotalCount(), "recorded latencies");
+            LeakCheck.expect(false, channel.isOpen(), "connection open");
+        });
+    }
+
+    public static void main(String[] args) throws Exception {
+        LeakCheck check = new LeakCheck("03-netty-http-server");
+        Path root = Files.createTempDirectory("leak-check-static");
+        Path uploadDir = Files.createTempDirectory("leak-check-upload");
+        byte[] page = new byte[PAGE_SIZE];
+        Arrays.fill(page, (byte) 'x');
+        Files.write(root.resolve("index.html"), page);
+        try {
+            new HttpServerLeakCheck(root, uploadDir).run(check);
+            check.verify();
+        } finally {
+            deleteQuietly(uploadDir);
+            deleteQuietly(root);
+        }
+    }
+
+    private static void deleteQuietly(Path dir) throws Exception {
+        try (java.util.stream.Stream<Path> files = Files.list(dir)) {
+            files.forEach(file -> file.toFile().delete());
+        }
+        Files.deleteIfExists(dir);
+    }
+}
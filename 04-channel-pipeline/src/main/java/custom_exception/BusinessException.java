@@ -0,0 +1,33 @@
+package custom_exception;
+
+import io.netty.handler.codec.http.HttpResponseStatus;
+
+
+/**
+ * 业务异常，不采集堆栈，也不支持 suppressed 异常。
+ *
+ * 业务异常的原因由 message 和 status 就能说明，堆栈没有参考价值，而 fillInStackTrace 的开销比抛出本身大得多。
+ * 由于没有可变状态，同一个实例可以预先创建好反复抛出，错误风暴时不会产生额外的对象分配。
+ */
+public class BusinessException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final HttpResponseStatus status;
+
+    public BusinessException(String message) {
+        this(message, HttpResponseStatus.INTERNAL_SERVER_ERROR);
+    }
+
+    public BusinessException(String message, HttpResponseStatus status) {
+        super(message, null, false, false);
+        this.status = status;
+    }
+
+    /**
+     * 返回给客户端的响应状态
+     */
+    public HttpResponseStatus status() {
+        return status;
+    }
+}
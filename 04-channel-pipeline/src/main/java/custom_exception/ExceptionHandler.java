@@ -1,15 +1,114 @@
 package custom_exception;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
 import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaderValues;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.util.CharsetUtil;
+import io.netty.util.internal.SystemPropertyUtil;
+import logging.RateLimitedLogger;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
 
-public class ExceptionHandler extends ChannelDuplexHandler {
+
+/**
+ * 统一的异常处理器，放在 ChannelPipeline 自定义处理器的末端。
+ *
+ * - 按异常类型计数，可以通过 JMX 查看。
+ * - 日志经过 RateLimitedLogger 限速后异步输出，错误风暴时不会拖慢 EventLoop。
+ * - 根据异常类型映射响应状态（BusinessException 自带状态，其他异常按 map 配置查找，找不到时返回 500），
+ *   给客户端返回一个 FullHttpResponse，而不是让请求一直没有响应。
+ *   业务异常不影响连接状态，响应后保持连接；其他异常无法确定连接是否还可用，响应后关闭连接。
+ */
+@ChannelHandler.Sharable
+public class ExceptionHandler extends ChannelDuplexHandler implements ExceptionHandlerMBean {
+
+    // 每秒最多输出的异常日志条数
+    private static final int LOG_PERMITS_PER_SECOND =
+            SystemPropertyUtil.getInt("exception.logPermitsPerSecond", 10);
+    private static final int LOG_QUEUE_SIZE = SystemPropertyUtil.getInt("exception.logQueueSize", 1024);
+
+    private final Map<Class<? extends Throwable>, HttpResponseStatus> statusMapping =
+            new LinkedHashMap<Class<? extends Throwable>, HttpResponseStatus>();
+    private final ConcurrentMap<Class<?>, LongAdder> causeCounts = new ConcurrentHashMap<Class<?>, LongAdder>();
+    private final LongAdder total = new LongAdder();
+    private final RateLimitedLogger logger = new RateLimitedLogger("exception-logger", LOG_PERMITS_PER_SECOND, LOG_QUEUE_SIZE);
+
+    /**
+     * 配置异常类型到响应状态的映射，子类异常也会匹配。需要在 Handler 加入 Pipeline 之前配置完成。
+     */
+    public ExceptionHandler map(Class<? extends Throwable> causeType, HttpResponseStatus status) {
+        statusMapping.put(causeType, status);
+        return this;
+    }
 
     @Override
     public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception {
-        if(cause instanceof RuntimeException){
-            System.out.println("Handle Business Exception Success.");
+        total.increment();
+        LongAdder counter = causeCounts.get(cause.getClass());
+        if (counter == null) {
+            LongAdder created = new LongAdder();
+            counter = causeCounts.putIfAbsent(cause.getClass(), created);
+            if (counter == null) {
+                counter = created;
+            }
+        }
+        counter.increment();
+
+        boolean business = cause instanceof BusinessException;
+        if (!business) {
+            logger.log("Unhandled exception on " + ctx.channel(), cause);
+        }
+        if (!ctx.channel().isActive()) {
+            return;
+        }
+        HttpResponseStatus status = business ? ((BusinessException) cause).status() : statusOf(cause);
+        ByteBuf content = Unpooled.copiedBuffer(status.reasonPhrase(), CharsetUtil.US_ASCII);
+        FullHttpResponse response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, status, content);
+        response.headers()
+                .set(HttpHeaderNames.CONTENT_TYPE, HttpHeaderValues.TEXT_PLAIN)
+                .setInt(HttpHeaderNames.CONTENT_LENGTH, content.readableBytes());
+        if (business) {
+            ctx.writeAndFlush(response);
+        } else {
+            response.headers().set(HttpHeaderNames.CONNECTION, HttpHeaderValues.CLOSE);
+            ctx.writeAndFlush(response).addListener(ChannelFutureListener.CLOSE);
+        }
+    }
+
+    private HttpResponseStatus statusOf(Throwable cause) {
+        for (Map.Entry<Class<? extends Throwable>, HttpResponseStatus> entry : statusMapping.entrySet()) {
+            if (entry.getKey().isInstance(cause)) {
+                return entry.getValue();
+            }
+        }
+        return HttpResponseStatus.INTERNAL_SERVER_ERROR;
+    }
+
+    @Override
+    public long getTotalCount() {
+        return total.sum();
+    }
+
+    @Override
+    public Map<String, Long> getCauseCounts() {
+        Map<String, Long> counts = new TreeMap<String, Long>();
+        for (Map.Entry<Class<?>, LongAdder> entry : causeCounts.entrySet()) {
+            counts.put(entry.getKey().getName(), entry.getValue().sum());
         }
+        return counts;
     }
 }
@@ -0,0 +1,16 @@
+package custom_exception;
+
+import java.util.Map;
+
+/**
+ * 通过 JMX 暴露的异常统计
+ */
+public interface ExceptionHandlerMBean {
+
+    long getTotalCount();
+
+    /**
+     * 按异常类型统计的次数，key 为异常类名
+     */
+    Map<String, Long> getCauseCounts();
+}
@@ -2,16 +2,20 @@ package custom_exception;
 
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.util.ReferenceCountUtil;
 
 
 public class SampleInBoundHandler extends ChannelInboundHandlerAdapter {
 
     private final String name;
     private final boolean flush;
+    // 预先创建的无堆栈异常，每次读取都抛出同一个实例
+    private final BusinessException exception;
 
     public SampleInBoundHandler(String name, boolean flush) {
         this.name = name;
         this.flush = flush;
+        this.exception = new BusinessException("InBoundHandler: " + name);
     }
 
     @Override
@@ -20,7 +24,9 @@ public class SampleInBoundHandler extends ChannelInboundHandlerAdapter {
         if(flush){
             ctx.channel().writeAndFlush(msg);
         }else{
-            throw new RuntimeException("InBoundHandler: " + name);
+            // 消息不再向后传递，抛出异常之前需要释放
+            ReferenceCountUtil.release(msg);
+            throw exception;
         }
     }
 
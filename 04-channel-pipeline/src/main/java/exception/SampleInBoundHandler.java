@@ -2,6 +2,7 @@ package exception;
 
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.util.ReferenceCountUtil;
 
 
 public class SampleInBoundHandler extends ChannelInboundHandlerAdapter {
@@ -20,6 +21,8 @@ public class SampleInBoundHandler extends ChannelInboundHandlerAdapter {
         if(flush){
             ctx.channel().writeAndFlush(msg);
         }else{
+            // 消息不再向后传递，抛出异常之前需要释放，否则 ByteBuf 泄漏
+            ReferenceCountUtil.release(msg);
             throw new RuntimeException("InBoundHandler: " + name);
         }
     }
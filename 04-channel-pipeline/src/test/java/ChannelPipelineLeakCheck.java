@@ -0,0 +1,168 @@
+import compression.AdaptiveHttpContentCompressor;
+import custom_exception.ExceptionHandler;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpServerCodec;
+import io.netty.util.CharsetUtil;
+import io.netty.util.ReferenceCountUtil;
+import leak.HttpResponses;
+import leak.LeakCheck;
+import metrics.HandlerMetrics;
+import metrics.MetricsRegistry;
+import metrics.TimedHandler;
+
+import java.util.List;
+
+
+/**
+ * 三个 HttpServer（pipeline / exception / custom_exception）Pipeline 的泄漏检查，Handler 顺序与各自的 HttpServer 保持一致。
+ * 同时检查每个示例对请求的处理结果：写回失败、异常到达 TailContext、转换成错误响应。
+ *
+ * mvn test 时由 exec-maven-plugin 运行，也可以直接运行 main。
+ */
+public class ChannelPipelineLeakCheck {
+
+    private static final String GET = "GET /hello HTTP/1.1\r\nHost: localhost\r\n\r\n";
+    private static final String POST = "POST /hello HTTP/1.1\r\nHost: localhost\r\nContent-Length: 5\r\n\r\nhello";
+
+    private final ExceptionHandler exceptionHandler = new ExceptionHandler()
+            .map(IllegalArgumentException.class, HttpResponseStatus.BAD_REQUEST)
+            .map(UnsupportedOperationException.class, HttpResponseStatus.NOT_IMPLEMENTED);
+
+    private static ChannelHandler[] pipeline() {
+        return new ChannelHandler[]{
+                new HttpServerCodec(),
+                new AdaptiveHttpContentCompressor(),
+                new HttpObjectAggregator(65535),
+                new TimedHandler("pipeline", "SampleInBoundHandlerA", new pipeline.SampleInBoundHandler("SampleInBoundHandlerA", false)),
+                new TimedHandler("pipeline", "SampleInBoundHandlerB", new pipeline.SampleInBoundHandler("SampleInBoundHandlerB", false)),
+                new TimedHandler("pipeline", "SampleInBoundHandlerC", new pipeline.SampleInBoundHandler("SampleInBoundHandlerC", true)),
+                new TimedHandler("pipeline", "SampleOutBoundHandlerA", new pipeline.SampleOutBoundHandler("SampleOutBoundHandlerA")),
+                new TimedHandler("pipeline", "SampleOutBoundHandlerB", new pipeline.SampleOutBoundHandler("SampleOutBoundHandlerB")),
+                new TimedHandler("pipeline", "SampleOutBoundHandlerC", new pipeline.SampleOutBoundHandler("SampleOutBoundHandlerC"))
+        };
+    }
+
+    private static ChannelHandler[] exception() {
+        return new ChannelHandler[]{
+                new HttpServerCodec(),
+                new AdaptiveHttpContentCompressor(),
+                new HttpObjectAggregator(65535),
+                new TimedHandler("exception", "SampleInBoundHandlerA", new exception.SampleInBoundHandler("SampleInBoundHandlerA", false)),
+                new TimedHandler("exception", "SampleInBoundHandlerB", new exception.SampleInBoundHandler("SampleInBoundHandlerB", false)),
+                new TimedHandler("exception", "SampleInBoundHandlerC", new exception.SampleInBoundHandler("SampleInBoundHandlerC", true)),
+                new TimedHandler("exception", "SampleOutBoundHandlerA", new exception.SampleOutBoundHandler("SampleOutBoundHandlerA")),
+                new TimedHandler("exception", "SampleOutBoundHandlerB", new exception.SampleOutBoundHandler("SampleOutBoundHandlerB")),
+                new TimedHandler("exception", "SampleOutBoundHandlerC", new exception.SampleOutBoundHandler("SampleOutBoundHandlerC"))
+        };
+    }
+
+    private ChannelHandler[] customException() {
+        return new ChannelHandler[]{
+                new HttpServerCodec(),
+                new AdaptiveHttpContentCompressor(),
+                new HttpObjectAggregator(65535),
+                new TimedHandler("custom_exception", "SampleInBoundHandlerA", new custom_exception.SampleInBoundHandler("SampleInBoundHandlerA", false)),
+                new TimedHandler("custom_exception", "SampleInBoundHandlerB", new custom_exception.SampleInBoundHandler("SampleInBoundHandlerB", false)),
+                new TimedHandler("custom_exception", "SampleInBoundHandlerC", new custom_exception.SampleInBoundHandler("SampleInBoundHandlerC", true)),
+                new TimedHandler("custom_exception", "SampleOutBoundHandlerA", new custom_exception.SampleOutBoundHandler("SampleOutBoundHandlerA")),
+                new TimedHandler("custom_exception", "SampleOutBoundHandlerB", new custom_exception.SampleOutBoundHandler("SampleOutBoundHandlerB")),
+                new TimedHandler("custom_exception", "SampleOutBoundHandlerC", new custom_exception.SampleOutBoundHandler("SampleOutBoundHandlerC")),
+                exceptionHandler
+        };
+    }
+
+    /**
+     * 写入一个请求，返回传播到 TailContext、被 EmbeddedChannel 重新抛出的异常，没有时返回 null
+     */
+    private static Throwable request(LeakCheck check, EmbeddedChannel channel, String request) {
+        try {
+            channel.writeInbound(check.buffer(request.getBytes(CharsetUtil.ISO_8859_1)));
+            channel.runPendingTasks();
+            return null;
+        } catch (RuntimeException e) {
+            // exception 示例中的异常没有被处理，会传播到 TailContext，EmbeddedChannel 在这里重新抛出
+            System.out.println("Unhandled exception: " + e);
+            return e;
+        }
+    }
+
+    /**
+     * pipeline 示例：C 把聚合后的请求原样写回，用来演示出站事件的传播顺序。
+     * 请求不是 HttpResponse，写到 HttpContentCompressor 时失败并被释放，客户端收不到任何数据，连接保持打开
+     */
+    private static void echo(LeakCheck check, String request) {
+        EmbeddedChannel channel = check.newChannel(pipeline());
+        LeakCheck.expect(null, request(check, channel, request), "unhandled exception");
+        LeakCheck.expect(0, check.drainOutbound(channel), "outbound messages");
+        LeakCheck.expect(true, channel.isOpen(), "connection open");
+    }
+
+    /**
+     * exception 示例：A 抛出的异常没有被处理，最后到达 TailContext，没有响应
+     */
+    private static void unhandled(LeakCheck check, String request) {
+        EmbeddedChannel channel = check.newChannel(exception());
+        Throwable cause = request(check, channel, request);
+        LeakCheck.expect("InBoundHandler: SampleInBoundHandlerA", cause == null ? null : cause.getMessage(), "exception");
+        LeakCheck.expect(0, check.drainOutbound(channel), "responses");
+    }
+
+    /**
+     * custom_exception 示例：ExceptionHandler 把业务异常转换成 500 响应，连接保持打开
+     */
+    private void handled(LeakCheck check, String request) throws Exception {
+        EmbeddedChannel channel = check.newChannel(customException());
+        HttpResponses responses = new HttpResponses(check).request(HttpMethod.GET);
+        LeakCheck.expect(null, request(check, channel, request), "unhandled exception");
+        List<HttpResponses.Response> response = responses.read(channel);
+        LeakCheck.expect(1, response.size(), "responses");
+        LeakCheck.expect(500, response.get(0).status(), "status");
+        LeakCheck.expect(true, channel.isOpen(), "connection open");
+    }
+
+    /**
+     * TimedHandler 记录的是自身耗时：A 直接向后传递，B 耗时 20ms，A 的耗时不应包含 B 的 20ms
+     */
+    private static void selfTime(LeakCheck check) throws Exception {
+        HandlerMetrics passThrough = MetricsRegistry.handlerMetrics("leak-check", "passThrough");
+        HandlerMetrics slow = MetricsRegistry.handlerMetrics("leak-check", "slow");
+        passThrough.reset();
+        slow.reset();
+        EmbeddedChannel channel = check.newChannel(
+                new TimedHandler(passThrough, new ChannelInboundHandlerAdapter()),
+                new TimedHandler(slow, new ChannelInboundHandlerAdapter() {
+                    @Override
+                    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+                        Thread.sleep(20);
+                        ReferenceCountUtil.release(msg);
+                    }
+                }));
+        channel.writeInbound(check.buffer(GET.getBytes(CharsetUtil.ISO_8859_1)));
+        LeakCheck.expect(1L, passThrough.getInboundCount(), "pass through reads");
+        LeakCheck.expect(1L, slow.getInboundCount(), "slow reads");
+        LeakCheck.expect(true, slow.getInboundLatencyMax() >= 20_000_000L, "slow self time >= 20ms");
+        LeakCheck.expect(true, passThrough.getInboundLatencyMax() < 10_000_000L, "pass through self time < 10ms");
+    }
+
+    public void run(LeakCheck check) {
+        check.run("pipeline get", c -> echo(c, GET));
+        check.run("pipeline post", c -> echo(c, POST));
+        check.run("exception get", c -> unhandled(c, GET));
+        check.run("exception post", c -> unhandled(c, POST));
+        check.run("custom_exception get", c -> handled(c, GET));
+        check.run("custom_exception post", c -> handled(c, POST));
+        check.run("handler self time", ChannelPipelineLeakCheck::selfTime);
+    }
+
+    public static void main(String[] args) throws Exception {
+        LeakCheck check = new LeakCheck("04-channel-pipeline");
+        new ChannelPipelineLeakCheck().run(check);
+        check.verify();
+    }
+}
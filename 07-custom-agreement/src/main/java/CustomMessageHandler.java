@@ -0,0 +1,21 @@
+import codec.CustomMessage;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.handler.codec.DecoderException;
+import serialize.SerializeService;
+import serialize.SerializeServiceRegistry;
+
+
+public class CustomMessageHandler extends SimpleChannelInboundHandler<CustomMessage> {
+
+    @Override
+    protected void channelRead0(ChannelHandlerContext ctx, CustomMessage msg) throws Exception {
+        // 按协议头中的序列化算法找到对应的单例，直接从 ByteBuf 反序列化
+        SerializeService serializeService = SerializeServiceRegistry.get(msg.serializeType());
+        if(serializeService == null){
+            throw new DecoderException("unsupported serialize type: " + msg.serializeType());
+        }
+        Object object = serializeService.deserialize(msg.content());
+        System.out.println("Receive custom message: " + msg + ", data: " + object);
+    }
+}
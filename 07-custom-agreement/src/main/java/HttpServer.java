@@ -1,14 +1,16 @@
+import admission.AdmissionControl;
+import backpressure.BackPressureHandler;
+import backpressure.BackPressureMetrics;
+import codec.CustomByteToMessageDecoder;
+import codec.CustomMessageEncoder;
 import io.netty.bootstrap.ServerBootstrap;
-import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelOption;
 import io.netty.channel.EventLoopGroup;
-import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.group.ChannelGroup;
 import io.netty.channel.socket.SocketChannel;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
-import io.netty.handler.codec.http.HttpContentCompressor;
-import io.netty.handler.codec.http.HttpObjectAggregator;
-import io.netty.handler.codec.http.HttpServerCodec;
+import ssl.SslTermination;
+import transport.Transport;
 
 import java.net.InetSocketAddress;
 
@@ -25,45 +27,67 @@ public class HttpServer {
          * 它们分别使用不同的 NioEventLoopGroup，主 Reactor 负责处理 Accept，然后把 Channel 注册到从 Reactor 上，
          * 从 Reactor 主要负责 Channel 生命周期内的所有 I/O 事件。
          */
-        EventLoopGroup boosGroup = new NioEventLoopGroup();
-        EventLoopGroup workerGroup = new NioEventLoopGroup();
+        // Linux 下自动选择 Epoll，其他环境退回 NIO
+        Transport transport = Transport.select();
+        EventLoopGroup boosGroup = transport.newBossGroup();
+        EventLoopGroup workerGroup = transport.newWorkerGroup();
+        // 所有连接共用的背压统计，慢连接等待写出的字节数可以通过 JMX 查看
+        final BackPressureMetrics backPressure = BackPressureMetrics.create("custom_agreement");
+        final SslTermination ssl = SslTermination.fromProperties("custom_agreement");
+        // 准入控制：连接数上限，EventLoop 严重过载时不再接受新连接，统计可以通过 JMX 查看
+        final AdmissionControl admission = AdmissionControl.fromProperties("custom_agreement", workerGroup);
         try {
             ServerBootstrap b = new ServerBootstrap();
             b.group(boosGroup,workerGroup)
                     // 设置channel类型，netty推荐服务端使用NioServerSocketChannel，客户端采用NioSocketChannel。
                     // 也可以使用其他的，比如OioServerSocketChannel或者EpollServerSocketChannel等.
-                    .channel(NioServerSocketChannel.class)
+                    // 这里由 Transport 根据运行环境选择 EpollServerSocketChannel 或 NioServerSocketChannel
+                    .channel(transport.serverChannelClass())
                     .localAddress(new InetSocketAddress(port))
                     // 注册 ChannelHandler，可以使用pipeline注册多个ChannelHandler
                     .childHandler(new ChannelInitializer<SocketChannel>() {
                         @Override
                         protected void initChannel(SocketChannel socketChannel) throws Exception {
+                            // 出站缓冲区超过高水位时暂停读取，长时间不可写的慢连接直接关闭
+                            socketChannel.pipeline().addLast("backPressure", new BackPressureHandler(backPressure));
+                            if (ssl != null) {
+                                ssl.addLast(socketChannel.pipeline());
+                            }
                             // Channel初始化的时候会绑定一个pipeline用于服务编排。
                             // IO事件会依次在ChannelHandler中传播，入正向传播，出反向传播
                             socketChannel.pipeline()
-                                    // http编解码
-                                    .addLast("codec",new CustomByteToMessageDecoder());
+                                    // 自定义协议解码，输出 CustomMessage
+                                    .addLast("codec",new CustomByteToMessageDecoder())
+                                    // 自定义协议编码
+                                    .addLast("encoder",new CustomMessageEncoder());
                                     // 自定义业务逻辑处理器
                             socketChannel.pipeline()
-                                    .addLast(new HttpServletHandler());
+                                    .addLast(new CustomMessageHandler());
 
                         }
                     })
                     // 设Channel参数，option方法用于给bossGroup设置参数，childOption用于给workerGroup设置参数
-                    .childOption(ChannelOption.SO_KEEPALIVE,true);
+                    .childOption(ChannelOption.SO_KEEPALIVE,true)
+                    // 出站缓冲区高低水位，决定 Channel 何时变为不可写
+                    .childOption(ChannelOption.WRITE_BUFFER_WATER_MARK, BackPressureHandler.WATER_MARK);
 
-            ChannelFuture f = b
-                    // 端口绑定，正真触发启动
-                    .bind()
-                    // 阻塞，直到整个启动过程完成。
-                    .sync();
+            if (admission != null) {
+                // ServerChannel 上检查连接数，超过上限的连接在注册到 Worker 之前关闭
+                b.handler(admission.connectionLimiter());
+            }
+
+            // 端口绑定，正真触发启动，阻塞直到整个启动过程完成。开启 SO_REUSEPORT 时同一端口会绑定多个 ServerChannel
+            ChannelGroup serverChannels = transport.bind(b);
             System.out.println("Http Server started, Listening on " + port);
             // 保让线程进入wait状态，保持服务端一直处于运行状态
-            f.channel().closeFuture().sync();
+            serverChannels.newCloseFuture().sync();
         }finally {
             // 关闭连接
             workerGroup.shutdownGracefully();
             boosGroup.shutdownGracefully();
+            if (ssl != null) {
+                ssl.shutdown();
+            }
         }
     }
 
@@ -0,0 +1,74 @@
+package codec;
+
+import cumulation.AdaptiveCumulator;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.ByteToMessageDecoder;
+import io.netty.handler.codec.CorruptedFrameException;
+import io.netty.handler.codec.TooLongFrameException;
+
+import java.util.List;
+
+
+public class CustomByteToMessageDecoder extends ByteToMessageDecoder {
+
+            /*
+                +---------------------------------------------------------------+
+                | 魔数 2byte | 协议版本号 1byte | 序列化算法 1byte | 报文类型 1byte  |
+                +---------------------------------------------------------------+
+                | 状态 1byte |        保留字段 4byte     |      数据长度 4byte     |
+                +---------------------------------------------------------------+
+                |                   数据内容 （长度不定）                          |
+                +---------------------------------------------------------------+
+         */
+
+    private final int maxFrameLength;
+
+    public CustomByteToMessageDecoder() {
+        this(CustomMessage.DEFAULT_MAX_FRAME_LENGTH);
+    }
+
+    public CustomByteToMessageDecoder(int maxFrameLength) {
+        if (maxFrameLength <= 0) {
+            throw new IllegalArgumentException("maxFrameLength: " + maxFrameLength + " (expected: > 0)");
+        }
+        this.maxFrameLength = maxFrameLength;
+        // 大报文分多次到达时使用 CompositeByteBuf 累积，避免反复拷贝
+        setCumulator(AdaptiveCumulator.INSTANCE);
+        setDiscardAfterReads(AdaptiveCumulator.DISCARD_AFTER_READS);
+    }
+
+    @Override
+    protected void decode(ChannelHandlerContext channelHandlerContext, ByteBuf byteBuf, List<Object> list) throws Exception {
+        // 判断ByteBuf可读取字节
+        if(byteBuf.readableBytes() < CustomMessage.HEADER_LENGTH){
+            return;
+        }
+        // 头部字段使用绝对位置读取，数据不完整时不需要 mark/reset 读指针
+        int start = byteBuf.readerIndex();
+        short magic = byteBuf.getShort(start);
+        if(magic != CustomMessage.MAGIC){
+            // 魔数不对说明不是本协议的报文，丢弃已收到的数据，避免反复解析
+            byteBuf.skipBytes(byteBuf.readableBytes());
+            throw new CorruptedFrameException("invalid magic number: 0x" + Integer.toHexString(magic & 0xFFFF));
+        }
+        int dataLength = byteBuf.getInt(start + CustomMessage.LENGTH_FIELD_OFFSET);
+        // 在等待数据内容之前先校验长度，超长的报文不会进入累积缓冲区
+        if(dataLength < 0 || dataLength > maxFrameLength){
+            byteBuf.skipBytes(byteBuf.readableBytes());
+            throw new TooLongFrameException("frame length exceeds " + maxFrameLength + ": " + dataLength);
+        }
+        if(byteBuf.readableBytes() < CustomMessage.HEADER_LENGTH + dataLength){
+            return;
+        }
+        byte version = byteBuf.getByte(start + 2);
+        byte serializeType = byteBuf.getByte(start + 3);
+        byte messageType = byteBuf.getByte(start + 4);
+        byte status = byteBuf.getByte(start + 5);
+        // 跳过头部（保留字段目前没有使用）
+        byteBuf.skipBytes(CustomMessage.HEADER_LENGTH);
+        // 数据内容直接切片引用累积缓冲区，不做内存拷贝；切片和消息对象都来自对象池，稳定运行时解码不分配堆内存
+        ByteBuf data = byteBuf.readRetainedSlice(dataLength);
+        list.add(CustomMessage.newInstance(version, serializeType, messageType, status, data));
+    }
+}
@@ -0,0 +1,196 @@
+package codec;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufHolder;
+import io.netty.util.Recycler;
+
+
+/**
+ * 自定义协议解码后的消息。
+ *
+ * 头部字段解析成基本类型，数据内容直接持有累积缓冲区的 retainedSlice，不再拷贝到 byte[]。
+ * 使用完毕后需要 release，和 ByteBuf 一样遵循引用计数规则。
+ *
+ * 每个帧一个消息对象，高频解码时是主要的堆内存分配来源，所以 newInstance 创建的消息由 Recycler 回收复用：
+ * 引用计数直接使用数据内容的引用计数，release 到 0 时数据内容被释放，消息对象回到对象池。
+ * 之后不能再访问这个消息，它随时可能被解码器重新使用。通过构造方法创建的消息不会回收。
+ */
+public class CustomMessage implements ByteBufHolder {
+
+    // 魔数，用于快速识别非本协议的报文
+    public static final short MAGIC = (short) 0xCAFE;
+    public static final byte VERSION = 1;
+    // 魔数 2 + 版本号 1 + 序列化算法 1 + 报文类型 1 + 状态 1 + 保留字段 4 + 数据长度 4
+    public static final int HEADER_LENGTH = 14;
+    public static final int LENGTH_FIELD_OFFSET = 10;
+    public static final int DEFAULT_MAX_FRAME_LENGTH = 8 * 1024 * 1024;
+
+    private static final Recycler<CustomMessage> RECYCLER = new Recycler<CustomMessage>() {
+        @Override
+        protected CustomMessage newObject(Handle<CustomMessage> handle) {
+            return new CustomMessage(handle);
+        }
+    };
+
+    // 为空表示不是从对象池中取出的
+    private final Recycler.Handle<CustomMessage> handle;
+    private byte version;
+    private byte serializeType;
+    private byte messageType;
+    private byte status;
+    // 头部中的数据长度，创建时记录，数据内容被读取（反序列化）之后仍然可用
+    private int dataLength;
+    private ByteBuf content;
+
+    private CustomMessage(Recycler.Handle<CustomMessage> handle) {
+        this.handle = handle;
+    }
+
+    public CustomMessage(byte serializeType, byte messageType, byte status, ByteBuf content) {
+        this(VERSION, serializeType, messageType, status, content);
+    }
+
+    public CustomMessage(byte version, byte serializeType, byte messageType, byte status, ByteBuf content) {
+        this.handle = null;
+        init(version, serializeType, messageType, status, content);
+    }
+
+    /**
+     * 从对象池中取出一个消息，release 到 0 之后自动回收
+     */
+    public static CustomMessage newInstance(byte serializeType, byte messageType, byte status, ByteBuf content) {
+        return newInstance(VERSION, serializeType, messageType, status, content);
+    }
+
+    public static CustomMessage newInstance(byte version, byte serializeType, byte messageType, byte status, ByteBuf content) {
+        CustomMessage message = RECYCLER.get();
+        message.init(version, serializeType, messageType, status, content);
+        return message;
+    }
+
+    private void init(byte version, byte serializeType, byte messageType, byte status, ByteBuf content) {
+        if (content == null) {
+            throw new NullPointerException("content");
+        }
+        this.version = version;
+        this.serializeType = serializeType;
+        this.messageType = messageType;
+        this.status = status;
+        this.dataLength = content.readableBytes();
+        this.content = content;
+    }
+
+    private void recycle() {
+        content = null;
+        if (handle != null) {
+            handle.recycle(this);
+        }
+    }
+
+    public byte version() {
+        return version;
+    }
+
+    public byte serializeType() {
+        return serializeType;
+    }
+
+    public byte messageType() {
+        return messageType;
+    }
+
+    public byte status() {
+        return status;
+    }
+
+    /**
+     * 头部中的数据长度，不随 content 的读指针变化
+     */
+    public int dataLength() {
+        return dataLength;
+    }
+
+    @Override
+    public ByteBuf content() {
+        if (content == null) {
+            throw new IllegalStateException("CustomMessage already released");
+        }
+        return content;
+    }
+
+    @Override
+    public CustomMessage copy() {
+        return replace(content().copy());
+    }
+
+    @Override
+    public CustomMessage duplicate() {
+        return replace(content().duplicate());
+    }
+
+    @Override
+    public CustomMessage retainedDuplicate() {
+        return replace(content().retainedDuplicate());
+    }
+
+    @Override
+    public CustomMessage replace(ByteBuf content) {
+        return newInstance(version, serializeType, messageType, status, content);
+    }
+
+    @Override
+    public int refCnt() {
+        return content == null ? 0 : content.refCnt();
+    }
+
+    @Override
+    public CustomMessage retain() {
+        content().retain();
+        return this;
+    }
+
+    @Override
+    public CustomMessage retain(int increment) {
+        content().retain(increment);
+        return this;
+    }
+
+    @Override
+    public CustomMessage touch() {
+        content().touch();
+        return this;
+    }
+
+    @Override
+    public CustomMessage touch(Object hint) {
+        content().touch(hint);
+        return this;
+    }
+
+    @Override
+    public boolean release() {
+        if (content().release()) {
+            recycle();
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public boolean release(int decrement) {
+        if (content().release(decrement)) {
+            recycle();
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        if (content == null) {
+            return "CustomMessage(released)";
+        }
+        return "CustomMessage(version: " + version + ", serializeType: " + serializeType
+                + ", messageType: " + messageType + ", status: " + status + ", dataLength: " + dataLength + ')';
+    }
+}
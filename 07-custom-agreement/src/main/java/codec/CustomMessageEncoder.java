@@ -0,0 +1,36 @@
+package codec;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.MessageToMessageEncoder;
+
+import java.util.List;
+
+
+/**
+ * CustomMessage 编码器。
+ *
+ * 只为 14 字节的头部分配一个小缓冲区，数据内容原样向后传递，
+ * 两个 ByteBuf 会在 flush 时通过 gathering write 一起写出，不需要把数据内容拷贝到新的缓冲区。
+ */
+@ChannelHandler.Sharable
+public class CustomMessageEncoder extends MessageToMessageEncoder<CustomMessage> {
+
+    @Override
+    protected void encode(ChannelHandlerContext ctx, CustomMessage msg, List<Object> out) throws Exception {
+        ByteBuf content = msg.content();
+        ByteBuf header = ctx.alloc().ioBuffer(CustomMessage.HEADER_LENGTH);
+        header.writeShort(CustomMessage.MAGIC)
+                .writeByte(msg.version())
+                .writeByte(msg.serializeType())
+                .writeByte(msg.messageType())
+                .writeByte(msg.status())
+                // 保留字段
+                .writeInt(0)
+                .writeInt(content.readableBytes());
+        out.add(header);
+        // MessageToMessageEncoder 会在 encode 之后 release msg，这里需要额外 retain 一次
+        out.add(content.retain());
+    }
+}
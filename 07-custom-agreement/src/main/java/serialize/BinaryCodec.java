@@ -0,0 +1,122 @@
+package serialize;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.handler.codec.CorruptedFrameException;
+import io.netty.util.CharsetUtil;
+
+
+/**
+ * 紧凑二进制编码的基础工具方法。
+ *
+ * 整数使用 varint 编码（每个字节 7 位有效数据，最高位表示后面是否还有字节），小数值只占 1~2 字节；
+ * 有符号数先做 zigzag 变换，避免负数总是占满字节。
+ */
+public final class BinaryCodec {
+
+    private BinaryCodec() {
+    }
+
+    public static void writeVarInt(ByteBuf out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    public static int readVarInt(ByteBuf in) {
+        int result = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            byte b = in.readByte();
+            result |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return result;
+            }
+        }
+        throw new CorruptedFrameException("malformed varint");
+    }
+
+    public static void writeVarLong(ByteBuf out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    public static long readVarLong(ByteBuf in) {
+        long result = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.readByte();
+            result |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return result;
+            }
+        }
+        throw new CorruptedFrameException("malformed varlong");
+    }
+
+    public static void writeSignedVarLong(ByteBuf out, long value) {
+        writeVarLong(out, (value << 1) ^ (value >> 63));
+    }
+
+    public static long readSignedVarLong(ByteBuf in) {
+        long raw = readVarLong(in);
+        return (raw >>> 1) ^ -(raw & 1);
+    }
+
+    /**
+     * 字符串以 UTF-8 字节长度 + 内容的方式写出，直接编码进 ByteBuf，不会生成中间 byte[]
+     */
+    public static void writeString(ByteBuf out, CharSequence value) {
+        if (value == null) {
+            writeVarInt(out, 0);
+            return;
+        }
+        // 长度 + 1，0 表示 null
+        writeVarInt(out, ByteBufUtil.utf8Bytes(value) + 1);
+        ByteBufUtil.writeUtf8(out, value);
+    }
+
+    public static String readString(ByteBuf in) {
+        int length = readLength(in);
+        if (length < 0) {
+            return null;
+        }
+        String value = in.toString(in.readerIndex(), length, CharsetUtil.UTF_8);
+        in.skipBytes(length);
+        return value;
+    }
+
+    public static void writeBytes(ByteBuf out, byte[] value) {
+        if (value == null) {
+            writeVarInt(out, 0);
+            return;
+        }
+        writeVarInt(out, value.length + 1);
+        out.writeBytes(value);
+    }
+
+    public static byte[] readBytes(ByteBuf in) {
+        int length = readLength(in);
+        if (length < 0) {
+            return null;
+        }
+        byte[] value = new byte[length];
+        in.readBytes(value);
+        return value;
+    }
+
+    /**
+     * 读取 writeString / writeBytes 写出的长度，-1 表示 null。
+     * 长度来自网络，分配内存之前先和剩余字节数比较，几个字节的报文就能声明接近 2GB 的长度
+     */
+    private static int readLength(ByteBuf in) {
+        int length = readVarInt(in) - 1;
+        if (length < -1 || length > in.readableBytes()) {
+            throw new CorruptedFrameException("length " + length + " exceeds readable bytes " + in.readableBytes());
+        }
+        return length;
+    }
+}
@@ -0,0 +1,18 @@
+package serialize;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * 对象的二进制结构描述，由业务方为每种消息类型手写字段的读写顺序。
+ *
+ * 字段按约定顺序紧凑排列，不写字段名和类型信息，读写两端必须使用相同版本的 Schema。
+ * 读写基本类型可以借助 BinaryCodec 中的变长整数、字符串等工具方法。
+ */
+public interface Schema<T> {
+
+    Class<T> typeClass();
+
+    void write(T message, ByteBuf out);
+
+    T read(ByteBuf in);
+}
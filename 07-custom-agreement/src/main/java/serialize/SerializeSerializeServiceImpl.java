@@ -1,28 +1,44 @@
 package serialize;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.ByteBufOutputStream;
+
 import java.io.*;
 
 
+/**
+ * JDK 原生序列化，兼容任意 Serializable 对象，但体积大、速度慢，只建议在兼容场景使用。
+ *
+ * 反序列化会实例化报文中指定的任意类，不能用于处理不可信的网络数据，默认不注册，见 SerializeServiceRegistry。
+ */
 public class SerializeSerializeServiceImpl implements SerializeService {
 
+    public static final byte TYPE = 1;
+
+    @Override
+    public byte type() {
+        return TYPE;
+    }
+
     @Override
-    public String serialize(Object obj) throws IOException {
-        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
-        ObjectOutputStream objectOutputStream = new ObjectOutputStream(byteArrayOutputStream);
-        objectOutputStream.writeObject(obj);
-        String string = byteArrayOutputStream.toString("ISO-8859-1");
-        objectOutputStream.close();
-        byteArrayOutputStream.close();
-        return string;
+    public void serialize(Object obj, ByteBuf out) throws IOException {
+        // 直接写入 ByteBuf，不再经过 ByteArrayOutputStream 和 ISO-8859-1 字符串中转
+        ObjectOutputStream objectOutputStream = new ObjectOutputStream(new ByteBufOutputStream(out));
+        try {
+            objectOutputStream.writeObject(obj);
+        } finally {
+            objectOutputStream.close();
+        }
     }
 
     @Override
-    public Object deserialize(byte[] bytes) throws IOException, ClassNotFoundException {
-        ByteArrayInputStream byteArrayInputStream = new ByteArrayInputStream(bytes);
-        ObjectInputStream objectInputStream = new ObjectInputStream(byteArrayInputStream);
-        Object object = objectInputStream.readObject();
-        objectInputStream.close();
-        byteArrayInputStream.close();
-        return object;
+    public Object deserialize(ByteBuf in) throws IOException, ClassNotFoundException {
+        ObjectInputStream objectInputStream = new ObjectInputStream(new ByteBufInputStream(in));
+        try {
+            return objectInputStream.readObject();
+        } finally {
+            objectInputStream.close();
+        }
     }
 }
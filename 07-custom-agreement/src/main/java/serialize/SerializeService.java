@@ -1,10 +1,22 @@
 package serialize;
 
+import io.netty.buffer.ByteBuf;
+
 import java.io.IOException;
 
+/**
+ * 序列化服务，直接读写 ByteBuf，避免中间的 byte[] / String 拷贝。
+ *
+ * 实现类需要是无状态、线程安全的，通过 SerializeServiceRegistry 按协议头中的序列化算法字段查找单例。
+ */
 public interface SerializeService {
 
-    String serialize(Object obj) throws IOException;
+    /**
+     * 对应协议头中的序列化算法字段
+     */
+    byte type();
+
+    void serialize(Object obj, ByteBuf out) throws IOException;
 
-    Object deserialize(byte[] bytes) throws IOException, ClassNotFoundException;
+    Object deserialize(ByteBuf in) throws IOException, ClassNotFoundException;
 }
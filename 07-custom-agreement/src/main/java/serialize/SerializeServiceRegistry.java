@@ -0,0 +1,42 @@
+package serialize;
+
+import io.netty.util.internal.ObjectUtil;
+
+import java.util.Arrays;
+
+
+/**
+ * 序列化服务注册表，按协议头中的序列化算法字段（1 byte）查找。
+ *
+ * 每种算法只保留一个单例，解码每一帧时直接按下标取数组元素，不再为每个报文创建新的 SerializeService。
+ * 默认只注册了 Schema 二进制序列化（2），业务方可以在启动时用自己的实现替换。
+ *
+ * JDK 序列化（1）不在默认注册表中：反序列化时会按报文中的类名实例化对象，任何一个连接发来的报文都能构造任意
+ * Serializable 对象图（反序列化漏洞）。只有在两端都可信的兼容场景下才由业务方显式注册。
+ */
+public final class SerializeServiceRegistry {
+
+    // 下标为 type & 0xFF，注册时整体替换数组（copy-on-write）
+    private static volatile SerializeService[] services = new SerializeService[256];
+
+    static {
+        register(new SchemaSerializeServiceImpl());
+    }
+
+    private SerializeServiceRegistry() {
+    }
+
+    public static synchronized void register(SerializeService serializeService) {
+        ObjectUtil.checkNotNull(serializeService, "serializeService");
+        SerializeService[] updated = Arrays.copyOf(services, services.length);
+        updated[serializeService.type() & 0xFF] = serializeService;
+        services = updated;
+    }
+
+    /**
+     * 返回 null 表示不支持该序列化算法
+     */
+    public static SerializeService get(byte serializeType) {
+        return services[serializeType & 0xFF];
+    }
+}
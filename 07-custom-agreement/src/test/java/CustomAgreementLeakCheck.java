@@ -0,0 +1,197 @@
+import codec.CustomByteToMessageDecoder;
+import codec.CustomMessage;
+import codec.CustomMessageEncoder;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.CorruptedFrameException;
+import io.netty.handler.codec.DecoderException;
+import io.netty.handler.codec.TooLongFrameException;
+import leak.LeakCheck;
+import serialize.BinaryCodec;
+import serialize.SchemaSerializeServiceImpl;
+import serialize.SerializeSerializeServiceImpl;
+import serialize.SerializeServiceRegistry;
+
+import java.io.IOException;
+
+
+/**
+ * 自定义协议 Pipeline 的泄漏检查，Handler 顺序与 HttpServer 保持一致。
+ * 覆盖完整报文、拆包、粘包、大报文（CompositeByteBuf 累积）以及各种错误报文，检查解码出的消息数和抛出的异常。
+ *
+ * mvn test 时由 exec-maven-plugin 运行，也可以直接运行 main。
+ */
+public class CustomAgreementLeakCheck {
+
+    private static EmbeddedChannel newChannel(LeakCheck check) {
+        return check.newChannel(new CustomByteToMessageDecoder(), new CustomMessageEncoder(), new MessageCounter(),
+                new CustomMessageHandler());
+    }
+
+    private static void frame(ByteBuf out, short magic, byte serializeType, byte[] data) {
+        out.writeShort(magic)
+                .writeByte(CustomMessage.VERSION)
+                .writeByte(serializeType)
+                .writeByte(1)
+                .writeByte(0)
+                .writeInt(0)
+                .writeInt(data.length)
+                .writeBytes(data);
+    }
+
+    private static ByteBuf frames(LeakCheck check, int count, Object object) throws Exception {
+        ByteBuf data = Unpooled.buffer();
+        SerializeServiceRegistry.get(SchemaSerializeServiceImpl.TYPE).serialize(object, data);
+        byte[] bytes = ByteBufUtil.getBytes(data);
+        data.release();
+        ByteBuf out = check.allocator().buffer();
+        for (int i = 0; i < count; i++) {
+            frame(out, CustomMessage.MAGIC, SchemaSerializeServiceImpl.TYPE, bytes);
+        }
+        return out;
+    }
+
+    /**
+     * 按 readSize 拆成多次读取写入，异常传播到 TailContext 时 EmbeddedChannel 会重新抛出，这里只打印。
+     * 检查解码出的消息数和抛出的异常类型（没有异常时为 null）
+     */
+    private static void write(LeakCheck check, EmbeddedChannel channel, ByteBuf input, int readSize,
+                              int messages, Class<? extends Throwable> exception) {
+        Throwable cause = null;
+        try {
+            while (input.isReadable()) {
+                int length = Math.min(readSize, input.readableBytes());
+                ByteBuf read = check.allocator().buffer(length);
+                input.readBytes(read, length);
+                channel.writeInbound(read);
+            }
+        } catch (Exception e) {
+            // EmbeddedChannel 会原样抛出 Handler 中的受检异常
+            System.out.println("Unhandled exception: " + e);
+            cause = e;
+        } finally {
+            input.release();
+        }
+        check.drainOutbound(channel);
+        LeakCheck.expect(messages, channel.pipeline().get(MessageCounter.class).count, "messages");
+        LeakCheck.expect(exception, cause == null ? null : cause.getClass(), "exception");
+    }
+
+    public void run(LeakCheck check) {
+        check.run("single frame", c -> write(c, newChannel(c), frames(c, 1, "hello"), Integer.MAX_VALUE, 1, null));
+        check.run("many frames in one read", c -> write(c, newChannel(c), frames(c, 64, "hello"), Integer.MAX_VALUE, 64, null));
+        check.run("fragmented frames", c -> write(c, newChannel(c), frames(c, 16, "hello"), 7, 16, null));
+        check.run("large fragmented frame", c -> {
+            char[] text = new char[256 * 1024];
+            java.util.Arrays.fill(text, 'x');
+            write(c, newChannel(c), frames(c, 2, new String(text)), 1460, 2, null);
+        });
+        check.run("partial frame at close", c -> {
+            ByteBuf input = frames(c, 1, "hello");
+            write(c, newChannel(c), input.readRetainedSlice(input.readableBytes() - 1), Integer.MAX_VALUE, 0, null);
+            input.release();
+        });
+        check.run("invalid magic", c -> {
+            ByteBuf input = c.allocator().buffer();
+            frame(input, (short) 0x1234, SchemaSerializeServiceImpl.TYPE, new byte[8]);
+            write(c, newChannel(c), input, Integer.MAX_VALUE, 0, CorruptedFrameException.class);
+        });
+        check.run("too long frame", c -> {
+            ByteBuf input = c.allocator().buffer();
+            input.writeShort(CustomMessage.MAGIC).writeByte(CustomMessage.VERSION).writeByte(1).writeByte(1).writeByte(0)
+                    .writeInt(0).writeInt(CustomMessage.DEFAULT_MAX_FRAME_LENGTH + 1).writeZero(16);
+            write(c, newChannel(c), input, Integer.MAX_VALUE, 0, TooLongFrameException.class);
+        });
+        check.run("unsupported serialize type", c -> {
+            ByteBuf input = c.allocator().buffer();
+            frame(input, CustomMessage.MAGIC, (byte) 99, new byte[8]);
+            write(c, newChannel(c), input, Integer.MAX_VALUE, 1, DecoderException.class);
+        });
+        check.run("jdk serialization not registered", c -> {
+            // JDK 序列化默认不注册，网络上的报文不会走到 ObjectInputStream
+            ByteBuf data = Unpooled.buffer();
+            new SerializeSerializeServiceImpl().serialize("hello", data);
+            ByteBuf input = c.allocator().buffer();
+            frame(input, CustomMessage.MAGIC, SerializeSerializeServiceImpl.TYPE, ByteBufUtil.getBytes(data));
+            data.release();
+            write(c, newChannel(c), input, Integer.MAX_VALUE, 1, DecoderException.class);
+        });
+        check.run("corrupted payload", c -> {
+            // schemaId 127 没有注册
+            ByteBuf input = c.allocator().buffer();
+            frame(input, CustomMessage.MAGIC, SchemaSerializeServiceImpl.TYPE, new byte[]{127, 0, 0, 0, 0, 0, 0, 0});
+            write(c, newChannel(c), input, Integer.MAX_VALUE, 1, IOException.class);
+        });
+        check.run("oversized length in payload", c -> {
+            // Schema 序列化的 byte[]，长度字段声明了接近 2GB，实际只有 4 个字节
+            ByteBuf data = Unpooled.buffer();
+            BinaryCodec.writeVarInt(data, 2);
+            BinaryCodec.writeVarInt(data, Integer.MAX_VALUE);
+            data.writeZero(4);
+            ByteBuf input = c.allocator().buffer();
+            frame(input, CustomMessage.MAGIC, SchemaSerializeServiceImpl.TYPE, ByteBufUtil.getBytes(data));
+            data.release();
+            write(c, newChannel(c), input, Integer.MAX_VALUE, 1, CorruptedFrameException.class);
+        });
+        check.run("data length after deserialize", c -> {
+            // CustomMessageHandler 在反序列化之后才打印消息，数据长度要取头部的值而不是剩余可读字节数
+            EmbeddedChannel channel = c.newChannel(new CustomByteToMessageDecoder());
+            ByteBuf input = frames(c, 1, "hello");
+            int dataLength = input.readableBytes() - CustomMessage.HEADER_LENGTH;
+            channel.writeInbound(input);
+            CustomMessage message = channel.readInbound();
+            try {
+                SerializeServiceRegistry.get(message.serializeType()).deserialize(message.content());
+                LeakCheck.expect(0, message.content().readableBytes(), "readable bytes");
+                LeakCheck.expect(dataLength, message.dataLength(), "data length");
+            } finally {
+                message.release();
+            }
+        });
+        check.run("encode", c -> {
+            EmbeddedChannel channel = newChannel(c);
+            ByteBuf data = c.allocator().buffer();
+            SerializeServiceRegistry.get(SchemaSerializeServiceImpl.TYPE).serialize("hello", data);
+            channel.writeOutbound(CustomMessage.newInstance(SchemaSerializeServiceImpl.TYPE, (byte) 1, (byte) 0, data));
+            // 头部和数据内容是两个 ByteBuf
+            ByteBuf header = channel.readOutbound();
+            ByteBuf content = channel.readOutbound();
+            try {
+                LeakCheck.expect(CustomMessage.HEADER_LENGTH, header.readableBytes(), "header length");
+                LeakCheck.expect(CustomMessage.MAGIC, header.getShort(header.readerIndex()), "magic");
+                LeakCheck.expect(content.readableBytes(), header.getInt(header.readerIndex() + CustomMessage.HEADER_LENGTH - 4),
+                        "data length");
+            } finally {
+                header.release();
+                content.release();
+            }
+            LeakCheck.expect(0, c.drainOutbound(channel), "outbound messages");
+        });
+    }
+
+    /**
+     * 统计解码出的 CustomMessage，放在 CustomMessageHandler 之前
+     */
+    private static final class MessageCounter extends ChannelInboundHandlerAdapter {
+
+        int count;
+
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) {
+            if (msg instanceof CustomMessage) {
+                count++;
+            }
+            ctx.fireChannelRead(msg);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        LeakCheck check = new LeakCheck("07-custom-agreement");
+        new CustomAgreementLeakCheck().run(check);
+        check.verify();
+    }
+}
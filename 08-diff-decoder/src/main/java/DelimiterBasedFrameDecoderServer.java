@@ -1,27 +1,44 @@
+import admission.AdmissionControl;
+import backpressure.BackPressureHandler;
+import backpressure.BackPressureMetrics;
+import decoder.MultiDelimiterFrameDecoder;
 import io.netty.bootstrap.ServerBootstrap;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
-import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelInitializer;
-import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.group.ChannelGroup;
 import io.netty.channel.socket.SocketChannel;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
-import io.netty.handler.codec.DelimiterBasedFrameDecoder;
 import io.netty.handler.codec.FixedLengthFrameDecoder;
+import ssl.SslTermination;
+import transport.Transport;
 
 public class DelimiterBasedFrameDecoderServer {
 
     public void startEchoServer(int port) throws Exception{
-        NioEventLoopGroup bossGroup = new NioEventLoopGroup();
-        NioEventLoopGroup workerGroup = new NioEventLoopGroup();
+        Transport transport = Transport.select();
+        EventLoopGroup bossGroup = transport.newBossGroup();
+        EventLoopGroup workerGroup = transport.newWorkerGroup();
+
+        // 所有连接共用的背压统计，慢连接等待写出的字节数可以通过 JMX 查看
+        final BackPressureMetrics backPressure = BackPressureMetrics.create("delimiter_based");
+        final SslTermination ssl = SslTermination.fromProperties("delimiter_based");
+        // 准入控制：连接数上限，EventLoop 严重过载时不再接受新连接，统计可以通过 JMX 查看
+        final AdmissionControl admission = AdmissionControl.fromProperties("delimiter_based", workerGroup);
 
         try {
             ServerBootstrap b = new ServerBootstrap();
             b.group(bossGroup,workerGroup)
-                    .channel(NioServerSocketChannel.class)
+                    .channel(transport.serverChannelClass())
                     .childHandler(new ChannelInitializer<SocketChannel>() {
                         @Override
                         protected void initChannel(SocketChannel socketChannel) throws Exception {
+                            // 出站缓冲区超过高水位时暂停读取，长时间不可写的慢连接直接关闭
+                            socketChannel.pipeline().addLast("backPressure", new BackPressureHandler(backPressure));
+                            if (ssl != null) {
+                                ssl.addLast(socketChannel.pipeline());
+                            }
                             /**
                              * 使用特殊分隔符解码器 DelimiterBasedFrameDecoder 之前我们需要了解以下几个属性的作用
                              *
@@ -38,17 +55,29 @@ public class DelimiterBasedFrameDecoderServer {
                              * stripDelimiter : stripDelimiter 的作用是判断解码后得到的消息是否去除分隔符。
                              *
                              * 下面我们通过一个例子感受一下使用 Netty 实现特殊分隔符解码是多么简单。
+                             *
+                             * DelimiterBasedFrameDecoder 每次收到数据都会从头扫描整个累积缓冲区，长帧分多次到达时是 O(n²)，
+                             * 这里换成参数相同的 MultiDelimiterFrameDecoder，只扫描新到达的数据，多个分隔符也只扫描一遍。
                              */
                             ByteBuf delimiter = Unpooled.copiedBuffer("&".getBytes());
-                            socketChannel.pipeline().addLast(new DelimiterBasedFrameDecoder(10,true,true,delimiter));
+                            socketChannel.pipeline().addLast(new MultiDelimiterFrameDecoder(10,true,true,delimiter));
                             socketChannel.pipeline().addLast(new EchoServerHandler());
                         }
-                    });
-            ChannelFuture f = b.bind(port).sync();
-            f.channel().closeFuture().sync();
+                    })
+                    // 出站缓冲区高低水位，决定 Channel 何时变为不可写
+                    .childOption(ChannelOption.WRITE_BUFFER_WATER_MARK, BackPressureHandler.WATER_MARK);
+            if (admission != null) {
+                // ServerChannel 上检查连接数，超过上限的连接在注册到 Worker 之前关闭
+                b.handler(admission.connectionLimiter());
+            }
+            ChannelGroup serverChannels = transport.bind(b, port);
+            serverChannels.newCloseFuture().sync();
         }finally {
             workerGroup.shutdownGracefully();
             bossGroup.shutdownGracefully();
+            if (ssl != null) {
+                ssl.shutdown();
+            }
         }
     }
 
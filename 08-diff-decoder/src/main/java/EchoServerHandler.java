@@ -1,14 +1,32 @@
+import decoder.FrameBatch;
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInboundHandlerAdapter;
 import io.netty.util.CharsetUtil;
+import io.netty.util.ReferenceCountUtil;
 
 
 @ChannelHandler.Sharable
 public class EchoServerHandler extends ChannelInboundHandlerAdapter {
     @Override
     public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
-        System.out.println("Receive client : [" + ((ByteBuf) msg).toString(CharsetUtil.UTF_8) + "]");
+        try {
+            if (msg instanceof FrameBatch) {
+                // 批量解码器一次传过来一批帧，在一次调用中全部处理
+                FrameBatch batch = (FrameBatch) msg;
+                for (int i = 0; i < batch.size(); i++) {
+                    receive(batch.get(i));
+                }
+            } else {
+                receive((ByteBuf) msg);
+            }
+        } finally {
+            ReferenceCountUtil.release(msg);
+        }
+    }
+
+    private void receive(ByteBuf frame) {
+        System.out.println("Receive client : [" + frame.toString(CharsetUtil.UTF_8) + "]");
     }
 }
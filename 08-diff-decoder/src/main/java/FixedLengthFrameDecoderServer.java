@@ -1,25 +1,42 @@
+import admission.AdmissionControl;
+import backpressure.BackPressureHandler;
+import backpressure.BackPressureMetrics;
+import cumulation.AdaptiveCumulator;
+import decoder.BatchingFixedLengthFrameDecoder;
 import io.netty.bootstrap.ServerBootstrap;
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.*;
-import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.group.ChannelGroup;
 import io.netty.channel.socket.SocketChannel;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
-import io.netty.handler.codec.FixedLengthFrameDecoder;
 import io.netty.util.CharsetUtil;
+import ssl.SslTermination;
+import transport.Transport;
 
 public class FixedLengthFrameDecoderServer {
 
     public void startEchoServer(int port) throws Exception{
-        NioEventLoopGroup bossGroup = new NioEventLoopGroup();
-        NioEventLoopGroup workerGroup = new NioEventLoopGroup();
+        Transport transport = Transport.select();
+        EventLoopGroup bossGroup = transport.newBossGroup();
+        EventLoopGroup workerGroup = transport.newWorkerGroup();
+
+        // 所有连接共用的背压统计，慢连接等待写出的字节数可以通过 JMX 查看
+        final BackPressureMetrics backPressure = BackPressureMetrics.create("fixed_length");
+        final SslTermination ssl = SslTermination.fromProperties("fixed_length");
+        // 准入控制：连接数上限，EventLoop 严重过载时不再接受新连接，统计可以通过 JMX 查看
+        final AdmissionControl admission = AdmissionControl.fromProperties("fixed_length", workerGroup);
 
         try {
             ServerBootstrap b = new ServerBootstrap();
             b.group(bossGroup,workerGroup)
-                    .channel(NioServerSocketChannel.class)
+                    .channel(transport.serverChannelClass())
                     .childHandler(new ChannelInitializer<SocketChannel>() {
                         @Override
                         protected void initChannel(SocketChannel socketChannel) throws Exception {
+                            // 出站缓冲区超过高水位时暂停读取，长时间不可写的慢连接直接关闭
+                            socketChannel.pipeline().addLast("backPressure", new BackPressureHandler(backPressure));
+                            if (ssl != null) {
+                                ssl.addLast(socketChannel.pipeline());
+                            }
                             /**
                              * 固定长度解码器 FixedLengthFrameDecoder 非常简单，直接通过构造函数设置固定长度的大小 frameLength，
                              * 无论接收方一次获取多大的数据，都会严格按照 frameLength 进行解码。
@@ -27,15 +44,26 @@ public class FixedLengthFrameDecoderServer {
                              * 如果消息长度小于 frameLength，FixedLengthFrameDecoder 解码器会一直等后续数据包的到达，直至获得完整的消息。
                              * 下面我们通过一个例子感受一下使用 Netty 实现固定长度解码是多么简单。
                              */
-                            socketChannel.pipeline().addLast(new FixedLengthFrameDecoder(10));
+                            // 累积方式按数据量自动选择，见 AdaptiveCumulator。
+                            // 一次读取解码出的所有帧合成一个 FrameBatch 传给 EchoServerHandler，减少 Pipeline 分发次数
+                            socketChannel.pipeline().addLast(AdaptiveCumulator.configure(new BatchingFixedLengthFrameDecoder(10)));
                             socketChannel.pipeline().addLast(new EchoServerHandler());
                         }
-                    });
-            ChannelFuture f = b.bind(port).sync();
-            f.channel().closeFuture().sync();
+                    })
+                    // 出站缓冲区高低水位，决定 Channel 何时变为不可写
+                    .childOption(ChannelOption.WRITE_BUFFER_WATER_MARK, BackPressureHandler.WATER_MARK);
+            if (admission != null) {
+                // ServerChannel 上检查连接数，超过上限的连接在注册到 Worker 之前关闭
+                b.handler(admission.connectionLimiter());
+            }
+            ChannelGroup serverChannels = transport.bind(b, port);
+            serverChannels.newCloseFuture().sync();
         }finally {
             workerGroup.shutdownGracefully();
             bossGroup.shutdownGracefully();
+            if (ssl != null) {
+                ssl.shutdown();
+            }
         }
     }
 
@@ -1,25 +1,43 @@
+import admission.AdmissionControl;
+import backpressure.BackPressureHandler;
+import backpressure.BackPressureMetrics;
+import cumulation.AdaptiveCumulator;
+import decoder.BatchingLengthFieldBasedFrameDecoder;
 import io.netty.bootstrap.ServerBootstrap;
-import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelInitializer;
-import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.group.ChannelGroup;
 import io.netty.channel.socket.SocketChannel;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
 import io.netty.handler.codec.FixedLengthFrameDecoder;
-import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
+import ssl.SslTermination;
+import transport.Transport;
 
 public class LengthFieldBasedFrameDecoderServer {
 
     public void startEchoServer(int port) throws Exception{
-        NioEventLoopGroup bossGroup = new NioEventLoopGroup();
-        NioEventLoopGroup workerGroup = new NioEventLoopGroup();
+        Transport transport = Transport.select();
+        EventLoopGroup bossGroup = transport.newBossGroup();
+        EventLoopGroup workerGroup = transport.newWorkerGroup();
+
+        // 所有连接共用的背压统计，慢连接等待写出的字节数可以通过 JMX 查看
+        final BackPressureMetrics backPressure = BackPressureMetrics.create("length_field_based");
+        final SslTermination ssl = SslTermination.fromProperties("length_field_based");
+        // 准入控制：连接数上限，EventLoop 严重过载时不再接受新连接，统计可以通过 JMX 查看
+        final AdmissionControl admission = AdmissionControl.fromProperties("length_field_based", workerGroup);
 
         try {
             ServerBootstrap b = new ServerBootstrap();
             b.group(bossGroup,workerGroup)
-                    .channel(NioServerSocketChannel.class)
+                    .channel(transport.serverChannelClass())
                     .childHandler(new ChannelInitializer<SocketChannel>() {
                         @Override
                         protected void initChannel(SocketChannel socketChannel) throws Exception {
+                            // 出站缓冲区超过高水位时暂停读取，长时间不可写的慢连接直接关闭
+                            socketChannel.pipeline().addLast("backPressure", new BackPressureHandler(backPressure));
+                            if (ssl != null) {
+                                ssl.addLast(socketChannel.pipeline());
+                            }
                             /**
                              * 长度域解码器 LengthFieldBasedFrameDecoder 是解决 TCP 拆包/粘包问题最常用的**解码器。**它基本上可以覆盖大部分基于长度拆包场景，
                              * 开源消息中间件 RocketMQ 就是使用 LengthFieldBasedFrameDecoder 进行解码的。
@@ -142,15 +160,26 @@ public class LengthFieldBasedFrameDecoderServer {
                              * lengthAdjustment = -3，Length 字段值（16 字节）需要减去 HDR1（1 字节） 和 Length 自身所占字节长度（2 字节）才能得到 HDR2 和 Content 的内容（1 + 12 = 13 字节）。
                              * initialBytesToStrip = 3，解码后跳过 HDR1 和 Length 字段，共占用 3 字节。
                              */
-                            socketChannel.pipeline().addLast(new LengthFieldBasedFrameDecoder(50,0,1));
+                            // 累积方式按数据量自动选择，见 AdaptiveCumulator。
+                            // 一次读取解码出的所有帧合成一个 FrameBatch 传给 EchoServerHandler，减少 Pipeline 分发次数
+                            socketChannel.pipeline().addLast(AdaptiveCumulator.configure(new BatchingLengthFieldBasedFrameDecoder(50,0,1)));
                             socketChannel.pipeline().addLast(new EchoServerHandler());
                         }
-                    });
-            ChannelFuture f = b.bind(port).sync();
-            f.channel().closeFuture().sync();
+                    })
+                    // 出站缓冲区高低水位，决定 Channel 何时变为不可写
+                    .childOption(ChannelOption.WRITE_BUFFER_WATER_MARK, BackPressureHandler.WATER_MARK);
+            if (admission != null) {
+                // ServerChannel 上检查连接数，超过上限的连接在注册到 Worker 之前关闭
+                b.handler(admission.connectionLimiter());
+            }
+            ChannelGroup serverChannels = transport.bind(b, port);
+            serverChannels.newCloseFuture().sync();
         }finally {
             workerGroup.shutdownGracefully();
             bossGroup.shutdownGracefully();
+            if (ssl != null) {
+                ssl.shutdown();
+            }
         }
     }
 
@@ -0,0 +1,29 @@
+package decoder;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.FixedLengthFrameDecoder;
+
+
+/**
+ * 批量输出的 FixedLengthFrameDecoder：一次把累积缓冲区中所有完整的帧解码出来，合成一个 FrameBatch 向后传递
+ */
+public class BatchingFixedLengthFrameDecoder extends FixedLengthFrameDecoder {
+
+    public BatchingFixedLengthFrameDecoder(int frameLength) {
+        super(frameLength);
+    }
+
+    @Override
+    protected Object decode(ChannelHandlerContext ctx, ByteBuf in) throws Exception {
+        FrameBatch batch = null;
+        Object frame;
+        while ((frame = super.decode(ctx, in)) != null) {
+            if (batch == null) {
+                batch = FrameBatch.newInstance();
+            }
+            batch.add((ByteBuf) frame);
+        }
+        return batch;
+    }
+}
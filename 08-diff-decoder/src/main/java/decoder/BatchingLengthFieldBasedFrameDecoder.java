@@ -0,0 +1,43 @@
+package decoder;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
+
+
+/**
+ * 批量输出的 LengthFieldBasedFrameDecoder：一次把累积缓冲区中所有完整的帧解码出来，合成一个 FrameBatch 向后传递
+ */
+public class BatchingLengthFieldBasedFrameDecoder extends LengthFieldBasedFrameDecoder {
+
+    public BatchingLengthFieldBasedFrameDecoder(int maxFrameLength, int lengthFieldOffset, int lengthFieldLength) {
+        super(maxFrameLength, lengthFieldOffset, lengthFieldLength);
+    }
+
+    public BatchingLengthFieldBasedFrameDecoder(int maxFrameLength, int lengthFieldOffset, int lengthFieldLength,
+                                                int lengthAdjustment, int initialBytesToStrip) {
+        super(maxFrameLength, lengthFieldOffset, lengthFieldLength, lengthAdjustment, initialBytesToStrip);
+    }
+
+    @Override
+    protected Object decode(ChannelHandlerContext ctx, ByteBuf in) throws Exception {
+        FrameBatch batch = null;
+        try {
+            Object frame;
+            while ((frame = super.decode(ctx, in)) != null) {
+                if (batch == null) {
+                    batch = FrameBatch.newInstance();
+                }
+                batch.add((ByteBuf) frame);
+            }
+        } catch (Exception e) {
+            // 帧过长等异常之前已经解码出的帧仍然有效，先传递下去再抛出异常。
+            // 调用 decode 之前上一批的结果已经传递过，这里直接 fireChannelRead 不会打乱顺序
+            if (batch != null) {
+                ctx.fireChannelRead(batch);
+            }
+            throw e;
+        }
+        return batch;
+    }
+}
@@ -0,0 +1,207 @@
+package decoder;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.util.ByteProcessor;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+
+
+/**
+ * MultiDelimiterFrameDecoder 使用的分隔符查找器，查找状态可以跨多次 find 保留，
+ * 一个分隔符被拆成两次读取时也能找到。
+ *
+ * - 只有一个单字节分隔符时使用 SingleByte，每次比较 8 个字节（SWAR）
+ * - 其他情况使用 AhoCorasick 自动机，每个字节只看一次，与分隔符的个数和长度无关
+ *
+ * 有状态，每个解码器一个实例。
+ */
+abstract class DelimiterMatcher {
+
+    static DelimiterMatcher create(ByteBuf... delimiters) {
+        if (delimiters.length == 0) {
+            throw new IllegalArgumentException("empty delimiters");
+        }
+        byte[][] patterns = new byte[delimiters.length][];
+        for (int i = 0; i < delimiters.length; i++) {
+            ByteBuf delimiter = delimiters[i];
+            if (!delimiter.isReadable()) {
+                throw new IllegalArgumentException("empty delimiter");
+            }
+            patterns[i] = new byte[delimiter.readableBytes()];
+            delimiter.getBytes(delimiter.readerIndex(), patterns[i]);
+        }
+        if (patterns.length == 1 && patterns[0].length == 1) {
+            return new SingleByte(patterns[0][0]);
+        }
+        return new AhoCorasick(patterns);
+    }
+
+    /**
+     * 在 [from, to) 中查找，返回匹配到的分隔符最后一个字节的位置，没有找到返回 -1
+     */
+    abstract int find(ByteBuf buffer, int from, int to);
+
+    /**
+     * 上一次匹配到的分隔符长度
+     */
+    abstract int matchedLength();
+
+    abstract int maxLength();
+
+    /**
+     * 回到初始状态，在帧边界上调用
+     */
+    abstract void reset();
+
+    static final class SingleByte extends DelimiterMatcher {
+
+        private static final long LOW_BITS = 0x0101010101010101L;
+        private static final long HIGH_BITS = 0x8080808080808080L;
+
+        private final byte delimiter;
+        private final long pattern;
+
+        SingleByte(byte delimiter) {
+            this.delimiter = delimiter;
+            this.pattern = LOW_BITS * (delimiter & 0xFF);
+        }
+
+        @Override
+        int find(ByteBuf buffer, int from, int to) {
+            int i = from;
+            // 按小端读取，最低位的匹配字节就是第一个匹配字节；haszero 的误报只会出现在真正匹配字节的高位
+            for (int end = to - 7; i < end; i += 8) {
+                long x = buffer.getLongLE(i) ^ pattern;
+                long found = (x - LOW_BITS) & ~x & HIGH_BITS;
+                if (found != 0) {
+                    return i + (Long.numberOfTrailingZeros(found) >>> 3);
+                }
+            }
+            for (; i < to; i++) {
+                if (buffer.getByte(i) == delimiter) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        int matchedLength() {
+            return 1;
+        }
+
+        @Override
+        int maxLength() {
+            return 1;
+        }
+
+        @Override
+        void reset() {
+        }
+    }
+
+    /**
+     * 多模式匹配。goto 表展开成 状态数 × 256 的数组（失败指针已经合并进去），每个字节只需要一次查表。
+     * 同一个位置结束的多个分隔符取最长的一个。
+     */
+    static final class AhoCorasick extends DelimiterMatcher implements ByteProcessor {
+
+        private final int[] transitions;
+        // 以该状态结束的最长分隔符长度，0 表示没有分隔符在这里结束
+        private final int[] outputs;
+        private final int maxLength;
+        private int state;
+        private int matchedLength;
+
+        AhoCorasick(byte[][] patterns) {
+            int maxStates = 1;
+            int max = 0;
+            for (byte[] pattern : patterns) {
+                maxStates += pattern.length;
+                max = Math.max(max, pattern.length);
+            }
+            maxLength = max;
+            int[] table = new int[maxStates << 8];
+            int[] depth = new int[maxStates];
+            int[] output = new int[maxStates];
+            int states = 1;
+            // 构建 trie，0 表示还没有这条边（根节点不会作为子节点出现）
+            for (byte[] pattern : patterns) {
+                int s = 0;
+                for (byte b : pattern) {
+                    int index = (s << 8) | (b & 0xFF);
+                    if (table[index] == 0) {
+                        depth[states] = depth[s] + 1;
+                        table[index] = states++;
+                    }
+                    s = table[index];
+                }
+                output[s] = pattern.length;
+            }
+            // 按 BFS 顺序计算失败指针，同时把缺失的边补成失败指针上的边
+            int[] fail = new int[states];
+            Queue<Integer> queue = new ArrayDeque<Integer>();
+            for (int b = 0; b < 256; b++) {
+                int child = table[b];
+                if (child != 0) {
+                    queue.add(child);
+                }
+            }
+            while (!queue.isEmpty()) {
+                int s = queue.poll();
+                if (output[s] == 0) {
+                    output[s] = output[fail[s]];
+                }
+                for (int b = 0; b < 256; b++) {
+                    int index = (s << 8) | b;
+                    int child = table[index];
+                    if (child != 0) {
+                        fail[child] = table[(fail[s] << 8) | b];
+                        queue.add(child);
+                    } else {
+                        table[index] = table[(fail[s] << 8) | b];
+                    }
+                }
+            }
+            int[] compact = new int[states << 8];
+            System.arraycopy(table, 0, compact, 0, compact.length);
+            this.transitions = compact;
+            this.outputs = new int[states];
+            System.arraycopy(output, 0, outputs, 0, states);
+        }
+
+        @Override
+        int find(ByteBuf buffer, int from, int to) {
+            // forEachByte 只做一次边界检查，比逐个 getByte 快
+            return buffer.forEachByte(from, to - from, this);
+        }
+
+        @Override
+        public boolean process(byte value) {
+            int s = transitions[(state << 8) | (value & 0xFF)];
+            state = s;
+            int length = outputs[s];
+            if (length != 0) {
+                matchedLength = length;
+                return false;
+            }
+            return true;
+        }
+
+        @Override
+        int matchedLength() {
+            return matchedLength;
+        }
+
+        @Override
+        int maxLength() {
+            return maxLength;
+        }
+
+        @Override
+        void reset() {
+            state = 0;
+        }
+    }
+}
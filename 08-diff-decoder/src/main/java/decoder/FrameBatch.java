@@ -0,0 +1,77 @@
+package decoder;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.util.AbstractReferenceCounted;
+import io.netty.util.Recycler;
+
+import java.util.ArrayList;
+
+
+/**
+ * 一次读取解码出的所有帧，由 Batching*FrameDecoder 产生。
+ *
+ * 小帧高频的协议里，每个帧单独 fireChannelRead 都要走一遍 Pipeline，分发开销比处理帧本身还大；
+ * 合成一个 FrameBatch 之后，后面的 Handler 一次处理一批。
+ *
+ * FrameBatch 对象由 Recycler 回收复用。和 ByteBuf 一样遵循引用计数规则，
+ * release 之后释放其中所有的帧并回收，之后不能再访问。
+ */
+public final class FrameBatch extends AbstractReferenceCounted {
+
+    private static final Recycler<FrameBatch> RECYCLER = new Recycler<FrameBatch>() {
+        @Override
+        protected FrameBatch newObject(Handle<FrameBatch> handle) {
+            return new FrameBatch(handle);
+        }
+    };
+
+    private final Recycler.Handle<FrameBatch> handle;
+    private final ArrayList<ByteBuf> frames = new ArrayList<ByteBuf>();
+
+    private FrameBatch(Recycler.Handle<FrameBatch> handle) {
+        this.handle = handle;
+    }
+
+    static FrameBatch newInstance() {
+        FrameBatch batch = RECYCLER.get();
+        batch.setRefCnt(1);
+        return batch;
+    }
+
+    void add(ByteBuf frame) {
+        frames.add(frame);
+    }
+
+    public int size() {
+        return frames.size();
+    }
+
+    /**
+     * 第 index 个帧，仍然属于 FrameBatch，需要在 FrameBatch 之外使用时先 retain
+     */
+    public ByteBuf get(int index) {
+        return frames.get(index);
+    }
+
+    @Override
+    public FrameBatch touch(Object hint) {
+        for (int i = 0; i < frames.size(); i++) {
+            frames.get(i).touch(hint);
+        }
+        return this;
+    }
+
+    @Override
+    protected void deallocate() {
+        for (int i = 0; i < frames.size(); i++) {
+            frames.get(i).release();
+        }
+        frames.clear();
+        handle.recycle(this);
+    }
+
+    @Override
+    public String toString() {
+        return "FrameBatch(frames: " + frames.size() + ')';
+    }
+}
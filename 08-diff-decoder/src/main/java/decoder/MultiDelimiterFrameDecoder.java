@@ -0,0 +1,121 @@
+package decoder;
+
+import cumulation.AdaptiveCumulator;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.ByteToMessageDecoder;
+import io.netty.handler.codec.TooLongFrameException;
+
+import java.util.List;
+
+
+/**
+ * 按分隔符拆包，参数含义与 DelimiterBasedFrameDecoder 相同。
+ *
+ * DelimiterBasedFrameDecoder 每次收到数据都会对每个分隔符从 readerIndex 开始重新扫描整个累积缓冲区，
+ * 一个很长的帧分成多次到达时总扫描量是 O(n²)，分隔符越多越慢。这里做了两点改进：
+ * - 记住已经扫描过的位置和匹配状态，新数据到达时只扫描新的部分，每个字节只扫描一次
+ * - 多个分隔符一起匹配（Aho-Corasick），单字节分隔符每次比较 8 个字节，见 DelimiterMatcher
+ *
+ * 帧在第一个完整出现的分隔符处结束（同一位置结束的多个分隔符取最长的），
+ * 而 DelimiterBasedFrameDecoder 取的是产生最短帧的分隔符，只有一个分隔符是另一个的中间部分时两者才会不同。
+ */
+public class MultiDelimiterFrameDecoder extends ByteToMessageDecoder {
+
+    private final int maxFrameLength;
+    private final boolean stripDelimiter;
+    private final boolean failFast;
+    private final DelimiterMatcher matcher;
+
+    // readerIndex 之后已经扫描过的字节数，帧边界上清零
+    private int scanned;
+    private boolean discardingTooLongFrame;
+    private long tooLongFrameLength;
+
+    public MultiDelimiterFrameDecoder(int maxFrameLength, ByteBuf... delimiters) {
+        this(maxFrameLength, true, true, delimiters);
+    }
+
+    public MultiDelimiterFrameDecoder(int maxFrameLength, boolean stripDelimiter, boolean failFast, ByteBuf... delimiters) {
+        if (maxFrameLength <= 0) {
+            throw new IllegalArgumentException("maxFrameLength: " + maxFrameLength + " (expected: > 0)");
+        }
+        this.maxFrameLength = maxFrameLength;
+        this.stripDelimiter = stripDelimiter;
+        this.failFast = failFast;
+        this.matcher = DelimiterMatcher.create(delimiters);
+        setCumulator(AdaptiveCumulator.INSTANCE);
+        setDiscardAfterReads(AdaptiveCumulator.DISCARD_AFTER_READS);
+    }
+
+    @Override
+    protected final void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) throws Exception {
+        Object decoded = decode(ctx, in);
+        if (decoded != null) {
+            out.add(decoded);
+        }
+    }
+
+    protected Object decode(ChannelHandlerContext ctx, ByteBuf buffer) throws Exception {
+        int readerIndex = buffer.readerIndex();
+        int readable = buffer.readableBytes();
+        // 最长的帧加上最长的分隔符之内还没有找到分隔符，就不用再往后找了
+        int window = maxFrameLength + matcher.maxLength();
+        int limit = discardingTooLongFrame ? readable : Math.min(readable, window);
+        int end = scanned < limit ? matcher.find(buffer, readerIndex + scanned, readerIndex + limit) : -1;
+
+        if (end < 0) {
+            if (discardingTooLongFrame) {
+                // 丢弃模式下匹配状态继续保留，分隔符跨两次读取也能找到
+                buffer.skipBytes(readable);
+                tooLongFrameLength += readable;
+                scanned = 0;
+            } else if (limit == window) {
+                // 只丢弃扫描过的窗口，匹配状态正好对应窗口的末尾，后面的数据在丢弃模式下继续查找分隔符，
+                // 超长帧之后同一次读取中的帧不会丢失
+                tooLongFrameLength = window;
+                buffer.skipBytes(window);
+                discardingTooLongFrame = true;
+                scanned = 0;
+                if (failFast) {
+                    fail(tooLongFrameLength);
+                }
+            } else {
+                scanned = limit;
+            }
+            return null;
+        }
+
+        int delimiterLength = matcher.matchedLength();
+        matcher.reset();
+        scanned = 0;
+        int consumed = end + 1 - readerIndex;
+        if (discardingTooLongFrame) {
+            buffer.skipBytes(consumed);
+            long tooLongFrameLength = this.tooLongFrameLength + consumed;
+            this.tooLongFrameLength = 0;
+            discardingTooLongFrame = false;
+            if (!failFast) {
+                fail(tooLongFrameLength);
+            }
+            return null;
+        }
+
+        int frameLength = consumed - delimiterLength;
+        if (frameLength > maxFrameLength) {
+            buffer.skipBytes(consumed);
+            fail(frameLength);
+            return null;
+        }
+        if (stripDelimiter) {
+            ByteBuf frame = buffer.readRetainedSlice(frameLength);
+            buffer.skipBytes(delimiterLength);
+            return frame;
+        }
+        return buffer.readRetainedSlice(consumed);
+    }
+
+    private void fail(long frameLength) {
+        throw new TooLongFrameException("frame length exceeds " + maxFrameLength + ": " + frameLength + " - discarded");
+    }
+}
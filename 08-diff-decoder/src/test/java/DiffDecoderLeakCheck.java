@@ -0,0 +1,199 @@
+import cumulation.AdaptiveCumulator;
+import decoder.BatchingFixedLengthFrameDecoder;
+import decoder.BatchingLengthFieldBasedFrameDecoder;
+import decoder.FrameBatch;
+import decoder.MultiDelimiterFrameDecoder;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.DelimiterBasedFrameDecoder;
+import io.netty.util.CharsetUtil;
+import leak.LeakCheck;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+
+/**
+ * 三个解码器 Server（定长 / 分隔符 / 长度字段）Pipeline 的泄漏检查，解码器参数与各自的 Server 保持一致。
+ * 覆盖拆包、粘包（FrameBatch）、超长帧以及关闭时残留的半个帧，检查解码出的帧和抛出的异常。
+ *
+ * mvn test 时由 exec-maven-plugin 运行，也可以直接运行 main。
+ */
+public class DiffDecoderLeakCheck {
+
+    private final EchoServerHandler echoServerHandler = new EchoServerHandler();
+
+    private ChannelHandler[] fixedLength() {
+        return new ChannelHandler[]{
+                AdaptiveCumulator.configure(new BatchingFixedLengthFrameDecoder(10)),
+                echoServerHandler
+        };
+    }
+
+    private ChannelHandler[] delimiterBased() {
+        ByteBuf delimiter = Unpooled.copiedBuffer("&".getBytes());
+        return new ChannelHandler[]{
+                new MultiDelimiterFrameDecoder(10, true, true, delimiter),
+                echoServerHandler
+        };
+    }
+
+    private ChannelHandler[] lengthFieldBased() {
+        return new ChannelHandler[]{
+                AdaptiveCumulator.configure(new BatchingLengthFieldBasedFrameDecoder(50, 0, 1)),
+                echoServerHandler
+        };
+    }
+
+    /**
+     * 长度字段 1 字节，后面跟内容
+     */
+    private static byte[] lengthFieldFrames(int count, int length) {
+        byte[] bytes = new byte[count * (length + 1)];
+        for (int i = 0; i < count; i++) {
+            int start = i * (length + 1);
+            bytes[start] = (byte) length;
+            for (int j = 1; j <= length; j++) {
+                bytes[start + j] = (byte) ('a' + j % 26);
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * 按 readSize 拆成多次读取写入，检查解码出的帧和解码器抛出的异常（类名），按发生的顺序排列。
+     * FrameRecorder 插在解码器和 EchoServerHandler 之间
+     */
+    private static void write(LeakCheck check, ChannelHandler[] handlers, byte[] input, int readSize, String... expected) {
+        FrameRecorder recorder = new FrameRecorder();
+        EmbeddedChannel channel = check.newChannel(handlers[0], recorder, handlers[1]);
+        for (int offset = 0; offset < input.length; offset += readSize) {
+            int length = Math.min(readSize, input.length - offset);
+            channel.writeInbound(check.allocator().buffer(length).writeBytes(input, offset, length));
+        }
+        check.drainOutbound(channel);
+        LeakCheck.expect(Arrays.asList(expected), recorder.events, "frames");
+    }
+
+    /**
+     * count 个相同的长度字段帧（含长度字段），按 FrameRecorder 的格式
+     */
+    private static String[] lengthFieldFrameStrings(int count, int length) {
+        String[] frames = new String[count];
+        Arrays.fill(frames, new String(lengthFieldFrames(1, length), CharsetUtil.US_ASCII));
+        return frames;
+    }
+
+    private static byte[] ascii(String s) {
+        return s.getBytes(CharsetUtil.US_ASCII);
+    }
+
+    /**
+     * 每个字符串是一次读取，返回解码出的帧和解码器抛出的异常（类名），按发生的顺序排列
+     */
+    private List<String> decode(LeakCheck check, ChannelHandler decoder, String... reads) {
+        FrameRecorder recorder = new FrameRecorder();
+        EmbeddedChannel channel = check.newChannel(decoder, recorder, echoServerHandler);
+        for (String read : reads) {
+            channel.writeInbound(check.buffer(ascii(read)));
+        }
+        return recorder.events;
+    }
+
+    /**
+     * 超长帧之后同一次读取中的帧不能丢失，解码结果要和 DelimiterBasedFrameDecoder 一致
+     */
+    private void compareWithDelimiterBased(LeakCheck check, String... reads) {
+        List<String> expected = decode(check, new DelimiterBasedFrameDecoder(10, Unpooled.copiedBuffer(ascii("&"))), reads);
+        List<String> actual = decode(check, new MultiDelimiterFrameDecoder(10, Unpooled.copiedBuffer(ascii("&"))), reads);
+        LeakCheck.expect(expected, actual, "frames");
+    }
+
+    public void run(LeakCheck check) {
+        final String[] fixedFrames = {"0123456789", "abcdefghij", "ABCDEFGHIJ"};
+        check.run("fixed length batch", c -> write(c, fixedLength(), ascii("0123456789abcdefghijABCDEFGHIJ"), 30, fixedFrames));
+        check.run("fixed length fragmented", c -> write(c, fixedLength(), ascii("0123456789abcdefghijABCDEFGHIJ"), 7, fixedFrames));
+        check.run("fixed length partial at close", c -> write(c, fixedLength(), ascii("0123456789abcde"), 15, "0123456789"));
+
+        check.run("delimiter batch", c -> write(c, delimiterBased(), ascii("hello&world&netty&"), 18, "hello", "world", "netty"));
+        check.run("delimiter fragmented", c -> write(c, delimiterBased(), ascii("hello&world&netty&"), 4, "hello", "world", "netty"));
+        // failFast：发现超长时立即抛出异常，剩下的 world& 要等下一次读取才会解码
+        check.run("delimiter too long", c -> write(c, delimiterBased(), ascii("hello&0123456789abcdef&world&"), 29,
+                "hello", "TooLongFrameException"));
+        check.run("delimiter too long fragmented", c -> write(c, delimiterBased(), ascii("0123456789abcdef&world&"), 5,
+                "TooLongFrameException", "world"));
+        check.run("delimiter frames after too long", c -> compareWithDelimiterBased(c,
+                "aaaaaaaaaaaaaaaaaaaaaaaaa&abc&def&", "ghi&"));
+        check.run("delimiter partial at close", c -> write(c, delimiterBased(), ascii("hello&wor"), 9, "hello"));
+
+        check.run("length field batch", c -> write(c, lengthFieldBased(), lengthFieldFrames(8, 20), 8 * 21,
+                lengthFieldFrameStrings(8, 20)));
+        check.run("length field fragmented", c -> write(c, lengthFieldBased(), lengthFieldFrames(8, 20), 13,
+                lengthFieldFrameStrings(8, 20)));
+        check.run("length field too long", c -> {
+            byte[] valid = lengthFieldFrames(2, 20);
+            byte[] tooLong = lengthFieldFrames(1, 100);
+            byte[] input = new byte[valid.length + tooLong.length];
+            System.arraycopy(valid, 0, input, 0, valid.length);
+            System.arraycopy(tooLong, 0, input, valid.length, tooLong.length);
+            String[] frames = lengthFieldFrameStrings(2, 20);
+            write(c, lengthFieldBased(), input, input.length, frames[0], frames[1], "TooLongFrameException");
+        });
+        check.run("length field partial at close", c -> write(c, lengthFieldBased(),
+                Arrays.copyOf(lengthFieldFrames(1, 30), 20), 20));
+        check.run("shared composite cumulation", c -> {
+            // 累积缓冲区是被 retainedSlice 引用的 CompositeByteBuf 时，新的 CompositeByteBuf 不能嵌套它
+            AdaptiveCumulator cumulator = new AdaptiveCumulator(16);
+            ByteBuf cumulation = cumulator.cumulate(c.allocator(), c.buffer(ascii("0123456789")), c.buffer(ascii("abcdefghij")));
+            ByteBuf frame = cumulation.readRetainedSlice(4);
+            cumulation = cumulator.cumulate(c.allocator(), cumulation, c.buffer(ascii("ABCDEFGHIJ")));
+            try {
+                // 原来的两个组件加上新读取的数据，嵌套时只有 2 个组件
+                LeakCheck.expect(3, ((CompositeByteBuf) cumulation).numComponents(), "components");
+                LeakCheck.expect("456789abcdefghijABCDEFGHIJ", cumulation.toString(CharsetUtil.US_ASCII), "cumulation");
+                LeakCheck.expect("0123", frame.toString(CharsetUtil.US_ASCII), "frame");
+            } finally {
+                frame.release();
+                cumulation.release();
+            }
+        });
+    }
+
+    /**
+     * 放在解码器之后，记录帧的内容，消息继续向后传递；解码器抛出的异常在这里记录，不再传播
+     */
+    private static final class FrameRecorder extends ChannelInboundHandlerAdapter {
+
+        final List<String> events = new ArrayList<String>();
+
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) {
+            if (msg instanceof FrameBatch) {
+                FrameBatch batch = (FrameBatch) msg;
+                for (int i = 0; i < batch.size(); i++) {
+                    events.add(batch.get(i).toString(CharsetUtil.US_ASCII));
+                }
+            } else {
+                events.add(((ByteBuf) msg).toString(CharsetUtil.US_ASCII));
+            }
+            ctx.fireChannelRead(msg);
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+            events.add(cause.getClass().getSimpleName());
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        LeakCheck check = new LeakCheck("08-diff-decoder");
+        new DiffDecoderLeakCheck().run(check);
+        check.verify();
+    }
+}
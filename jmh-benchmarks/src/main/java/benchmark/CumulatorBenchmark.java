@@ -0,0 +1,84 @@
+package benchmark;
+
+import codec.CustomByteToMessageDecoder;
+import codec.CustomMessage;
+import cumulation.AdaptiveCumulator;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.ByteToMessageDecoder;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * 大报文分多次到达时不同累积方式的开销：一个 frameSize 的自定义协议报文按 readSize 切成多次读取。
+ *
+ * 使用非池化的堆内存分配器，累积时的拷贝都会体现为堆内存分配，
+ * 用 -prof gc 运行，gc.alloc.rate.norm 就是每个报文拷贝分配的字节数：
+ * java -jar target/benchmarks.jar CumulatorBenchmark -prof gc
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CumulatorBenchmark {
+
+    @Param({"merge", "composite", "adaptive"})
+    public String cumulator;
+
+    @Param({"1024", "1048576"})
+    public int frameSize;
+
+    // 接近一个 TCP 报文段
+    @Param({"1460"})
+    public int readSize;
+
+    private byte[] input;
+    private EmbeddedChannel channel;
+
+    @Setup
+    public void setup() {
+        ByteBuf frame = Unpooled.buffer(CustomMessage.HEADER_LENGTH + frameSize);
+        frame.writeShort(CustomMessage.MAGIC)
+                .writeByte(CustomMessage.VERSION)
+                .writeByte(1)
+                .writeByte(1)
+                .writeByte(0)
+                .writeInt(0)
+                .writeInt(frameSize)
+                .writeZero(frameSize);
+        input = ByteBufUtil.getBytes(frame);
+        CustomByteToMessageDecoder decoder = new CustomByteToMessageDecoder();
+        if ("merge".equals(cumulator)) {
+            decoder.setCumulator(ByteToMessageDecoder.MERGE_CUMULATOR);
+        } else if ("composite".equals(cumulator)) {
+            decoder.setCumulator(ByteToMessageDecoder.COMPOSITE_CUMULATOR);
+        } else {
+            decoder.setCumulator(AdaptiveCumulator.INSTANCE);
+        }
+        channel = new EmbeddedChannel(decoder);
+        channel.config().setAllocator(new UnpooledByteBufAllocator(false));
+    }
+
+    @TearDown
+    public void tearDown() {
+        channel.finishAndReleaseAll();
+    }
+
+    @Benchmark
+    public int decodeFragmented(Blackhole blackhole) {
+        int length = input.length;
+        for (int offset = 0; offset < length; offset += readSize) {
+            // 每次读取都是一个独立的 ByteBuf（引用计数为 1），和从 Socket 读到的一样，包装数组不产生拷贝
+            channel.writeInbound(Unpooled.wrappedBuffer(input, offset, Math.min(readSize, length - offset)));
+        }
+        return EmbeddedChannels.drainInbound(channel, blackhole);
+    }
+}
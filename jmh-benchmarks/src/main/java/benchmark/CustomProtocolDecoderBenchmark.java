@@ -0,0 +1,61 @@
+package benchmark;
+
+import codec.CustomByteToMessageDecoder;
+import codec.CustomMessage;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * 07-custom-agreement 自定义协议解码：一次读到 frames 个完整报文
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CustomProtocolDecoderBenchmark {
+
+    @Param({"16", "1024", "65536"})
+    public int payloadSize;
+
+    @Param({"16"})
+    public int frames;
+
+    private ByteBuf input;
+    private EmbeddedChannel channel;
+
+    @Setup
+    public void setup() {
+        input = PooledByteBufAllocator.DEFAULT.directBuffer();
+        for (int i = 0; i < frames; i++) {
+            input.writeShort(CustomMessage.MAGIC)
+                    .writeByte(CustomMessage.VERSION)
+                    .writeByte(1)
+                    .writeByte(1)
+                    .writeByte(0)
+                    .writeInt(0)
+                    .writeInt(payloadSize)
+                    .writeZero(payloadSize);
+        }
+        channel = new EmbeddedChannel(new CustomByteToMessageDecoder());
+    }
+
+    @TearDown
+    public void tearDown() {
+        channel.finishAndReleaseAll();
+        input.release();
+    }
+
+    @Benchmark
+    public int decode(Blackhole blackhole) {
+        channel.writeInbound(input.retainedDuplicate());
+        return EmbeddedChannels.drainInbound(channel, blackhole);
+    }
+}
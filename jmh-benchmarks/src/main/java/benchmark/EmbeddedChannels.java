@@ -0,0 +1,60 @@
+package benchmark;
+
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.util.ReferenceCountUtil;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+
+/**
+ * Benchmark 公共工具方法
+ */
+final class EmbeddedChannels {
+
+    private EmbeddedChannels() {
+    }
+
+    /**
+     * 取出并释放 EmbeddedChannel 中所有入站消息，返回消息数量
+     */
+    static int drainInbound(EmbeddedChannel channel, Blackhole blackhole) {
+        int count = 0;
+        Object msg;
+        while ((msg = channel.readInbound()) != null) {
+            blackhole.consume(msg);
+            ReferenceCountUtil.release(msg);
+            count++;
+        }
+        return count;
+    }
+
+    static int drainOutbound(EmbeddedChannel channel, Blackhole blackhole) {
+        int count = 0;
+        Object msg;
+        while ((msg = channel.readOutbound()) != null) {
+            blackhole.consume(msg);
+            ReferenceCountUtil.release(msg);
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * 示例中的 Handler 会打印 System.out，压测时屏蔽掉，避免测到的是控制台输出
+     */
+    static PrintStream silenceStdout() {
+        PrintStream original = System.out;
+        System.setOut(new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+            }
+        }));
+        return original;
+    }
+}
@@ -0,0 +1,86 @@
+package benchmark;
+
+import decoder.BatchingFixedLengthFrameDecoder;
+import decoder.BatchingLengthFieldBasedFrameDecoder;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.DelimiterBasedFrameDecoder;
+import io.netty.handler.codec.FixedLengthFrameDecoder;
+import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * 08-diff-decoder 三种解码器，参数与对应的 *FrameDecoderServer 保持一致，一次读到 frames 个 10 字节的报文。
+ * *Batched 是一次读取的所有帧合成一个 FrameBatch 输出的版本
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FrameDecoderBenchmark {
+
+    private static final int FRAME_LENGTH = 10;
+
+    @Param({"fixedLength", "fixedLengthBatched", "delimiterBased", "lengthFieldBased", "lengthFieldBasedBatched"})
+    public String decoder;
+
+    @Param({"64"})
+    public int frames;
+
+    private ByteBuf input;
+    private EmbeddedChannel channel;
+
+    @Setup
+    public void setup() {
+        input = PooledByteBufAllocator.DEFAULT.directBuffer();
+        for (int i = 0; i < frames; i++) {
+            if ("delimiterBased".equals(decoder)) {
+                // 9 字节内容 + "&"，不超过 maxLength 10
+                input.writeBytes("abcdefghi&".getBytes());
+            } else if (decoder.startsWith("lengthFieldBased")) {
+                // 1 字节长度域 + 9 字节内容
+                input.writeByte(FRAME_LENGTH - 1).writeBytes("abcdefghi".getBytes());
+            } else {
+                input.writeBytes("abcdefghij".getBytes());
+            }
+        }
+        channel = new EmbeddedChannel(newDecoder());
+    }
+
+    private ChannelHandler newDecoder() {
+        if ("delimiterBased".equals(decoder)) {
+            return new DelimiterBasedFrameDecoder(10, true, true, Unpooled.copiedBuffer("&".getBytes()));
+        }
+        if ("lengthFieldBased".equals(decoder)) {
+            return new LengthFieldBasedFrameDecoder(50, 0, 1);
+        }
+        if ("lengthFieldBasedBatched".equals(decoder)) {
+            return new BatchingLengthFieldBasedFrameDecoder(50, 0, 1);
+        }
+        if ("fixedLengthBatched".equals(decoder)) {
+            return new BatchingFixedLengthFrameDecoder(FRAME_LENGTH);
+        }
+        return new FixedLengthFrameDecoder(FRAME_LENGTH);
+    }
+
+    @TearDown
+    public void tearDown() {
+        channel.finishAndReleaseAll();
+        input.release();
+    }
+
+    @Benchmark
+    public int decode(Blackhole blackhole) {
+        channel.writeInbound(input.retainedDuplicate());
+        return EmbeddedChannels.drainInbound(channel, blackhole);
+    }
+}
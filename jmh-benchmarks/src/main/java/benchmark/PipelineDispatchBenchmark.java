@@ -0,0 +1,56 @@
+package benchmark;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import pipeline.SampleInBoundHandler;
+import pipeline.SampleOutBoundHandler;
+
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * 04-channel-pipeline 中 Inbound -> Outbound 的事件传播：
+ * 消息经过 InBoundHandler A、B，由 C 调用 writeAndFlush，再反向经过 OutBoundHandler C、B、A
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PipelineDispatchBenchmark {
+
+    private PrintStream stdout;
+    private ByteBuf message;
+    private EmbeddedChannel channel;
+
+    @Setup
+    public void setup() {
+        stdout = EmbeddedChannels.silenceStdout();
+        message = PooledByteBufAllocator.DEFAULT.directBuffer().writeBytes("hello world".getBytes());
+        channel = new EmbeddedChannel(
+                new SampleInBoundHandler("SampleInBoundHandlerA", false),
+                new SampleInBoundHandler("SampleInBoundHandlerB", false),
+                new SampleInBoundHandler("SampleInBoundHandlerC", true),
+                new SampleOutBoundHandler("SampleOutBoundHandlerA"),
+                new SampleOutBoundHandler("SampleOutBoundHandlerB"),
+                new SampleOutBoundHandler("SampleOutBoundHandlerC"));
+    }
+
+    @TearDown
+    public void tearDown() {
+        channel.finishAndReleaseAll();
+        message.release();
+        System.setOut(stdout);
+    }
+
+    @Benchmark
+    public int inboundToOutbound(Blackhole blackhole) {
+        channel.writeInbound(message.retainedDuplicate());
+        return EmbeddedChannels.drainOutbound(channel, blackhole);
+    }
+}
@@ -0,0 +1,135 @@
+package benchmark;
+
+import io.netty.handler.codec.http.HttpMethod;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import router.RouteHandler;
+import router.RouteMatch;
+import router.Router;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+
+/**
+ * 路由匹配的开销：routes 组资源，每组三个路由（静态、一个参数、两个参数），请求均匀地落在所有路由上。
+ *
+ * - trie：Router 基数树
+ * - ifElse：按顺序 startsWith / equals 判断 uri，命中后 split 出参数，即手写 if/else 分发
+ * - regex：每个路由一个预编译的正则，按顺序 matches
+ *
+ * 三种方式都取出全部参数的字符串值。用 -prof gc 运行可以看到每次匹配分配的字节数：
+ * java -jar target/benchmarks.jar RouterBenchmark -prof gc
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RouterBenchmark {
+
+    private static final RouteHandler NOOP = (ctx, request, match) -> null;
+
+    @Param({"trie", "ifElse", "regex"})
+    public String router;
+
+    @Param({"10", "50"})
+    public int routes;
+
+    private Router trie;
+    private String[] resources;
+    private String[] resourcePrefixes;
+    private List<Pattern> patterns;
+    private String[] uris;
+    private int next;
+
+    @Setup
+    public void setup() {
+        trie = new Router();
+        resources = new String[routes];
+        resourcePrefixes = new String[routes];
+        patterns = new ArrayList<Pattern>();
+        List<String> uris = new ArrayList<String>();
+        for (int i = 0; i < routes; i++) {
+            String resource = "/api/resource" + i;
+            resources[i] = resource;
+            resourcePrefixes[i] = resource + "/";
+            trie.get(resource, NOOP)
+                    .get(resource + "/:id", NOOP)
+                    .get(resource + "/:id/items/:itemId", NOOP);
+            patterns.add(Pattern.compile(Pattern.quote(resource)));
+            patterns.add(Pattern.compile(Pattern.quote(resource) + "/(?<id>[^/]+)"));
+            patterns.add(Pattern.compile(Pattern.quote(resource) + "/(?<id>[^/]+)/items/(?<itemId>[^/]+)"));
+            uris.add(resource);
+            uris.add(resource + "/12345");
+            uris.add(resource + "/12345/items/678");
+        }
+        // 打乱顺序，避免分支预测记住固定的访问模式
+        Random random = new Random(42);
+        this.uris = new String[1024];
+        for (int i = 0; i < this.uris.length; i++) {
+            this.uris[i] = uris.get(random.nextInt(uris.size()));
+        }
+    }
+
+    @Benchmark
+    public void match(Blackhole blackhole) {
+        String uri = uris[next++ & (uris.length - 1)];
+        if ("trie".equals(router)) {
+            matchTrie(uri, blackhole);
+        } else if ("ifElse".equals(router)) {
+            matchIfElse(uri, blackhole);
+        } else {
+            matchRegex(uri, blackhole);
+        }
+    }
+
+    private void matchTrie(String uri, Blackhole blackhole) {
+        RouteMatch match = trie.match(HttpMethod.GET, uri);
+        blackhole.consume(match.pattern());
+        for (int i = 0; i < match.paramCount(); i++) {
+            blackhole.consume(match.param(match.paramName(i)));
+        }
+    }
+
+    private void matchIfElse(String uri, Blackhole blackhole) {
+        // 相当于手写的 if (uri.equals("/api/resource0")) ... else if (uri.startsWith("/api/resource0/")) ...
+        for (int i = 0; i < routes; i++) {
+            if (uri.equals(resources[i])) {
+                blackhole.consume(resources[i]);
+                return;
+            }
+            if (uri.startsWith(resourcePrefixes[i])) {
+                String[] segments = uri.substring(resourcePrefixes[i].length()).split("/");
+                if (segments.length == 1) {
+                    blackhole.consume(segments[0]);
+                    return;
+                }
+                if (segments.length == 3 && "items".equals(segments[1])) {
+                    blackhole.consume(segments[0]);
+                    blackhole.consume(segments[2]);
+                    return;
+                }
+            }
+        }
+        throw new IllegalStateException("no route: " + uri);
+    }
+
+    private void matchRegex(String uri, Blackhole blackhole) {
+        for (int i = 0; i < patterns.size(); i++) {
+            Matcher matcher = patterns.get(i).matcher(uri);
+            if (matcher.matches()) {
+                for (int group = 1; group <= matcher.groupCount(); group++) {
+                    blackhole.consume(matcher.group(group));
+                }
+                return;
+            }
+        }
+        throw new IllegalStateException("no route: " + uri);
+    }
+}
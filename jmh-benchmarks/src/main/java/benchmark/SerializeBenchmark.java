@@ -0,0 +1,59 @@
+package benchmark;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import org.openjdk.jmh.annotations.*;
+import serialize.SchemaSerializeServiceImpl;
+import serialize.SerializeSerializeServiceImpl;
+import serialize.SerializeService;
+import serialize.SerializeServiceRegistry;
+
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * 序列化 + 反序列化往返，对比 JDK 序列化与 Schema 二进制序列化
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerializeBenchmark {
+
+    @Param({"jdk", "schema"})
+    public String serializer;
+
+    @Param({"64"})
+    public int length;
+
+    private SerializeService serializeService;
+    private String value;
+    private ByteBuf buffer;
+
+    @Setup
+    public void setup() {
+        // JDK 序列化默认不注册，直接创建
+        serializeService = "jdk".equals(serializer)
+                ? new SerializeSerializeServiceImpl() : SerializeServiceRegistry.get(SchemaSerializeServiceImpl.TYPE);
+        StringBuilder builder = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            builder.append((char) ('a' + i % 26));
+        }
+        value = builder.toString();
+        buffer = PooledByteBufAllocator.DEFAULT.directBuffer(1024);
+    }
+
+    @TearDown
+    public void tearDown() {
+        buffer.release();
+    }
+
+    @Benchmark
+    public Object roundTrip() throws Exception {
+        buffer.clear();
+        serializeService.serialize(value, buffer);
+        return serializeService.deserialize(buffer);
+    }
+}
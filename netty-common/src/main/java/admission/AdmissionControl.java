@@ -0,0 +1,278 @@
+package admission;
+
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.EventLoopGroup;
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.internal.SystemPropertyUtil;
+import metrics.MetricsRegistry;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * 准入控制，过载时尽早拒绝，保护已经接受的连接和请求的延迟：
+ * - accept 时：总连接数和单个客户端地址的连接数上限，所有 EventLoop 都严重过载时也不再接受新连接（ConnectionLimiter）
+ * - 请求时：按客户端地址的令牌桶限速（429），按 EventLoop 任务延迟自适应丢弃（503），见 HttpAdmissionHandler
+ *
+ * 丢弃是渐进的：当前 EventLoop 的延迟低于 lagTarget 时全部放行，超过 lagMax 时全部拒绝，
+ * 两者之间按超出的比例随机拒绝，延迟越高拒绝得越多。
+ *
+ * 热路径上只有 CAS 和 ConcurrentHashMap 的读，没有锁。
+ *
+ * 配置项（系统属性）：
+ * - admission.enabled：默认开启
+ * - admission.maxConnections / admission.maxConnectionsPerAddress（0 表示不限制）。
+ *   单地址上限默认不限制：本机压测（HttpClient）所有连接来自同一个地址，按地址限制会直接关闭超出的连接；
+ *   对公网开放时按客户端规模设置
+ * - admission.requestsPerSecond（0 表示不限速）/ admission.burst：单个客户端的速率和突发
+ * - admission.lagTargetMillis（0 表示不按延迟丢弃）/ admission.lagMaxMillis / admission.lagProbeMillis
+ */
+public final class AdmissionControl implements AdmissionControlMBean {
+
+    private static final int RATE_LIMITER_SWEEP_THRESHOLD = 10000;
+
+    private final int maxConnections;
+    private final int maxConnectionsPerAddress;
+    private final long lagTargetNanos;
+    private final long lagMaxNanos;
+    private final TokenBuckets tokenBuckets;
+    private final ConnectionLimiter connectionLimiter = new ConnectionLimiter(this);
+    private volatile EventLoopLagMonitor lagMonitor;
+
+    private final AtomicInteger connections = new AtomicInteger();
+    // 连接数降到 0 的计数器先置为 -1 再删除，并发的 acquire 看到 -1 时重新获取
+    private final ConcurrentMap<Object, AtomicInteger> connectionsPerAddress = new ConcurrentHashMap<Object, AtomicInteger>();
+
+    private final LongAdder rejectedConnections = new LongAdder();
+    private final LongAdder admittedRequests = new LongAdder();
+    private final LongAdder rateLimitedRequests = new LongAdder();
+    private final LongAdder shedRequests = new LongAdder();
+
+    public AdmissionControl(int maxConnections, int maxConnectionsPerAddress, double requestsPerSecond, int burst,
+                            long lagTarget, long lagMax, TimeUnit unit) {
+        this.maxConnections = maxConnections;
+        this.maxConnectionsPerAddress = maxConnectionsPerAddress;
+        this.tokenBuckets = requestsPerSecond > 0
+                ? new TokenBuckets(requestsPerSecond, burst, RATE_LIMITER_SWEEP_THRESHOLD) : null;
+        this.lagTargetNanos = unit.toNanos(lagTarget);
+        this.lagMaxNanos = Math.max(lagTargetNanos + 1, unit.toNanos(lagMax));
+    }
+
+    /**
+     * 按系统属性创建，开始监控 workerGroup 的任务延迟，并注册到 MetricsRegistry。admission.enabled 为 false 时返回 null
+     */
+    public static AdmissionControl fromProperties(String name, EventLoopGroup workerGroup) {
+        if (!SystemPropertyUtil.getBoolean("admission.enabled", true)) {
+            return null;
+        }
+        int requestsPerSecond = SystemPropertyUtil.getInt("admission.requestsPerSecond", 0);
+        AdmissionControl admission = new AdmissionControl(
+                SystemPropertyUtil.getInt("admission.maxConnections", 10000),
+                SystemPropertyUtil.getInt("admission.maxConnectionsPerAddress", 0),
+                requestsPerSecond,
+                SystemPropertyUtil.getInt("admission.burst", Math.max(1, requestsPerSecond)),
+                SystemPropertyUtil.getLong("admission.lagTargetMillis", 50),
+                SystemPropertyUtil.getLong("admission.lagMaxMillis", 500),
+                TimeUnit.MILLISECONDS);
+        if (admission.lagTargetNanos > 0) {
+            admission.monitor(workerGroup, SystemPropertyUtil.getLong("admission.lagProbeMillis", 20), TimeUnit.MILLISECONDS);
+        }
+        MetricsRegistry.register("AdmissionControl", "admission", name, admission);
+        System.out.println("Admission control: maxConnections " + admission.maxConnections
+                + ", perAddress " + admission.maxConnectionsPerAddress + ", requestsPerSecond " + requestsPerSecond);
+        return admission;
+    }
+
+    /**
+     * 开始监控 group 中每个 EventLoop 的任务延迟，用于请求丢弃
+     */
+    public void monitor(EventLoopGroup group, long probeInterval, TimeUnit unit) {
+        lagMonitor = new EventLoopLagMonitor(group, probeInterval, unit);
+    }
+
+    /**
+     * 加到 ServerBootstrap.handler 上，所有 ServerChannel 共用
+     */
+    public ChannelHandler connectionLimiter() {
+        return connectionLimiter;
+    }
+
+    /**
+     * 客户端地址：IP 相同、端口不同的连接属于同一个客户端
+     */
+    static Object addressOf(SocketAddress address) {
+        if (address instanceof InetSocketAddress && ((InetSocketAddress) address).getAddress() != null) {
+            return ((InetSocketAddress) address).getAddress();
+        }
+        return address;
+    }
+
+    boolean tryAcquireConnection(Object address) {
+        if (!acquireGlobal()) {
+            rejectedConnections.increment();
+            return false;
+        }
+        if (maxConnectionsPerAddress > 0 && !acquirePerAddress(address)) {
+            connections.decrementAndGet();
+            rejectedConnections.increment();
+            return false;
+        }
+        return true;
+    }
+
+    private boolean acquireGlobal() {
+        EventLoopLagMonitor monitor = lagMonitor;
+        if (monitor != null && lagTargetNanos > 0 && monitor.meanLagNanos() >= lagMaxNanos) {
+            // 所有 EventLoop 的平均延迟都已经超过上限，新连接只会让情况更糟
+            return false;
+        }
+        for (;;) {
+            int current = connections.get();
+            if (maxConnections > 0 && current >= maxConnections) {
+                return false;
+            }
+            if (connections.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    private boolean acquirePerAddress(Object address) {
+        for (;;) {
+            AtomicInteger counter = connectionsPerAddress.get(address);
+            if (counter == null) {
+                AtomicInteger created = new AtomicInteger(1);
+                counter = connectionsPerAddress.putIfAbsent(address, created);
+                if (counter == null) {
+                    return true;
+                }
+            }
+            int current = counter.get();
+            if (current < 0) {
+                // 正在被删除，重新获取
+                Thread.yield();
+                continue;
+            }
+            if (current >= maxConnectionsPerAddress) {
+                return false;
+            }
+            if (counter.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    void releaseConnection(Object address) {
+        connections.decrementAndGet();
+        if (maxConnectionsPerAddress <= 0) {
+            return;
+        }
+        AtomicInteger counter = connectionsPerAddress.get(address);
+        if (counter != null && counter.decrementAndGet() == 0 && counter.compareAndSet(0, -1)) {
+            connectionsPerAddress.remove(address, counter);
+        }
+    }
+
+    /**
+     * 当前 EventLoop 是否过载，需要丢弃请求
+     */
+    boolean shouldShed(EventExecutor executor) {
+        EventLoopLagMonitor monitor = lagMonitor;
+        if (monitor == null || lagTargetNanos <= 0) {
+            return false;
+        }
+        long lag = monitor.lagNanos(executor);
+        if (lag <= lagTargetNanos) {
+            return false;
+        }
+        if (lag >= lagMaxNanos) {
+            return true;
+        }
+        return ThreadLocalRandom.current().nextLong(lagMaxNanos - lagTargetNanos) < lag - lagTargetNanos;
+    }
+
+    /**
+     * 从客户端的令牌桶中取一个令牌，成功返回 0，否则返回还需要等待的纳秒数
+     */
+    long tryAcquireRequest(SocketAddress remoteAddress) {
+        return tokenBuckets == null ? 0 : tokenBuckets.tryAcquire(addressOf(remoteAddress));
+    }
+
+    void admitted() {
+        admittedRequests.increment();
+    }
+
+    void rateLimited() {
+        rateLimitedRequests.increment();
+    }
+
+    void shed() {
+        shedRequests.increment();
+    }
+
+    @Override
+    public int getConnections() {
+        return connections.get();
+    }
+
+    @Override
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    @Override
+    public int getMaxConnectionsPerAddress() {
+        return maxConnectionsPerAddress;
+    }
+
+    @Override
+    public int getConnectedAddresses() {
+        return connectionsPerAddress.size();
+    }
+
+    @Override
+    public long getRejectedConnections() {
+        return rejectedConnections.sum();
+    }
+
+    @Override
+    public long getAdmittedRequests() {
+        return admittedRequests.sum();
+    }
+
+    @Override
+    public long getRateLimitedRequests() {
+        return rateLimitedRequests.sum();
+    }
+
+    @Override
+    public long getShedRequests() {
+        return shedRequests.sum();
+    }
+
+    @Override
+    public int getRateLimitedClients() {
+        return tokenBuckets == null ? 0 : tokenBuckets.size();
+    }
+
+    @Override
+    public double getEventLoopLagMillis() {
+        EventLoopLagMonitor monitor = lagMonitor;
+        return monitor == null ? 0 : monitor.maxLagNanos() / 1e6;
+    }
+
+    @Override
+    public void reset() {
+        rejectedConnections.reset();
+        admittedRequests.reset();
+        rateLimitedRequests.reset();
+        shedRequests.reset();
+    }
+}
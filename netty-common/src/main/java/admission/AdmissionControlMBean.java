@@ -0,0 +1,47 @@
+package admission;
+
+/**
+ * 通过 JMX 暴露的准入控制统计
+ */
+public interface AdmissionControlMBean {
+
+    int getConnections();
+
+    int getMaxConnections();
+
+    int getMaxConnectionsPerAddress();
+
+    /**
+     * 当前有连接的客户端地址数量
+     */
+    int getConnectedAddresses();
+
+    /**
+     * 因为总连接数、单个地址的连接数或者 EventLoop 过载而在 accept 时直接关闭的连接
+     */
+    long getRejectedConnections();
+
+    long getAdmittedRequests();
+
+    /**
+     * 超过单个客户端速率限制，返回 429 的请求
+     */
+    long getRateLimitedRequests();
+
+    /**
+     * EventLoop 延迟过高，返回 503 的请求
+     */
+    long getShedRequests();
+
+    /**
+     * 当前跟踪的令牌桶数量，桶重新装满后会被清理
+     */
+    int getRateLimitedClients();
+
+    /**
+     * 所有 EventLoop 中最大的任务延迟（平滑之后），单位毫秒
+     */
+    double getEventLoopLagMillis();
+
+    void reset();
+}
@@ -0,0 +1,42 @@
+package admission;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+
+
+/**
+ * ServerChannel 上的 Handler，在新连接交给 ServerBootstrapAcceptor 注册到 Worker 之前检查是否接受。
+ *
+ * 被拒绝的连接直接关闭，不会注册到 EventLoop，也不会初始化 Pipeline（TLS 握手等都不会发生），代价很小。
+ * 开启 SO_REUSEPORT 时所有 ServerChannel 共用一个实例，计数是全局的。
+ */
+@ChannelHandler.Sharable
+final class ConnectionLimiter extends ChannelInboundHandlerAdapter {
+
+    private final AdmissionControl admission;
+
+    ConnectionLimiter(AdmissionControl admission) {
+        this.admission = admission;
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        final Channel child = (Channel) msg;
+        final Object address = AdmissionControl.addressOf(child.remoteAddress());
+        if (!admission.tryAcquireConnection(address)) {
+            child.unsafe().closeForcibly();
+            return;
+        }
+        child.closeFuture().addListener(new ChannelFutureListener() {
+            @Override
+            public void operationComplete(ChannelFuture future) {
+                admission.releaseConnection(address);
+            }
+        });
+        ctx.fireChannelRead(child);
+    }
+}
@@ -0,0 +1,94 @@
+package admission;
+
+import io.netty.channel.EventLoopGroup;
+import io.netty.util.concurrent.EventExecutor;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * EventLoop 任务延迟探测。
+ *
+ * 每个 EventLoop 上周期性地调度一个探测任务，实际执行时间比预期晚多少就是这个 EventLoop 当前的排队延迟：
+ * I/O 事件和任务积压越多，探测任务被执行得越晚。延迟由 EventLoop 线程自己写入 volatile 字段，
+ * 其他线程只读，不需要加锁。上升时立即生效，下降时按 1/4 平滑，避免负载在阈值附近来回抖动。
+ *
+ * EventLoopGroup 关闭之后探测任务无法再调度，自动停止。
+ */
+final class EventLoopLagMonitor {
+
+    // 启动时构建，之后只读
+    private final Map<EventExecutor, Probe> probes = new IdentityHashMap<EventExecutor, Probe>();
+
+    EventLoopLagMonitor(EventLoopGroup group, long interval, TimeUnit unit) {
+        long intervalNanos = unit.toNanos(interval);
+        for (EventExecutor executor : group) {
+            Probe probe = new Probe(executor, intervalNanos);
+            probes.put(executor, probe);
+            probe.schedule();
+        }
+    }
+
+    /**
+     * executor 不属于被监控的 EventLoopGroup 时返回 0
+     */
+    long lagNanos(EventExecutor executor) {
+        Probe probe = probes.get(executor);
+        return probe == null ? 0 : probe.lagNanos;
+    }
+
+    long maxLagNanos() {
+        long max = 0;
+        for (Probe probe : probes.values()) {
+            max = Math.max(max, probe.lagNanos);
+        }
+        return max;
+    }
+
+    long meanLagNanos() {
+        if (probes.isEmpty()) {
+            return 0;
+        }
+        long total = 0;
+        for (Probe probe : probes.values()) {
+            total += probe.lagNanos;
+        }
+        return total / probes.size();
+    }
+
+    private static final class Probe implements Runnable {
+
+        private final EventExecutor executor;
+        private final long intervalNanos;
+        private long expectedNanos;
+        volatile long lagNanos;
+
+        Probe(EventExecutor executor, long intervalNanos) {
+            this.executor = executor;
+            this.intervalNanos = intervalNanos;
+        }
+
+        void schedule() {
+            expectedNanos = System.nanoTime() + intervalNanos;
+            try {
+                executor.schedule(this, intervalNanos, TimeUnit.NANOSECONDS);
+            } catch (RejectedExecutionException e) {
+                // EventLoop 已经关闭
+                lagNanos = 0;
+            }
+        }
+
+        @Override
+        public void run() {
+            long lag = Math.max(0, System.nanoTime() - expectedNanos);
+            long previous = lagNanos;
+            lagNanos = lag >= previous ? lag : previous - ((previous - lag) >> 2);
+            if (!executor.isShuttingDown()) {
+                schedule();
+            }
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package admission;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpContent;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpUtil;
+import io.netty.handler.codec.http.LastHttpContent;
+import io.netty.util.ReferenceCountUtil;
+
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * 请求级别的准入控制，放在 HttpServerCodec（HTTP/2 时是 Http2StreamFrameToHttpObjectCodec）之后、
+ * HttpObjectAggregator 之前，被拒绝的请求不会聚合请求体，也不会进入业务线程池：
+ * - 当前 EventLoop 过载时返回 503
+ * - 客户端超过速率限制时返回 429，Retry-After 是令牌桶重新有令牌的时间
+ * 被拒绝请求的 HttpContent 直接丢弃。有 HttpPipeliningHandler 时需要放在它之后，响应才能按顺序写出。
+ */
+public class HttpAdmissionHandler extends ChannelInboundHandlerAdapter {
+
+    private final AdmissionControl admission;
+    // 当前请求已被拒绝，丢弃它剩余的 HttpContent
+    private boolean discarding;
+
+    public HttpAdmissionHandler(AdmissionControl admission) {
+        this.admission = admission;
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        if (msg instanceof HttpRequest) {
+            HttpRequest request = (HttpRequest) msg;
+            FullHttpResponse response = null;
+            if (admission.shouldShed(ctx.channel().eventLoop())) {
+                admission.shed();
+                response = reject(request, HttpResponseStatus.SERVICE_UNAVAILABLE, 1);
+            } else {
+                long waitNanos = admission.tryAcquireRequest(ctx.channel().remoteAddress());
+                if (waitNanos > 0) {
+                    admission.rateLimited();
+                    response = reject(request, HttpResponseStatus.TOO_MANY_REQUESTS,
+                            Math.max(1, TimeUnit.NANOSECONDS.toSeconds(waitNanos + TimeUnit.SECONDS.toNanos(1) - 1)));
+                }
+            }
+            if (response == null) {
+                admission.admitted();
+                discarding = false;
+                ctx.fireChannelRead(msg);
+                return;
+            }
+            discarding = !(msg instanceof LastHttpContent);
+            ReferenceCountUtil.release(msg);
+            ctx.writeAndFlush(response);
+            return;
+        }
+        if (discarding && msg instanceof HttpContent) {
+            discarding = !(msg instanceof LastHttpContent);
+            ReferenceCountUtil.release(msg);
+            return;
+        }
+        ctx.fireChannelRead(msg);
+    }
+
+    private static FullHttpResponse reject(HttpRequest request, HttpResponseStatus status, long retryAfterSeconds) {
+        FullHttpResponse response = new DefaultFullHttpResponse(request.protocolVersion(), status);
+        response.headers().set(HttpHeaderNames.RETRY_AFTER, retryAfterSeconds);
+        HttpUtil.setContentLength(response, 0);
+        return response;
+    }
+}
@@ -0,0 +1,91 @@
+package admission;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * 按客户端划分的令牌桶，无锁实现。
+ *
+ * 每个桶只保存一个 long：下一个令牌的理论到达时间（GCRA，与令牌桶等价）。取令牌就是把这个时间向后推一个间隔，
+ * 推完之后超出当前时间 burst 个间隔以上说明桶已经空了。一次判断只需要一次 CAS，没有定时补充令牌的线程。
+ *
+ * 理论到达时间早于当前时间的桶已经重新装满，和新建的桶没有区别，桶数量超过 sweepThreshold 时顺带清理，
+ * 最多每秒一次。清理与取令牌并发时可能让这个客户端多一次突发，不影响整体限速。
+ */
+final class TokenBuckets {
+
+    private static final long SWEEP_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final long intervalNanos;
+    private final long burstNanos;
+    private final int sweepThreshold;
+    private final ConcurrentMap<Object, AtomicLong> buckets = new ConcurrentHashMap<Object, AtomicLong>();
+    private final AtomicBoolean sweeping = new AtomicBoolean();
+    private volatile long lastSweepNanos = System.nanoTime();
+
+    /**
+     * @param permitsPerSecond 每个客户端每秒的令牌数
+     * @param burst            桶的容量，即允许的突发请求数
+     */
+    TokenBuckets(double permitsPerSecond, int burst, int sweepThreshold) {
+        this.intervalNanos = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond));
+        this.burstNanos = intervalNanos * Math.max(1, burst);
+        this.sweepThreshold = sweepThreshold;
+    }
+
+    /**
+     * 取一个令牌，成功时返回 0，否则返回还需要等待的纳秒数
+     */
+    long tryAcquire(Object client) {
+        long now = System.nanoTime();
+        AtomicLong bucket = buckets.get(client);
+        if (bucket == null) {
+            AtomicLong created = new AtomicLong(now);
+            bucket = buckets.putIfAbsent(client, created);
+            if (bucket == null) {
+                bucket = created;
+                if (buckets.size() > sweepThreshold) {
+                    sweep(now);
+                }
+            }
+        }
+        for (;;) {
+            long tat = bucket.get();
+            long next = Math.max(tat, now) + intervalNanos;
+            long excess = next - now - burstNanos;
+            if (excess > 0) {
+                return excess;
+            }
+            if (bucket.compareAndSet(tat, next)) {
+                return 0;
+            }
+        }
+    }
+
+    int size() {
+        return buckets.size();
+    }
+
+    private void sweep(long now) {
+        if (now - lastSweepNanos < SWEEP_INTERVAL_NANOS || !sweeping.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            lastSweepNanos = now;
+            Iterator<Map.Entry<Object, AtomicLong>> it = buckets.entrySet().iterator();
+            while (it.hasNext()) {
+                if (it.next().getValue().get() <= now) {
+                    it.remove();
+                }
+            }
+        } finally {
+            sweeping.set(false);
+        }
+    }
+}
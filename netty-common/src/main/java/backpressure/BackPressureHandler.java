@@ -0,0 +1,89 @@
+package backpressure;
+
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.WriteBufferWaterMark;
+import io.netty.util.concurrent.ScheduledFuture;
+import io.netty.util.internal.SystemPropertyUtil;
+
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * 慢消费者背压。
+ *
+ * 对端读得比我们写得慢时，数据会堆积在 ChannelOutboundBuffer 中，不加限制最终会把堆外内存耗尽。
+ * 配合 ChannelOption.WRITE_BUFFER_WATER_MARK 使用：等待写出的字节数超过高水位时 Channel 变为不可写，
+ * 这里通过 ReadGate 暂停读取（不再读请求，也就不会再产生响应），降到低水位以下后恢复读取。
+ * 持续不可写超过 unwritableTimeout 的连接直接关闭，释放它占用的缓冲区。
+ *
+ * 配置项：backpressure.lowWaterMark、backpressure.highWaterMark（字节），
+ * backpressure.unwritableTimeoutMillis（0 表示不关闭）
+ */
+public class BackPressureHandler extends ChannelDuplexHandler {
+
+    public static final WriteBufferWaterMark WATER_MARK = new WriteBufferWaterMark(
+            SystemPropertyUtil.getInt("backpressure.lowWaterMark", 32 * 1024),
+            SystemPropertyUtil.getInt("backpressure.highWaterMark", 64 * 1024));
+
+    private static final long UNWRITABLE_TIMEOUT_MILLIS =
+            SystemPropertyUtil.getLong("backpressure.unwritableTimeoutMillis", 30000);
+
+    private final BackPressureMetrics metrics;
+    private ScheduledFuture<?> shedTask;
+    private boolean unwritable;
+
+    public BackPressureHandler(BackPressureMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void channelActive(ChannelHandlerContext ctx) throws Exception {
+        metrics.connected(ctx.channel());
+        ctx.fireChannelActive();
+    }
+
+    @Override
+    public void channelWritabilityChanged(final ChannelHandlerContext ctx) throws Exception {
+        boolean writable = ctx.channel().isWritable();
+        if (!writable && !unwritable) {
+            unwritable = true;
+            metrics.unwritable();
+            ReadGate.pause(ctx.channel(), ReadGate.WRITABILITY);
+            if (UNWRITABLE_TIMEOUT_MILLIS > 0) {
+                shedTask = ctx.executor().schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (unwritable && ctx.channel().isActive()) {
+                            System.out.println("Closing slow consumer " + ctx.channel().remoteAddress() + ", pending bytes: "
+                                    + BackPressureMetrics.pendingBytes(ctx.channel()));
+                            metrics.shed();
+                            ctx.close();
+                        }
+                    }
+                }, UNWRITABLE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            }
+        } else if (writable && unwritable) {
+            becameWritable(ctx);
+            ReadGate.resume(ctx.channel(), ReadGate.WRITABILITY);
+        }
+        ctx.fireChannelWritabilityChanged();
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        if (unwritable) {
+            becameWritable(ctx);
+        }
+        ctx.fireChannelInactive();
+    }
+
+    private void becameWritable(ChannelHandlerContext ctx) {
+        unwritable = false;
+        metrics.writable();
+        if (shedTask != null) {
+            shedTask.cancel(false);
+            shedTask = null;
+        }
+    }
+}
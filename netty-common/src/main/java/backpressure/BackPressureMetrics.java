@@ -0,0 +1,123 @@
+package backpressure;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelOutboundBuffer;
+import io.netty.channel.group.ChannelGroup;
+import io.netty.channel.group.DefaultChannelGroup;
+import io.netty.util.concurrent.GlobalEventExecutor;
+import metrics.MetricsRegistry;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * 同一个服务所有连接的背压统计，由 BackPressureHandler 更新。
+ *
+ * 每个连接等待写出的字节数直接读取 ChannelOutboundBuffer，只在 JMX 拉取时遍历连接，不影响 I/O 线程。
+ */
+public final class BackPressureMetrics implements BackPressureMetricsMBean {
+
+    private static final int TOP_CONNECTIONS = 10;
+
+    // 连接关闭时自动移除
+    private final ChannelGroup channels = new DefaultChannelGroup(GlobalEventExecutor.INSTANCE);
+    private final AtomicInteger unwritable = new AtomicInteger();
+    private final LongAdder unwritableEvents = new LongAdder();
+    private final LongAdder shedConnections = new LongAdder();
+
+    private BackPressureMetrics() {
+    }
+
+    public static BackPressureMetrics create(String group) {
+        return MetricsRegistry.register("BackPressureMetrics", group, "backPressure", new BackPressureMetrics());
+    }
+
+    void connected(Channel channel) {
+        channels.add(channel);
+    }
+
+    void unwritable() {
+        unwritable.incrementAndGet();
+        unwritableEvents.increment();
+    }
+
+    void writable() {
+        unwritable.decrementAndGet();
+    }
+
+    void shed() {
+        shedConnections.increment();
+    }
+
+    @Override
+    public int getConnections() {
+        return channels.size();
+    }
+
+    @Override
+    public int getUnwritableConnections() {
+        return unwritable.get();
+    }
+
+    @Override
+    public long getUnwritableEvents() {
+        return unwritableEvents.sum();
+    }
+
+    @Override
+    public long getShedConnections() {
+        return shedConnections.sum();
+    }
+
+    @Override
+    public long getPendingBytes() {
+        long total = 0;
+        for (Channel channel : channels) {
+            total += pendingBytes(channel);
+        }
+        return total;
+    }
+
+    @Override
+    public long getMaxPendingBytes() {
+        long max = 0;
+        for (Channel channel : channels) {
+            max = Math.max(max, pendingBytes(channel));
+        }
+        return max;
+    }
+
+    @Override
+    public String[] getTopPendingConnections() {
+        List<Object[]> pending = new ArrayList<Object[]>();
+        for (Channel channel : channels) {
+            long bytes = pendingBytes(channel);
+            if (bytes > 0) {
+                pending.add(new Object[]{channel.remoteAddress(), bytes});
+            }
+        }
+        Collections.sort(pending, new Comparator<Object[]>() {
+            @Override
+            public int compare(Object[] a, Object[] b) {
+                return Long.compare((Long) b[1], (Long) a[1]);
+            }
+        });
+        int n = Math.min(TOP_CONNECTIONS, pending.size());
+        String[] top = new String[n];
+        for (int i = 0; i < n; i++) {
+            top[i] = pending.get(i)[0] + " " + pending.get(i)[1];
+        }
+        return top;
+    }
+
+    static long pendingBytes(Channel channel) {
+        ChannelOutboundBuffer buffer = channel.unsafe().outboundBuffer();
+        // 连接关闭后 outboundBuffer 为 null
+        return buffer == null ? 0 : buffer.totalPendingWriteBytes();
+    }
+}
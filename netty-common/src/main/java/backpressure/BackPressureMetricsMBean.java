@@ -0,0 +1,33 @@
+package backpressure;
+
+/**
+ * 通过 JMX 暴露的背压统计
+ */
+public interface BackPressureMetricsMBean {
+
+    int getConnections();
+
+    /**
+     * 当前不可写（出站缓冲区超过高水位）的连接数
+     */
+    int getUnwritableConnections();
+
+    long getUnwritableEvents();
+
+    /**
+     * 因为长时间不可写而被关闭的连接数
+     */
+    long getShedConnections();
+
+    /**
+     * 所有连接出站缓冲区中等待写出的字节数
+     */
+    long getPendingBytes();
+
+    long getMaxPendingBytes();
+
+    /**
+     * 等待写出字节数最多的连接，格式为 "远端地址 字节数"
+     */
+    String[] getTopPendingConnections();
+}
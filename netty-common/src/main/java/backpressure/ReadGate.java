@@ -0,0 +1,77 @@
+package backpressure;
+
+import io.netty.channel.Channel;
+import io.netty.util.Attribute;
+import io.netty.util.AttributeKey;
+
+
+/**
+ * 按原因管理 Channel 的 autoRead。
+ *
+ * 多个 Handler 都可能因为自己的原因暂停读取（pipelining 排队过多、流式请求体还没处理完等），
+ * 如果各自直接调用 setAutoRead，一个 Handler 恢复读取时会覆盖另一个 Handler 的暂停。
+ * 这里把暂停原因记录成 Channel 属性上的位掩码，只要还有任意一个原因没有解除就保持 autoRead = false。
+ *
+ * 状态只在 Channel 所属的 EventLoop 中修改，其他线程调用时会提交到 EventLoop 执行。
+ */
+public final class ReadGate {
+
+    // HTTP pipelining 排队的请求过多
+    public static final int PIPELINING = 1;
+    // 流式请求体的消费速度跟不上读取速度
+    public static final int STREAMING = 1 << 1;
+    // 出站缓冲区超过高水位，对端读得太慢
+    public static final int WRITABILITY = 1 << 2;
+
+    private static final AttributeKey<ReadGate> KEY = AttributeKey.valueOf(ReadGate.class, "readGate");
+
+    private int reasons;
+
+    private ReadGate() {
+    }
+
+    public static void pause(Channel channel, int reason) {
+        update(channel, reason, true);
+    }
+
+    public static void resume(Channel channel, int reason) {
+        update(channel, reason, false);
+    }
+
+    /**
+     * 是否因为指定原因暂停了读取，只能在 EventLoop 中调用
+     */
+    public static boolean isPaused(Channel channel, int reason) {
+        ReadGate gate = channel.attr(KEY).get();
+        return gate != null && (gate.reasons & reason) != 0;
+    }
+
+    private static void update(final Channel channel, final int reason, final boolean pause) {
+        if (!channel.eventLoop().inEventLoop()) {
+            channel.eventLoop().execute(new Runnable() {
+                @Override
+                public void run() {
+                    update(channel, reason, pause);
+                }
+            });
+            return;
+        }
+        Attribute<ReadGate> attr = channel.attr(KEY);
+        ReadGate gate = attr.get();
+        if (gate == null) {
+            if (!pause) {
+                return;
+            }
+            gate = new ReadGate();
+            attr.set(gate);
+        }
+        int before = gate.reasons;
+        gate.reasons = pause ? before | reason : before & ~reason;
+        if (before == 0 && gate.reasons != 0) {
+            channel.config().setAutoRead(false);
+        } else if (before != 0 && gate.reasons == 0) {
+            // 重新打开 autoRead 时 Netty 会立即触发一次 read
+            channel.config().setAutoRead(true);
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package compression;
+
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.compression.ZlibCodecFactory;
+import io.netty.handler.codec.compression.ZlibWrapper;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpContentCompressor;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaderValues;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpUtil;
+
+
+/**
+ * 按大小、内容类型和 CPU 预算决定是否压缩的 HttpContentCompressor，策略见 CompressionPolicy。
+ *
+ * 压缩仍然由 HttpContentEncoder 驱动，这里只替换 beginEncode 返回的 EmbeddedChannel，
+ * 在压缩器外面包一层 CpuTimer 统计压缩耗时。
+ *
+ * 目前只协商 gzip / deflate，当前使用的 Netty 版本没有 Brotli 和 zstd 编码器。
+ */
+public class AdaptiveHttpContentCompressor extends HttpContentCompressor {
+
+    private static final int WINDOW_BITS = 15;
+    private static final int MEM_LEVEL = 8;
+
+    private final CompressionPolicy policy;
+    private ChannelHandlerContext ctx;
+
+    public AdaptiveHttpContentCompressor() {
+        this(CompressionPolicy.defaultPolicy());
+    }
+
+    public AdaptiveHttpContentCompressor(CompressionPolicy policy) {
+        this.policy = policy;
+    }
+
+    @Override
+    public void handlerAdded(ChannelHandlerContext ctx) throws Exception {
+        this.ctx = ctx;
+        super.handlerAdded(ctx);
+    }
+
+    @Override
+    protected Result beginEncode(HttpResponse response, String acceptEncoding) throws Exception {
+        HttpHeaders headers = response.headers();
+        if (headers.contains(HttpHeaderNames.CONTENT_ENCODING)) {
+            return null;
+        }
+        // 压缩之后 Content-Range 就对不上了
+        if (response.status().code() == HttpResponseStatus.PARTIAL_CONTENT.code()) {
+            return null;
+        }
+        boolean full = response instanceof FullHttpResponse;
+        // 长度已知但不是完整响应的，通常是 FileRegion 零拷贝发送的文件，内容不经过 HttpContent，无法压缩
+        if (!full && HttpUtil.isContentLengthSet(response)) {
+            return null;
+        }
+        long size = full ? ((FullHttpResponse) response).content().readableBytes() : -1;
+        if (policy.isTooSmall(size) || !policy.isCompressible(headers)) {
+            return null;
+        }
+        // 响应内容会随 Accept-Encoding 变化，告诉缓存服务器按 Accept-Encoding 区分缓存
+        if (!headers.containsValue(HttpHeaderNames.VARY, HttpHeaderNames.ACCEPT_ENCODING, true)) {
+            headers.add(HttpHeaderNames.VARY, HttpHeaderNames.ACCEPT_ENCODING);
+        }
+        ZlibWrapper wrapper = determineWrapper(acceptEncoding);
+        if (wrapper == null) {
+            return null;
+        }
+        String targetContentEncoding = wrapper == ZlibWrapper.GZIP ? "gzip" : "deflate";
+
+        int level = policy.selectLevel();
+        if (level == 0) {
+            return null;
+        }
+        ChannelHandler encoder = ZlibCodecFactory.newZlibEncoder(wrapper, level, WINDOW_BITS, MEM_LEVEL);
+        // 出站方向从后往前执行：CpuTimer -> 压缩器
+        return new Result(targetContentEncoding, newEmbeddedChannel(encoder, new CpuTimer()));
+    }
+
+    private EmbeddedChannel newEmbeddedChannel(ChannelHandler... handlers) {
+        return new EmbeddedChannel(ctx.channel().id(), ctx.channel().metadata().hasDisconnect(),
+                ctx.channel().config(), handlers);
+    }
+
+    /**
+     * 统计压缩器的 CPU 耗时（压缩在当前线程同步完成）
+     */
+    private final class CpuTimer extends ChannelOutboundHandlerAdapter {
+
+        @Override
+        public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+            long start = System.nanoTime();
+            try {
+                ctx.write(msg, promise);
+            } finally {
+                policy.recordCpu(System.nanoTime() - start);
+            }
+        }
+
+        @Override
+        public void close(ChannelHandlerContext ctx, ChannelPromise promise) throws Exception {
+            // 关闭时压缩器会输出剩余的数据和 gzip 尾部
+            long start = System.nanoTime();
+            try {
+                ctx.close(promise);
+            } finally {
+                policy.recordCpu(System.nanoTime() - start);
+            }
+        }
+    }
+}
@@ -0,0 +1,328 @@
+package compression;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.compression.ZlibCodecFactory;
+import io.netty.handler.codec.compression.ZlibWrapper;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.util.internal.SystemPropertyUtil;
+import metrics.MetricsRegistry;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * 压缩策略，所有连接上的 AdaptiveHttpContentCompressor 共用一个实例。
+ *
+ * - minSize：小于这个大小的响应不压缩，压缩节省的字节数抵不上 CPU 开销和 gzip 头部
+ * - mimeTypes：只压缩这些类型（前缀匹配），图片、压缩包等已经压缩过的内容再压缩没有收益
+ * - CPU 预算：每秒允许用于压缩的 CPU 时间。用量超过一半时降级到最快的压缩级别，超过预算时不再压缩
+ * - 预压缩缓存：静态内容（按 sendfile / ChunkedFile 发送，不经过 AdaptiveHttpContentCompressor）由发送方调用
+ *   precompressed，按 路径 + ETag + 编码 缓存压缩结果，同一个文件只压缩一次
+ *
+ * 配置项（系统属性）：compression.minSize、compression.mimeTypes、compression.level、
+ * compression.cpuBudgetPercent（占全部 CPU 核数的百分比）、
+ * compression.cacheBytes（0 表示不缓存）、compression.cacheMaxFileBytes（超过这个大小的文件不预压缩）
+ */
+public final class CompressionPolicy implements CompressionPolicyMBean {
+
+    public static final String DEFAULT_MIME_TYPES =
+            "text/,application/json,application/javascript,application/xml,image/svg+xml";
+
+    private static volatile CompressionPolicy defaultPolicy;
+
+    private final int minSize;
+    private final String[] mimeTypes;
+    private final int level;
+    private final long budgetNanosPerSecond;
+    private final PrecompressedCache cache;
+    private final long cacheMaxFileBytes;
+
+    // CPU 预算按 1 秒一个窗口统计
+    private final AtomicLong windowStart = new AtomicLong(System.nanoTime());
+    private final LongAdder windowNanos = new LongAdder();
+    private volatile long previousWindowNanos;
+
+    private final LongAdder compressed = new LongAdder();
+    private final LongAdder skippedTooSmall = new LongAdder();
+    private final LongAdder skippedContentType = new LongAdder();
+    private final LongAdder skippedOverBudget = new LongAdder();
+    private final LongAdder downgraded = new LongAdder();
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder cacheMisses = new LongAdder();
+
+    public CompressionPolicy(int minSize, String mimeTypes, int level, int cpuBudgetPercent, long cacheBytes,
+                             long cacheMaxFileBytes) {
+        if (level < 1 || level > 9) {
+            throw new IllegalArgumentException("level: " + level + " (expected: 1-9)");
+        }
+        this.minSize = minSize;
+        List<String> types = new ArrayList<String>();
+        for (String type : mimeTypes.split(",")) {
+            type = type.trim().toLowerCase(Locale.ROOT);
+            if (!type.isEmpty()) {
+                types.add(type);
+            }
+        }
+        this.mimeTypes = types.toArray(new String[0]);
+        this.level = level;
+        this.budgetNanosPerSecond = TimeUnit.SECONDS.toNanos(1)
+                * Runtime.getRuntime().availableProcessors() * cpuBudgetPercent / 100;
+        this.cache = cacheBytes > 0 ? new PrecompressedCache(cacheBytes) : null;
+        this.cacheMaxFileBytes = Math.min(cacheMaxFileBytes, cacheBytes);
+    }
+
+    /**
+     * 按系统属性创建的默认策略，第一次调用时注册到 MetricsRegistry
+     */
+    public static CompressionPolicy defaultPolicy() {
+        CompressionPolicy policy = defaultPolicy;
+        if (policy == null) {
+            synchronized (CompressionPolicy.class) {
+                policy = defaultPolicy;
+                if (policy == null) {
+                    policy = new CompressionPolicy(
+                            SystemPropertyUtil.getInt("compression.minSize", 1024),
+                            SystemPropertyUtil.get("compression.mimeTypes", DEFAULT_MIME_TYPES),
+                            SystemPropertyUtil.getInt("compression.level", 6),
+                            SystemPropertyUtil.getInt("compression.cpuBudgetPercent", 25),
+                            SystemPropertyUtil.getLong("compression.cacheBytes", 16 * 1024 * 1024),
+                            SystemPropertyUtil.getLong("compression.cacheMaxFileBytes", 1024 * 1024));
+                    MetricsRegistry.register("CompressionPolicy", "http", "default", policy);
+                    defaultPolicy = policy;
+                }
+            }
+        }
+        return policy;
+    }
+
+    /**
+     * 响应体大小已知且小于 minSize 时不压缩，size 为 -1 表示未知
+     */
+    boolean isTooSmall(long size) {
+        if (size >= 0 && size < minSize) {
+            skippedTooSmall.increment();
+            return true;
+        }
+        return false;
+    }
+
+    boolean isCompressible(HttpHeaders headers) {
+        if (matchesMimeType(headers.get(HttpHeaderNames.CONTENT_TYPE))) {
+            return true;
+        }
+        skippedContentType.increment();
+        return false;
+    }
+
+    private boolean matchesMimeType(String contentType) {
+        if (contentType != null) {
+            contentType = contentType.toLowerCase(Locale.ROOT);
+            for (String type : mimeTypes) {
+                if (contentType.startsWith(type)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 静态内容是否走预压缩缓存：开启了缓存，大小在 minSize 和 cacheMaxFileBytes 之间，并且是可压缩的类型。
+     * 返回 true 时响应内容会随 Accept-Encoding 变化，不压缩的响应也需要带 Vary: Accept-Encoding
+     */
+    public boolean isPrecompressible(long size, String contentType) {
+        return cache != null && size >= minSize && size <= cacheMaxFileBytes && matchesMimeType(contentType);
+    }
+
+    /**
+     * 返回 path 的内容按 encoding（gzip / deflate）压缩的结果，调用方负责 release，isPrecompressible 为 true 时才能调用。
+     * 未命中时调用 content 读取原始内容（所有权交给这里），压缩后放入缓存；超过 CPU 预算时返回 null，调用方发送原始内容。
+     * 并发未命中时可能重复压缩同一个文件，结果相同，后放入的替换先放入的。
+     */
+    public ByteBuf precompressed(String path, String etag, String encoding, Callable<ByteBuf> content) throws Exception {
+        String key = PrecompressedCache.key(path, etag, encoding);
+        ByteBuf cached = cache.get(key);
+        if (cached != null) {
+            cacheHits.increment();
+            return cached;
+        }
+        cacheMisses.increment();
+        int level = selectLevel();
+        if (level == 0) {
+            return null;
+        }
+        ByteBuf compressed = compress(content.call(), encoding, level);
+        // 缓存持有原始的 ByteBuf，返回的 duplicate 有独立的读指针，写出时不影响缓存中的内容
+        ByteBuf duplicate = compressed.retainedDuplicate();
+        cache.put(key, compressed);
+        return duplicate;
+    }
+
+    /**
+     * 压缩整个内容，结果合并到一个非池化的直接内存中：缓存长期持有，不占用池化内存的 Chunk
+     */
+    private ByteBuf compress(ByteBuf content, String encoding, int level) {
+        EmbeddedChannel channel = new EmbeddedChannel(ZlibCodecFactory.newZlibEncoder(
+                "gzip".equals(encoding) ? ZlibWrapper.GZIP : ZlibWrapper.ZLIB, level));
+        long start = System.nanoTime();
+        try {
+            channel.writeOutbound(content);
+            channel.finish();
+        } finally {
+            recordCpu(System.nanoTime() - start);
+        }
+        List<ByteBuf> parts = new ArrayList<ByteBuf>();
+        int size = 0;
+        ByteBuf part;
+        while ((part = channel.readOutbound()) != null) {
+            parts.add(part);
+            size += part.readableBytes();
+        }
+        ByteBuf compressed = Unpooled.directBuffer(size);
+        for (ByteBuf buf : parts) {
+            compressed.writeBytes(buf);
+            buf.release();
+        }
+        return compressed;
+    }
+
+    /**
+     * 按 Accept-Encoding 选择 gzip 或 deflate（q 值相同时优先 gzip），都不接受时返回 null
+     */
+    public static String selectEncoding(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return null;
+        }
+        float gzip = -1;
+        float deflate = -1;
+        float any = -1;
+        for (String token : acceptEncoding.split(",")) {
+            int semicolon = token.indexOf(';');
+            String name = (semicolon < 0 ? token : token.substring(0, semicolon)).trim().toLowerCase(Locale.ROOT);
+            float q = 1;
+            int equals = semicolon < 0 ? -1 : token.indexOf('=', semicolon);
+            if (equals > 0) {
+                try {
+                    q = Float.parseFloat(token.substring(equals + 1).trim());
+                } catch (NumberFormatException e) {
+                    q = 0;
+                }
+            }
+            if ("gzip".equals(name) || "x-gzip".equals(name)) {
+                gzip = q;
+            } else if ("deflate".equals(name)) {
+                deflate = q;
+            } else if ("*".equals(name)) {
+                any = q;
+            }
+        }
+        if (gzip < 0) {
+            gzip = any;
+        }
+        if (deflate < 0) {
+            deflate = any;
+        }
+        if (gzip > 0 && gzip >= deflate) {
+            return "gzip";
+        }
+        return deflate > 0 ? "deflate" : null;
+    }
+
+    /**
+     * 释放预压缩缓存中的所有内容
+     */
+    public void clearCache() {
+        if (cache != null) {
+            cache.clear();
+        }
+    }
+
+    /**
+     * 根据 CPU 预算的用量选择压缩级别，超过预算时返回 0 表示不压缩
+     */
+    int selectLevel() {
+        long used = usedNanos();
+        if (used >= budgetNanosPerSecond) {
+            skippedOverBudget.increment();
+            return 0;
+        }
+        compressed.increment();
+        if (used >= budgetNanosPerSecond / 2 && level > 1) {
+            downgraded.increment();
+            return 1;
+        }
+        return level;
+    }
+
+    void recordCpu(long nanos) {
+        rollWindow();
+        windowNanos.add(nanos);
+    }
+
+    private long usedNanos() {
+        rollWindow();
+        return Math.max(previousWindowNanos, windowNanos.sum());
+    }
+
+    private void rollWindow() {
+        long start = windowStart.get();
+        long now = System.nanoTime();
+        if (now - start >= TimeUnit.SECONDS.toNanos(1) && windowStart.compareAndSet(start, now)) {
+            previousWindowNanos = windowNanos.sumThenReset();
+        }
+    }
+
+    @Override
+    public long getCompressed() {
+        return compressed.sum();
+    }
+
+    @Override
+    public long getSkippedTooSmall() {
+        return skippedTooSmall.sum();
+    }
+
+    @Override
+    public long getSkippedContentType() {
+        return skippedContentType.sum();
+    }
+
+    @Override
+    public long getSkippedOverBudget() {
+        return skippedOverBudget.sum();
+    }
+
+    @Override
+    public long getDowngraded() {
+        return downgraded.sum();
+    }
+
+    @Override
+    public long getCacheHits() {
+        return cacheHits.sum();
+    }
+
+    @Override
+    public long getCacheMisses() {
+        return cacheMisses.sum();
+    }
+
+    @Override
+    public long getCacheBytes() {
+        return cache == null ? 0 : cache.bytes();
+    }
+
+    @Override
+    public double getBudgetUsagePercent() {
+        return budgetNanosPerSecond == 0 ? 0 : usedNanos() * 100.0 / budgetNanosPerSecond;
+    }
+}
@@ -0,0 +1,28 @@
+package compression;
+
+/**
+ * 通过 JMX 暴露的压缩统计
+ */
+public interface CompressionPolicyMBean {
+
+    long getCompressed();
+
+    long getSkippedTooSmall();
+
+    long getSkippedContentType();
+
+    long getSkippedOverBudget();
+
+    long getDowngraded();
+
+    long getCacheHits();
+
+    long getCacheMisses();
+
+    long getCacheBytes();
+
+    /**
+     * 最近一秒压缩消耗的 CPU 时间占预算的百分比
+     */
+    double getBudgetUsagePercent();
+}
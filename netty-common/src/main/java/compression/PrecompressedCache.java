@@ -0,0 +1,71 @@
+package compression;
+
+import io.netty.buffer.ByteBuf;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+
+/**
+ * 预压缩结果缓存，按总字节数做 LRU 淘汰。
+ *
+ * key 由路径、ETag 和编码方式组成：不同路径的文件大小和修改时间可能相同，只用 ETag 会串到别的文件上。
+ * 文件变化之后 ETag 跟着变化，旧的压缩结果不会再命中，随 LRU 淘汰。
+ * 缓存中的 ByteBuf 由缓存持有，get 返回 retainedDuplicate，调用方使用完毕后 release。
+ */
+final class PrecompressedCache {
+
+    private final long maxBytes;
+    private final LinkedHashMap<String, ByteBuf> entries = new LinkedHashMap<String, ByteBuf>(16, 0.75f, true);
+    private long bytes;
+
+    PrecompressedCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    static String key(String path, String etag, String encoding) {
+        return path + '\n' + etag + '\n' + encoding;
+    }
+
+    synchronized ByteBuf get(String key) {
+        ByteBuf buf = entries.get(key);
+        return buf == null ? null : buf.retainedDuplicate();
+    }
+
+    /**
+     * 放入缓存，buf 的所有权交给缓存
+     */
+    synchronized void put(String key, ByteBuf buf) {
+        int size = buf.readableBytes();
+        if (size > maxBytes) {
+            buf.release();
+            return;
+        }
+        ByteBuf old = entries.put(key, buf);
+        if (old != null) {
+            bytes -= old.readableBytes();
+            old.release();
+        }
+        bytes += size;
+        Iterator<Map.Entry<String, ByteBuf>> it = entries.entrySet().iterator();
+        while (bytes > maxBytes && it.hasNext()) {
+            ByteBuf eldest = it.next().getValue();
+            it.remove();
+            bytes -= eldest.readableBytes();
+            eldest.release();
+        }
+    }
+
+    synchronized void clear() {
+        for (ByteBuf buf : entries.values()) {
+            buf.release();
+        }
+        entries.clear();
+        bytes = 0;
+    }
+
+    synchronized long bytes() {
+        return bytes;
+    }
+}
@@ -0,0 +1,100 @@
+package cumulation;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.handler.codec.ByteToMessageDecoder;
+import io.netty.util.internal.SystemPropertyUtil;
+
+
+/**
+ * 按累积数据量选择累积方式的 Cumulator。
+ *
+ * 默认的 MERGE_CUMULATOR 把每次读到的数据拷贝进一个连续的缓冲区，小报文没有问题；
+ * 但一个大报文分成很多次读取时，扩容要把已有数据整体拷贝一次，累积缓冲区被 retainedSlice 引用（refCnt > 1）时
+ * 每次读取都要整体拷贝，总拷贝量接近 O(n²)。COMPOSITE_CUMULATOR 不拷贝，但小报文的 getXxx 要跨组件查找，反而更慢。
+ *
+ * 这里两者结合：
+ * - 累积数据量小于 compositeThreshold 时按 MERGE_CUMULATOR 合并
+ * - 超过之后说明正在接收大报文，改成 CompositeByteBuf，之后的数据只追加组件，不再拷贝；
+ *   累积缓冲区被其他人引用时不修改它，而是把它作为新 CompositeByteBuf 的一个组件；
+ *   被引用的是 CompositeByteBuf 时加入的是它的各个组件，不嵌套（嵌套的 CompositeByteBuf 按下标查找要逐层进行）
+ * - 大报文解码完，剩余数据又少于阈值时拷贝回连续的缓冲区
+ *
+ * 配置项：cumulation.compositeThreshold（字节，默认 64K），cumulation.discardAfterReads（默认 4）
+ */
+public final class AdaptiveCumulator implements ByteToMessageDecoder.Cumulator {
+
+    public static final int COMPOSITE_THRESHOLD = SystemPropertyUtil.getInt("cumulation.compositeThreshold", 64 * 1024);
+
+    /**
+     * 每读取多少次调用一次 discardSomeReadBytes。默认 4 次（Netty 默认 16 次）。
+     * CompositeByteBuf 丢弃已读组件不需要拷贝，小报文剩余的未读数据也很少，调小可以更早释放已经解码完的内存
+     */
+    public static final int DISCARD_AFTER_READS = SystemPropertyUtil.getInt("cumulation.discardAfterReads", 4);
+
+    public static final AdaptiveCumulator INSTANCE = new AdaptiveCumulator(COMPOSITE_THRESHOLD);
+
+    private final int compositeThreshold;
+
+    public AdaptiveCumulator(int compositeThreshold) {
+        if (compositeThreshold <= 0) {
+            throw new IllegalArgumentException("compositeThreshold: " + compositeThreshold + " (expected: > 0)");
+        }
+        this.compositeThreshold = compositeThreshold;
+    }
+
+    /**
+     * 给解码器设置 INSTANCE 和 DISCARD_AFTER_READS
+     */
+    public static <T extends ByteToMessageDecoder> T configure(T decoder) {
+        decoder.setCumulator(INSTANCE);
+        decoder.setDiscardAfterReads(DISCARD_AFTER_READS);
+        return decoder;
+    }
+
+    @Override
+    public ByteBuf cumulate(ByteBufAllocator alloc, ByteBuf cumulation, ByteBuf in) {
+        long total = (long) cumulation.readableBytes() + in.readableBytes();
+        if (total < compositeThreshold) {
+            if (cumulation instanceof CompositeByteBuf) {
+                return consolidate(alloc, cumulation, in, (int) total);
+            }
+            return ByteToMessageDecoder.MERGE_CUMULATOR.cumulate(alloc, cumulation, in);
+        }
+        CompositeByteBuf composite;
+        if (cumulation instanceof CompositeByteBuf && cumulation.refCnt() == 1) {
+            composite = (CompositeByteBuf) cumulation;
+        } else if (cumulation instanceof CompositeByteBuf) {
+            composite = flatten(alloc, (CompositeByteBuf) cumulation);
+        } else {
+            // 组件只会被读取，不会被写入，被 retainedSlice 引用的累积缓冲区也可以直接作为组件
+            composite = alloc.compositeBuffer(Integer.MAX_VALUE).addComponent(true, cumulation);
+        }
+        return composite.addComponent(true, in);
+    }
+
+    /**
+     * 新建 CompositeByteBuf，加入 shared 未读部分的各个组件（retain），释放 shared
+     */
+    private static CompositeByteBuf flatten(ByteBufAllocator alloc, CompositeByteBuf shared) {
+        CompositeByteBuf composite = alloc.compositeBuffer(Integer.MAX_VALUE);
+        try {
+            for (ByteBuf component : shared.decompose(shared.readerIndex(), shared.readableBytes())) {
+                composite.addComponent(true, component.retain());
+            }
+        } finally {
+            shared.release();
+        }
+        return composite;
+    }
+
+    private static ByteBuf consolidate(ByteBufAllocator alloc, ByteBuf cumulation, ByteBuf in, int total) {
+        try {
+            return alloc.buffer(total).writeBytes(cumulation).writeBytes(in);
+        } finally {
+            cumulation.release();
+            in.release();
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package flush;
+
+import io.netty.channel.ChannelPipeline;
+import io.netty.handler.flush.FlushConsolidationHandler;
+import io.netty.util.internal.SystemPropertyUtil;
+import metrics.MetricsRegistry;
+
+
+/**
+ * flush 合并。
+ *
+ * 每个响应都单独 writeAndFlush 时，每次 flush 都是一次系统调用。FlushConsolidationHandler 在一次读循环
+ * （channelRead ... channelReadComplete）中只记录 flush，等到 channelReadComplete 或者累积的 flush 次数
+ * 达到 explicitFlushAfterFlushes 时才真正 flush，pipelining 或高频小消息时多个响应合并成一次 writev。
+ *
+ * 响应在业务线程中写出时不在读循环内，需要打开 consolidateWhenNoReadInProgress，
+ * 这时 flush 会被合并到提交给 EventLoop 的同一个任务中。
+ *
+ * 配置项：flush.explicitFlushAfterFlushes（默认 256）
+ */
+public final class FlushConsolidation {
+
+    public static final int EXPLICIT_FLUSH_AFTER_FLUSHES = SystemPropertyUtil.getInt(
+            "flush.explicitFlushAfterFlushes", FlushConsolidationHandler.DEFAULT_EXPLICIT_FLUSH_AFTER_FLUSHES);
+
+    private FlushConsolidation() {
+    }
+
+    /**
+     * 创建某个服务共用的 flush 统计，注册到 MetricsRegistry
+     */
+    public static FlushMetricsHandler newMetrics(String group) {
+        return MetricsRegistry.register("FlushMetrics", group, "flush", new FlushMetricsHandler());
+    }
+
+    /**
+     * 在 Pipeline 最前面加入 flush 统计和 flush 合并，需要在其他 Handler 之前调用
+     */
+    public static void addFirst(ChannelPipeline pipeline, FlushMetricsHandler metrics, boolean consolidateWhenNoReadInProgress) {
+        pipeline.addFirst("flushConsolidation",
+                new FlushConsolidationHandler(EXPLICIT_FLUSH_AFTER_FLUSHES, consolidateWhenNoReadInProgress));
+        pipeline.addFirst("flushMetrics", metrics);
+    }
+}
@@ -0,0 +1,71 @@
+package flush;
+
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.ChannelPromise;
+import metrics.HandlerMetrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * 统计真正到达 socket 的 write 和 flush 次数，放在 Pipeline 最前面（FlushConsolidationHandler 之前）。
+ * 每次 flush 对应一次（或多次，数据很多时）writev 系统调用，writesPerFlush 反映了合并的效果。
+ *
+ * 同一个服务的所有连接共用一个实例。
+ */
+@ChannelHandler.Sharable
+public class FlushMetricsHandler extends ChannelOutboundHandlerAdapter implements FlushMetricsHandlerMBean {
+
+    private final LongAdder writes = new LongAdder();
+    private final LongAdder flushes = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+        writes.increment();
+        bytes.add(HandlerMetrics.sizeOf(msg));
+        ctx.write(msg, promise);
+    }
+
+    @Override
+    public void flush(ChannelHandlerContext ctx) throws Exception {
+        flushes.increment();
+        ctx.flush();
+    }
+
+    @Override
+    public long getWrites() {
+        return writes.sum();
+    }
+
+    @Override
+    public long getFlushes() {
+        return flushes.sum();
+    }
+
+    @Override
+    public long getBytes() {
+        return bytes.sum();
+    }
+
+    @Override
+    public double getWritesPerFlush() {
+        long n = flushes.sum();
+        return n == 0 ? 0 : (double) writes.sum() / n;
+    }
+
+    @Override
+    public double getBytesPerFlush() {
+        long n = flushes.sum();
+        return n == 0 ? 0 : (double) bytes.sum() / n;
+    }
+
+    @Override
+    public void reset() {
+        writes.reset();
+        flushes.reset();
+        bytes.reset();
+    }
+}
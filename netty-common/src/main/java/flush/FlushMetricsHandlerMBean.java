@@ -0,0 +1,22 @@
+package flush;
+
+/**
+ * 通过 JMX 暴露的 flush 统计
+ */
+public interface FlushMetricsHandlerMBean {
+
+    long getWrites();
+
+    long getFlushes();
+
+    long getBytes();
+
+    /**
+     * 平均每次 flush 写出的消息数，越大说明合并得越充分
+     */
+    double getWritesPerFlush();
+
+    double getBytesPerFlush();
+
+    void reset();
+}
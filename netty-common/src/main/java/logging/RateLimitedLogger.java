@@ -0,0 +1,77 @@
+package logging;
+
+import io.netty.util.concurrent.DefaultThreadFactory;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * 限速的异步日志。
+ *
+ * EventLoop 线程只做一次令牌桶判断，真正的字符串拼接和输出交给单独的后台线程，
+ * 超过速率或者后台队列已满的日志直接丢弃，只计数，下一条输出的日志会带上被丢弃的条数。
+ */
+public class RateLimitedLogger {
+
+    private final long permitsPerSecond;
+    private final long nanosPerPermit;
+    // 令牌桶下一个令牌可用的时间，最多允许积攒 1 秒的令牌
+    private final AtomicLong nextPermitNanos = new AtomicLong(System.nanoTime());
+    private final AtomicLong suppressed = new AtomicLong();
+    private final ExecutorService executor;
+
+    public RateLimitedLogger(String name, int permitsPerSecond, int queueSize) {
+        if (permitsPerSecond <= 0) {
+            throw new IllegalArgumentException("permitsPerSecond: " + permitsPerSecond + " (expected: > 0)");
+        }
+        this.permitsPerSecond = permitsPerSecond;
+        this.nanosPerPermit = TimeUnit.SECONDS.toNanos(1) / permitsPerSecond;
+        this.executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(queueSize), new DefaultThreadFactory(name, true),
+                new RejectedExecutionHandler() {
+                    @Override
+                    public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+                        // 队列已满时丢弃，和超过速率一样计入 suppressed
+                        suppressed.incrementAndGet();
+                    }
+                });
+    }
+
+    public void log(final String message, final Throwable cause) {
+        if (!tryAcquire()) {
+            suppressed.incrementAndGet();
+            return;
+        }
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                long dropped = suppressed.getAndSet(0);
+                StringBuilder sb = new StringBuilder(message).append(": ").append(cause);
+                if (dropped > 0) {
+                    sb.append(" (").append(dropped).append(" similar messages suppressed)");
+                }
+                System.out.println(sb);
+            }
+        });
+    }
+
+    private boolean tryAcquire() {
+        long now = System.nanoTime();
+        for (;;) {
+            long next = nextPermitNanos.get();
+            if (next - now > 0) {
+                return false;
+            }
+            // 长时间没有日志时，令牌最多积攒到 permitsPerSecond 个
+            long base = Math.max(next, now - nanosPerPermit * permitsPerSecond);
+            if (nextPermitNanos.compareAndSet(next, base + nanosPerPermit)) {
+                return true;
+            }
+        }
+    }
+}
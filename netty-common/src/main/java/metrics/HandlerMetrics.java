@@ -0,0 +1,137 @@
+package metrics;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufHolder;
+import io.netty.channel.FileRegion;
+
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * 单个 ChannelHandler 的调用次数、字节数和延迟统计。
+ *
+ * 同名的 Handler 在每个连接上都有一个实例，它们共用同一个 HandlerMetrics，由 MetricsRegistry 统一创建。
+ * 延迟由 TimedHandler 记录，是 Handler 自身的耗时，不包含同步向后传播到其他 TimedHandler 的耗时。
+ */
+public final class HandlerMetrics implements HandlerMetricsMBean {
+
+    private final LongAdder inboundBytes = new LongAdder();
+    private final LongAdder outboundBytes = new LongAdder();
+    private final LatencyHistogram inboundLatency = new LatencyHistogram();
+    private final LatencyHistogram outboundLatency = new LatencyHistogram();
+
+    HandlerMetrics() {
+    }
+
+    /**
+     * 消息的字节数，需要在消息向后传递之前计算（传递之后可能已经被释放）
+     */
+    public static long sizeOf(Object msg) {
+        if (msg instanceof ByteBuf) {
+            return ((ByteBuf) msg).readableBytes();
+        }
+        if (msg instanceof ByteBufHolder) {
+            return ((ByteBufHolder) msg).content().readableBytes();
+        }
+        if (msg instanceof FileRegion) {
+            return ((FileRegion) msg).count();
+        }
+        return 0;
+    }
+
+    public void recordInbound(long bytes, long nanos) {
+        inboundBytes.add(bytes);
+        inboundLatency.record(nanos);
+    }
+
+    public void recordOutbound(long bytes, long nanos) {
+        outboundBytes.add(bytes);
+        outboundLatency.record(nanos);
+    }
+
+    public LatencyHistogram inboundLatency() {
+        return inboundLatency;
+    }
+
+    public LatencyHistogram outboundLatency() {
+        return outboundLatency;
+    }
+
+    @Override
+    public long getInboundCount() {
+        return inboundLatency.count();
+    }
+
+    @Override
+    public long getInboundBytes() {
+        return inboundBytes.sum();
+    }
+
+    @Override
+    public double getInboundLatencyMean() {
+        return inboundLatency.meanNanos();
+    }
+
+    @Override
+    public long getInboundLatencyP50() {
+        return inboundLatency.percentileNanos(50);
+    }
+
+    @Override
+    public long getInboundLatencyP99() {
+        return inboundLatency.percentileNanos(99);
+    }
+
+    @Override
+    public long getInboundLatencyP999() {
+        return inboundLatency.percentileNanos(99.9);
+    }
+
+    @Override
+    public long getInboundLatencyMax() {
+        return inboundLatency.maxNanos();
+    }
+
+    @Override
+    public long getOutboundCount() {
+        return outboundLatency.count();
+    }
+
+    @Override
+    public long getOutboundBytes() {
+        return outboundBytes.sum();
+    }
+
+    @Override
+    public double getOutboundLatencyMean() {
+        return outboundLatency.meanNanos();
+    }
+
+    @Override
+    public long getOutboundLatencyP50() {
+        return outboundLatency.percentileNanos(50);
+    }
+
+    @Override
+    public long getOutboundLatencyP99() {
+        return outboundLatency.percentileNanos(99);
+    }
+
+    @Override
+    public long getOutboundLatencyP999() {
+        return outboundLatency.percentileNanos(99.9);
+    }
+
+    @Override
+    public long getOutboundLatencyMax() {
+        return outboundLatency.maxNanos();
+    }
+
+    @Override
+    public void reset() {
+        inboundBytes.reset();
+        outboundBytes.reset();
+        inboundLatency.reset();
+        outboundLatency.reset();
+    }
+}
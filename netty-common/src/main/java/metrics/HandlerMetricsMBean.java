@@ -0,0 +1,37 @@
+package metrics;
+
+/**
+ * 通过 JMX 暴露的单个 ChannelHandler 指标，延迟单位为纳秒
+ */
+public interface HandlerMetricsMBean {
+
+    long getInboundCount();
+
+    long getInboundBytes();
+
+    double getInboundLatencyMean();
+
+    long getInboundLatencyP50();
+
+    long getInboundLatencyP99();
+
+    long getInboundLatencyP999();
+
+    long getInboundLatencyMax();
+
+    long getOutboundCount();
+
+    long getOutboundBytes();
+
+    double getOutboundLatencyMean();
+
+    long getOutboundLatencyP50();
+
+    long getOutboundLatencyP99();
+
+    long getOutboundLatencyP999();
+
+    long getOutboundLatencyMax();
+
+    void reset();
+}
@@ -0,0 +1,82 @@
+package metrics;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+
+/**
+ * 指标注册中心，所有指标以 MBean 的形式注册到平台 MBeanServer，
+ * 可以用 jconsole / VisualVM 或任意 JMX 客户端按需拉取，不需要额外的线程去推送。
+ *
+ * ObjectName 格式：netty-study:type=&lt;type&gt;,group=&lt;group&gt;,name=&lt;name&gt;
+ */
+public final class MetricsRegistry {
+
+    public static final String DOMAIN = "netty-study";
+
+    private static final ConcurrentMap<String, Object> METRICS = new ConcurrentHashMap<String, Object>();
+
+    private MetricsRegistry() {
+    }
+
+    /**
+     * 获取（不存在时创建并注册）某个 Pipeline 中指定名称 Handler 的指标
+     */
+    public static HandlerMetrics handlerMetrics(String group, String name) {
+        String key = key("HandlerMetrics", group, name);
+        Object metrics = METRICS.get(key);
+        if (metrics == null) {
+            HandlerMetrics created = new HandlerMetrics();
+            metrics = METRICS.putIfAbsent(key, created);
+            if (metrics == null) {
+                registerMBean("HandlerMetrics", group, name, created);
+                metrics = created;
+            }
+        }
+        return (HandlerMetrics) metrics;
+    }
+
+    /**
+     * 注册任意符合 JMX 规范的 MBean，同名的 MBean 已存在时直接返回已注册的实例
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> T register(String type, String group, String name, T mbean) {
+        Object existing = METRICS.putIfAbsent(key(type, group, name), mbean);
+        if (existing != null) {
+            return (T) existing;
+        }
+        registerMBean(type, group, name, mbean);
+        return mbean;
+    }
+
+    private static void registerMBean(String type, String group, String name, Object mbean) {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            ObjectName objectName = new ObjectName(DOMAIN + ":type=" + value(type)
+                    + ",group=" + value(group) + ",name=" + value(name));
+            if (!server.isRegistered(objectName)) {
+                server.registerMBean(mbean, objectName);
+            }
+        } catch (JMException e) {
+            throw new IllegalStateException("failed to register metrics " + type + '/' + group + '/' + name, e);
+        }
+    }
+
+    // 含有 ObjectName 特殊字符的值才需要加引号
+    private static String value(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            if (",=:\"*?\n".indexOf(value.charAt(i)) >= 0) {
+                return ObjectName.quote(value);
+            }
+        }
+        return value;
+    }
+
+    private static String key(String type, String group, String name) {
+        return type + '/' + group + '/' + name;
+    }
+}
@@ -0,0 +1,244 @@
+package metrics;
+
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerAdapter;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandler;
+import io.netty.channel.ChannelOutboundHandler;
+import io.netty.channel.ChannelPromise;
+import io.netty.util.concurrent.FastThreadLocal;
+
+import java.net.SocketAddress;
+
+
+/**
+ * 包装一个 ChannelHandler，把它处理 channelRead / write 的耗时记录到 HandlerMetrics。
+ *
+ * ctx.fireChannelRead / ctx.write 是同步嵌套调用，直接在 Handler 里计时得到的是包含后续所有 Handler 的耗时，
+ * 越靠前的 Handler 看起来越慢，找不到真正慢的环节。这里记录的是自身耗时（self time）：
+ * 总耗时减去其中嵌套执行的其他 TimedHandler 的总耗时，嵌套关系按线程记录，入站和出站之间也会扣除
+ * （例如入站 Handler 中 writeAndFlush 经过的出站 Handler）。
+ * 没有被包装的 Handler（包括 HeadContext 中的 socket 写入）计入离它最近的外层 TimedHandler。
+ *
+ * 其他事件原样交给被包装的 Handler，被包装的 Handler 使用的 ctx 就是这个包装器的 ctx，传播行为不变。
+ */
+public final class TimedHandler extends ChannelDuplexHandler {
+
+    // 当前线程上正在执行的 TimedHandler 中，已经结束的嵌套 TimedHandler 的耗时之和
+    private static final FastThreadLocal<long[]> NESTED_NANOS = new FastThreadLocal<long[]>() {
+        @Override
+        protected long[] initialValue() {
+            return new long[1];
+        }
+    };
+
+    private final ChannelHandler handler;
+    private final ChannelInboundHandler inbound;
+    private final ChannelOutboundHandler outbound;
+    private final HandlerMetrics metrics;
+
+    /**
+     * 同组同名的 Handler 在所有连接上共用一份 HandlerMetrics，可以通过 JMX 查看
+     */
+    public TimedHandler(String group, String name, ChannelHandler handler) {
+        this(MetricsRegistry.handlerMetrics(group, name), handler);
+    }
+
+    public TimedHandler(HandlerMetrics metrics, ChannelHandler handler) {
+        this.handler = handler;
+        this.inbound = handler instanceof ChannelInboundHandler ? (ChannelInboundHandler) handler : null;
+        this.outbound = handler instanceof ChannelOutboundHandler ? (ChannelOutboundHandler) handler : null;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public boolean isSharable() {
+        return handler instanceof ChannelHandlerAdapter && ((ChannelHandlerAdapter) handler).isSharable();
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        // 消息传递之后可能已经被释放，需要提前计算字节数
+        long bytes = HandlerMetrics.sizeOf(msg);
+        long[] nested = NESTED_NANOS.get();
+        long outer = nested[0];
+        nested[0] = 0;
+        long start = System.nanoTime();
+        try {
+            if (inbound != null) {
+                inbound.channelRead(ctx, msg);
+            } else {
+                ctx.fireChannelRead(msg);
+            }
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            metrics.recordInbound(bytes, elapsed - nested[0]);
+            nested[0] = outer + elapsed;
+        }
+    }
+
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+        long bytes = HandlerMetrics.sizeOf(msg);
+        long[] nested = NESTED_NANOS.get();
+        long outer = nested[0];
+        nested[0] = 0;
+        long start = System.nanoTime();
+        try {
+            if (outbound != null) {
+                outbound.write(ctx, msg, promise);
+            } else {
+                ctx.write(msg, promise);
+            }
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            metrics.recordOutbound(bytes, elapsed - nested[0]);
+            nested[0] = outer + elapsed;
+        }
+    }
+
+    @Override
+    public void handlerAdded(ChannelHandlerContext ctx) throws Exception {
+        handler.handlerAdded(ctx);
+    }
+
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx) throws Exception {
+        handler.handlerRemoved(ctx);
+    }
+
+    @Override
+    public void channelRegistered(ChannelHandlerContext ctx) throws Exception {
+        if (inbound != null) {
+            inbound.channelRegistered(ctx);
+        } else {
+            ctx.fireChannelRegistered();
+        }
+    }
+
+    @Override
+    public void channelUnregistered(ChannelHandlerContext ctx) throws Exception {
+        if (inbound != null) {
+            inbound.channelUnregistered(ctx);
+        } else {
+            ctx.fireChannelUnregistered();
+        }
+    }
+
+    @Override
+    public void channelActive(ChannelHandlerContext ctx) throws Exception {
+        if (inbound != null) {
+            inbound.channelActive(ctx);
+        } else {
+            ctx.fireChannelActive();
+        }
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        if (inbound != null) {
+            inbound.channelInactive(ctx);
+        } else {
+            ctx.fireChannelInactive();
+        }
+    }
+
+    @Override
+    public void channelReadComplete(ChannelHandlerContext ctx) throws Exception {
+        if (inbound != null) {
+            inbound.channelReadComplete(ctx);
+        } else {
+            ctx.fireChannelReadComplete();
+        }
+    }
+
+    @Override
+    public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
+        if (inbound != null) {
+            inbound.userEventTriggered(ctx, evt);
+        } else {
+            ctx.fireUserEventTriggered(evt);
+        }
+    }
+
+    @Override
+    public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+        if (inbound != null) {
+            inbound.channelWritabilityChanged(ctx);
+        } else {
+            ctx.fireChannelWritabilityChanged();
+        }
+    }
+
+    @Override
+    @SuppressWarnings("deprecation")
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception {
+        // ChannelHandler.exceptionCaught 已废弃，但 ChannelHandlerAdapter 仍然通过它传播异常
+        handler.exceptionCaught(ctx, cause);
+    }
+
+    @Override
+    public void bind(ChannelHandlerContext ctx, SocketAddress localAddress, ChannelPromise promise) throws Exception {
+        if (outbound != null) {
+            outbound.bind(ctx, localAddress, promise);
+        } else {
+            ctx.bind(localAddress, promise);
+        }
+    }
+
+    @Override
+    public void connect(ChannelHandlerContext ctx, SocketAddress remoteAddress, SocketAddress localAddress,
+                        ChannelPromise promise) throws Exception {
+        if (outbound != null) {
+            outbound.connect(ctx, remoteAddress, localAddress, promise);
+        } else {
+            ctx.connect(remoteAddress, localAddress, promise);
+        }
+    }
+
+    @Override
+    public void disconnect(ChannelHandlerContext ctx, ChannelPromise promise) throws Exception {
+        if (outbound != null) {
+            outbound.disconnect(ctx, promise);
+        } else {
+            ctx.disconnect(promise);
+        }
+    }
+
+    @Override
+    public void close(ChannelHandlerContext ctx, ChannelPromise promise) throws Exception {
+        if (outbound != null) {
+            outbound.close(ctx, promise);
+        } else {
+            ctx.close(promise);
+        }
+    }
+
+    @Override
+    public void deregister(ChannelHandlerContext ctx, ChannelPromise promise) throws Exception {
+        if (outbound != null) {
+            outbound.deregister(ctx, promise);
+        } else {
+            ctx.deregister(promise);
+        }
+    }
+
+    @Override
+    public void read(ChannelHandlerContext ctx) throws Exception {
+        if (outbound != null) {
+            outbound.read(ctx);
+        } else {
+            ctx.read();
+        }
+    }
+
+    @Override
+    public void flush(ChannelHandlerContext ctx) throws Exception {
+        if (outbound != null) {
+            outbound.flush(ctx);
+        } else {
+            ctx.flush();
+        }
+    }
+}
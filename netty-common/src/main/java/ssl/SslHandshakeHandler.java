@@ -0,0 +1,57 @@
+package ssl;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.handler.ssl.SslHandler;
+import io.netty.handler.ssl.SslHandshakeCompletionEvent;
+
+
+/**
+ * 统计单个连接的握手耗时（从连接建立到握手完成），握手结束后删除自己，之后的消息不再经过这里
+ */
+final class SslHandshakeHandler extends ChannelInboundHandlerAdapter {
+
+    private final SslTermination termination;
+    private long startNanos;
+    private long startMillis;
+
+    SslHandshakeHandler(SslTermination termination) {
+        this.termination = termination;
+    }
+
+    @Override
+    public void handlerAdded(ChannelHandlerContext ctx) throws Exception {
+        // 服务端接受的连接在加入 Handler 时通常已经是 active，SslHandler 此时就开始握手
+        if (ctx.channel().isActive()) {
+            start();
+        }
+    }
+
+    @Override
+    public void channelActive(ChannelHandlerContext ctx) throws Exception {
+        if (startNanos == 0) {
+            start();
+        }
+        ctx.fireChannelActive();
+    }
+
+    private void start() {
+        startNanos = System.nanoTime();
+        startMillis = System.currentTimeMillis();
+    }
+
+    @Override
+    public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
+        if (evt instanceof SslHandshakeCompletionEvent) {
+            if (((SslHandshakeCompletionEvent) evt).isSuccess()) {
+                SslHandler sslHandler = ctx.pipeline().get(SslHandler.class);
+                boolean resumed = sslHandler.engine().getSession().getCreationTime() < startMillis;
+                termination.handshakeSucceeded(System.nanoTime() - startNanos, resumed, sslHandler.applicationProtocol());
+            } else {
+                termination.handshakeFailed();
+            }
+            ctx.pipeline().remove(this);
+        }
+        ctx.fireUserEventTriggered(evt);
+    }
+}
@@ -0,0 +1,424 @@
+package ssl;
+
+import io.netty.channel.ChannelPipeline;
+import io.netty.handler.codec.http2.Http2SecurityUtil;
+import io.netty.handler.ssl.ApplicationProtocolConfig;
+import io.netty.handler.ssl.ApplicationProtocolNames;
+import io.netty.handler.ssl.OpenSsl;
+import io.netty.handler.ssl.OpenSslSessionContext;
+import io.netty.handler.ssl.OpenSslSessionStats;
+import io.netty.handler.ssl.OpenSslSessionTicketKey;
+import io.netty.handler.ssl.SslContext;
+import io.netty.handler.ssl.SslContextBuilder;
+import io.netty.handler.ssl.SslHandler;
+import io.netty.handler.ssl.SslProvider;
+import io.netty.handler.ssl.SupportedCipherSuiteFilter;
+import io.netty.handler.ssl.util.SelfSignedCertificate;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import io.netty.util.internal.SystemPropertyUtil;
+import metrics.LatencyHistogram;
+import metrics.MetricsRegistry;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * TLS 终结：创建服务端 SslContext，为每个连接加入 SslHandler 和握手统计。
+ *
+ * - 优先使用 OpenSSL（netty-tcnative-boringssl-static），不可用时退回 JDK SSLEngine，可以通过 -Dssl.provider=openssl|jdk 强制指定
+ * - session ID 缓存和 session ticket 用于会话恢复，恢复的握手省去了证书校验和密钥交换。
+ *   OpenSSL 的 ticket 密钥由这里生成并定期轮换，保留上一个密钥解密轮换前签发的 ticket；
+ *   多个实例共享 ticket 时通过 ssl.ticketKeyFile 提供相同的密钥文件（48 字节一个密钥，第一个用于加密），轮换时重新读取。
+ *   JDK 的 ticket（TLS 1.3）由 JDK 自己管理
+ * - 传入 applicationProtocols 时启用 ALPN，包含 h2 时只使用 HTTP/2 允许的密码套件
+ * - 握手中的 delegated task（证书校验、密钥交换等耗时计算）交给单独的线程池执行，不阻塞 EventLoop。
+ *   线程池队列满时任务被拒绝，握手失败，相当于过载时拒绝新的 TLS 连接。
+ *   注意目前只有 JDK SSLEngine 会产生 delegated task，OpenSSL 的握手仍在 EventLoop 中完成，但计算开销小得多
+ *
+ * 配置项（系统属性）：
+ * - ssl.enabled：默认关闭
+ * - ssl.certChain / ssl.privateKey / ssl.keyPassword：PEM 格式的证书链和私钥，没有配置时使用自签名证书（仅用于测试）
+ * - ssl.sessionCacheSize / ssl.sessionTimeoutSeconds
+ * - ssl.ticketKeyRotationSeconds / ssl.ticketKeyFile
+ * - ssl.handshakeThreads（0 表示在 EventLoop 中执行 delegated task）/ ssl.maxPendingHandshakeTasks / ssl.handshakeTimeoutMillis
+ */
+public final class SslTermination implements SslTerminationMBean {
+
+    private static final int RATE_WINDOW_SECONDS = 10;
+
+    private final SslContext sslContext;
+    private final SslProvider provider;
+    private final long handshakeTimeoutMillis;
+    private final ThreadPoolExecutor handshakeExecutor;
+    private final Executor delegatedTaskExecutor;
+    private final OpenSslSessionContext openSslSessionContext;
+    private final ScheduledExecutorService ticketKeyRotation;
+    private final File ticketKeyFile;
+    private final SecureRandom random = new SecureRandom();
+    private OpenSslSessionTicketKey currentTicketKey;
+    private long ticketKeyFileModified;
+
+    private final LongAdder handshakes = new LongAdder();
+    private final LongAdder failedHandshakes = new LongAdder();
+    private final LongAdder resumedHandshakes = new LongAdder();
+    private final LatencyHistogram handshakeLatency = new LatencyHistogram();
+    private final LongAdder delegatedTasks = new LongAdder();
+    private final LongAdder rejectedDelegatedTasks = new LongAdder();
+    private final LatencyHistogram delegatedTaskLatency = new LatencyHistogram();
+    private final ConcurrentMap<String, LongAdder> applicationProtocols = new ConcurrentHashMap<String, LongAdder>();
+    // 按秒计数的环形窗口，slotSeconds 记录每个槽当前对应的秒
+    private final AtomicLongArray slotSeconds = new AtomicLongArray(RATE_WINDOW_SECONDS + 1);
+    private final AtomicLongArray slotCounts = new AtomicLongArray(RATE_WINDOW_SECONDS + 1);
+    // OpenSSL 的恢复次数来自 session 统计，reset 时记下基准值
+    private volatile long resumedBaseline;
+
+    private SslTermination(SslContext sslContext, SslProvider provider, long handshakeTimeoutMillis,
+                           int handshakeThreads, int maxPendingHandshakeTasks,
+                           long ticketKeyRotationSeconds, File ticketKeyFile) throws IOException {
+        this.sslContext = sslContext;
+        this.provider = provider;
+        this.handshakeTimeoutMillis = handshakeTimeoutMillis;
+        if (handshakeThreads > 0) {
+            handshakeExecutor = new ThreadPoolExecutor(handshakeThreads, handshakeThreads, 0, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<Runnable>(maxPendingHandshakeTasks),
+                    new DefaultThreadFactory("ssl-handshake", true));
+            delegatedTaskExecutor = this::executeDelegatedTask;
+        } else {
+            handshakeExecutor = null;
+            delegatedTaskExecutor = null;
+        }
+        this.ticketKeyFile = ticketKeyFile;
+        if (sslContext.sessionContext() instanceof OpenSslSessionContext) {
+            openSslSessionContext = (OpenSslSessionContext) sslContext.sessionContext();
+            rotateTicketKeys();
+            ticketKeyRotation = Executors.newSingleThreadScheduledExecutor(
+                    new DefaultThreadFactory("ssl-ticket-keys", true));
+            ticketKeyRotation.scheduleWithFixedDelay(() -> {
+                try {
+                    rotateTicketKeys();
+                } catch (Exception e) {
+                    System.out.println("Failed to rotate TLS ticket keys: " + e);
+                }
+            }, ticketKeyRotationSeconds, ticketKeyRotationSeconds, TimeUnit.SECONDS);
+        } else {
+            openSslSessionContext = null;
+            ticketKeyRotation = null;
+        }
+    }
+
+    /**
+     * 按系统属性创建并注册到 MetricsRegistry，ssl.enabled 不为 true 时返回 null。
+     *
+     * @param applicationProtocols ALPN 协议，按优先级排列，为空时不启用 ALPN
+     */
+    public static SslTermination fromProperties(String name, String... applicationProtocols) throws Exception {
+        if (!SystemPropertyUtil.getBoolean("ssl.enabled", false)) {
+            return null;
+        }
+        SslProvider provider = selectProvider(SystemPropertyUtil.get("ssl.provider", "auto"));
+        SslContextBuilder builder = newContextBuilder()
+                .sslProvider(provider)
+                .sessionCacheSize(SystemPropertyUtil.getLong("ssl.sessionCacheSize", 20480))
+                .sessionTimeout(SystemPropertyUtil.getLong("ssl.sessionTimeoutSeconds", 300));
+        if (applicationProtocols.length > 0) {
+            if (provider == SslProvider.OPENSSL && !OpenSsl.isAlpnSupported()) {
+                throw new IllegalStateException("ALPN is not supported by " + OpenSsl.versionString());
+            }
+            builder.applicationProtocolConfig(new ApplicationProtocolConfig(ApplicationProtocolConfig.Protocol.ALPN,
+                    ApplicationProtocolConfig.SelectorFailureBehavior.NO_ADVERTISE,
+                    ApplicationProtocolConfig.SelectedListenerFailureBehavior.ACCEPT,
+                    applicationProtocols));
+            if (Arrays.asList(applicationProtocols).contains(ApplicationProtocolNames.HTTP_2)) {
+                // RFC 7540 9.2.2 禁用了一批密码套件，使用它们协商 h2 的连接会被客户端断开
+                builder.ciphers(Http2SecurityUtil.CIPHERS, SupportedCipherSuiteFilter.INSTANCE);
+            }
+        }
+        String ticketKeyFile = SystemPropertyUtil.get("ssl.ticketKeyFile");
+        SslTermination termination = new SslTermination(builder.build(), provider,
+                SystemPropertyUtil.getLong("ssl.handshakeTimeoutMillis", 10000),
+                SystemPropertyUtil.getInt("ssl.handshakeThreads", Runtime.getRuntime().availableProcessors()),
+                SystemPropertyUtil.getInt("ssl.maxPendingHandshakeTasks", 1024),
+                Math.max(1, SystemPropertyUtil.getLong("ssl.ticketKeyRotationSeconds", 3600)),
+                ticketKeyFile == null ? null : new File(ticketKeyFile));
+        MetricsRegistry.register("SslTermination", "ssl", name, termination);
+        System.out.println("TLS: " + termination.getProvider() + ", ALPN: " + Arrays.toString(applicationProtocols));
+        return termination;
+    }
+
+    private static SslProvider selectProvider(String type) {
+        if ("jdk".equalsIgnoreCase(type)) {
+            return SslProvider.JDK;
+        }
+        if ("openssl".equalsIgnoreCase(type)) {
+            if (!OpenSsl.isAvailable()) {
+                throw new IllegalStateException("ssl.provider openssl is not available", OpenSsl.unavailabilityCause());
+            }
+            return SslProvider.OPENSSL;
+        }
+        if (!"auto".equalsIgnoreCase(type)) {
+            throw new IllegalArgumentException("unknown ssl.provider: " + type + " (expected: auto, openssl, jdk)");
+        }
+        return OpenSsl.isAvailable() ? SslProvider.OPENSSL : SslProvider.JDK;
+    }
+
+    private static SslContextBuilder newContextBuilder() throws Exception {
+        String certChain = SystemPropertyUtil.get("ssl.certChain");
+        String privateKey = SystemPropertyUtil.get("ssl.privateKey");
+        if (certChain != null && privateKey != null) {
+            return SslContextBuilder.forServer(new File(certChain), new File(privateKey),
+                    SystemPropertyUtil.get("ssl.keyPassword"));
+        }
+        SelfSignedCertificate certificate;
+        try {
+            certificate = new SelfSignedCertificate("localhost");
+        } catch (Throwable cause) {
+            // 新版本 JDK 不再开放 sun.security.x509，没有 BouncyCastle 时无法生成自签名证书
+            throw new IllegalStateException("ssl.certChain and ssl.privateKey are required", cause);
+        }
+        System.out.println("TLS: using a self-signed certificate for localhost");
+        return SslContextBuilder.forServer(certificate.certificate(), certificate.privateKey());
+    }
+
+    /**
+     * 在 Pipeline 末尾加入 SslHandler（名称为 ssl）和握手统计，应当位于所有编解码器之前。
+     * 只有 JDK provider 的 delegated task 会交给握手线程池，使用 OpenSSL 时握手仍在 EventLoop 中完成
+     */
+    public void addLast(ChannelPipeline pipeline) {
+        SslHandler sslHandler = delegatedTaskExecutor == null
+                ? sslContext.newHandler(pipeline.channel().alloc())
+                : sslContext.newHandler(pipeline.channel().alloc(), delegatedTaskExecutor);
+        sslHandler.setHandshakeTimeoutMillis(handshakeTimeoutMillis);
+        pipeline.addLast("ssl", sslHandler)
+                .addLast("sslHandshake", new SslHandshakeHandler(this));
+    }
+
+    public void shutdown() {
+        if (handshakeExecutor != null) {
+            handshakeExecutor.shutdown();
+        }
+        if (ticketKeyRotation != null) {
+            ticketKeyRotation.shutdown();
+        }
+    }
+
+    private void executeDelegatedTask(final Runnable task) {
+        final long submitNanos = System.nanoTime();
+        try {
+            handshakeExecutor.execute(() -> {
+                try {
+                    task.run();
+                } finally {
+                    delegatedTaskLatency.record(System.nanoTime() - submitNanos);
+                }
+            });
+            delegatedTasks.increment();
+        } catch (RejectedExecutionException e) {
+            // SslHandler 收到异常后让握手失败并关闭连接
+            rejectedDelegatedTasks.increment();
+            throw e;
+        }
+    }
+
+    /**
+     * 有密钥文件时在文件变化后重新加载，否则生成新的随机密钥，并保留上一个密钥用于解密
+     */
+    private synchronized void rotateTicketKeys() throws IOException {
+        if (ticketKeyFile != null) {
+            long modified = ticketKeyFile.lastModified();
+            if (modified == ticketKeyFileModified) {
+                return;
+            }
+            openSslSessionContext.setTicketKeys(readTicketKeys(Files.readAllBytes(ticketKeyFile.toPath())));
+            ticketKeyFileModified = modified;
+            return;
+        }
+        OpenSslSessionTicketKey key = new OpenSslSessionTicketKey(randomBytes(OpenSslSessionTicketKey.NAME_SIZE),
+                randomBytes(OpenSslSessionTicketKey.HMAC_KEY_SIZE), randomBytes(OpenSslSessionTicketKey.AES_KEY_SIZE));
+        if (currentTicketKey == null) {
+            openSslSessionContext.setTicketKeys(key);
+        } else {
+            openSslSessionContext.setTicketKeys(key, currentTicketKey);
+        }
+        currentTicketKey = key;
+    }
+
+    private static OpenSslSessionTicketKey[] readTicketKeys(byte[] bytes) {
+        int size = OpenSslSessionTicketKey.TICKET_KEY_SIZE;
+        if (bytes.length == 0 || bytes.length % size != 0) {
+            throw new IllegalArgumentException("ticket key file length must be a multiple of " + size);
+        }
+        OpenSslSessionTicketKey[] keys = new OpenSslSessionTicketKey[bytes.length / size];
+        for (int i = 0; i < keys.length; i++) {
+            int offset = i * size;
+            int hmacOffset = offset + OpenSslSessionTicketKey.NAME_SIZE;
+            int aesOffset = hmacOffset + OpenSslSessionTicketKey.HMAC_KEY_SIZE;
+            keys[i] = new OpenSslSessionTicketKey(Arrays.copyOfRange(bytes, offset, hmacOffset),
+                    Arrays.copyOfRange(bytes, hmacOffset, aesOffset),
+                    Arrays.copyOfRange(bytes, aesOffset, offset + size));
+        }
+        return keys;
+    }
+
+    private byte[] randomBytes(int length) {
+        byte[] bytes = new byte[length];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+
+    /**
+     * 由 SslHandshakeHandler 在握手成功后调用。
+     * resumed 按 session 的创建时间早于握手开始时间判断，只用于 JDK；OpenSSL 的 session 时间精度是秒，恢复次数取自 session 统计
+     */
+    void handshakeSucceeded(long nanos, boolean resumed, String applicationProtocol) {
+        handshakes.increment();
+        handshakeLatency.record(nanos);
+        if (resumed) {
+            resumedHandshakes.increment();
+        }
+        if (applicationProtocol != null) {
+            LongAdder count = applicationProtocols.get(applicationProtocol);
+            if (count == null) {
+                LongAdder created = new LongAdder();
+                count = applicationProtocols.putIfAbsent(applicationProtocol, created);
+                if (count == null) {
+                    count = created;
+                }
+            }
+            count.increment();
+        }
+        long second = TimeUnit.NANOSECONDS.toSeconds(System.nanoTime());
+        int slot = (int) (second % slotSeconds.length());
+        long slotSecond = slotSeconds.get(slot);
+        if (slotSecond != second && slotSeconds.compareAndSet(slot, slotSecond, second)) {
+            slotCounts.set(slot, 0);
+        }
+        slotCounts.incrementAndGet(slot);
+    }
+
+    void handshakeFailed() {
+        failedHandshakes.increment();
+    }
+
+    @Override
+    public String getProvider() {
+        return provider == SslProvider.OPENSSL ? "OPENSSL (" + OpenSsl.versionString() + ")" : "JDK";
+    }
+
+    @Override
+    public long getHandshakes() {
+        return handshakes.sum();
+    }
+
+    @Override
+    public long getFailedHandshakes() {
+        return failedHandshakes.sum();
+    }
+
+    @Override
+    public long getResumedHandshakes() {
+        if (openSslSessionContext == null) {
+            return resumedHandshakes.sum();
+        }
+        return openSslResumed() - resumedBaseline;
+    }
+
+    private long openSslResumed() {
+        OpenSslSessionStats stats = openSslSessionContext.stats();
+        return stats.hits() + stats.ticketKeyResume();
+    }
+
+    @Override
+    public double getHandshakesPerSecond() {
+        // 不计当前这一秒，它还没有结束
+        long current = TimeUnit.NANOSECONDS.toSeconds(System.nanoTime());
+        long total = 0;
+        for (int i = 0; i < slotSeconds.length(); i++) {
+            long second = slotSeconds.get(i);
+            if (second < current && second >= current - RATE_WINDOW_SECONDS) {
+                total += slotCounts.get(i);
+            }
+        }
+        return (double) total / RATE_WINDOW_SECONDS;
+    }
+
+    @Override
+    public double getHandshakeLatencyMean() {
+        return handshakeLatency.meanNanos();
+    }
+
+    @Override
+    public long getHandshakeLatencyP50() {
+        return handshakeLatency.percentileNanos(50);
+    }
+
+    @Override
+    public long getHandshakeLatencyP99() {
+        return handshakeLatency.percentileNanos(99);
+    }
+
+    @Override
+    public long getHandshakeLatencyMax() {
+        return handshakeLatency.maxNanos();
+    }
+
+    @Override
+    public long getDelegatedTasks() {
+        return delegatedTasks.sum();
+    }
+
+    @Override
+    public long getRejectedDelegatedTasks() {
+        return rejectedDelegatedTasks.sum();
+    }
+
+    @Override
+    public int getPendingDelegatedTasks() {
+        return handshakeExecutor == null ? 0 : handshakeExecutor.getQueue().size();
+    }
+
+    @Override
+    public double getDelegatedTaskLatencyMean() {
+        return delegatedTaskLatency.meanNanos();
+    }
+
+    @Override
+    public String getApplicationProtocols() {
+        Map<String, Long> counts = new TreeMap<String, Long>();
+        for (Map.Entry<String, LongAdder> entry : applicationProtocols.entrySet()) {
+            counts.put(entry.getKey(), entry.getValue().sum());
+        }
+        return counts.toString();
+    }
+
+    @Override
+    public void reset() {
+        handshakes.reset();
+        failedHandshakes.reset();
+        resumedHandshakes.reset();
+        handshakeLatency.reset();
+        delegatedTasks.reset();
+        rejectedDelegatedTasks.reset();
+        delegatedTaskLatency.reset();
+        applicationProtocols.clear();
+        if (openSslSessionContext != null) {
+            resumedBaseline = openSslResumed();
+        }
+    }
+}
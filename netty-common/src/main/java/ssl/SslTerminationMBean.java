@@ -0,0 +1,52 @@
+package ssl;
+
+/**
+ * 通过 JMX 暴露的 TLS 握手统计，延迟单位为纳秒
+ */
+public interface SslTerminationMBean {
+
+    /**
+     * 实际使用的 SSLEngine 实现：OPENSSL 或 JDK
+     */
+    String getProvider();
+
+    long getHandshakes();
+
+    long getFailedHandshakes();
+
+    /**
+     * 通过 session ID 缓存或 session ticket 恢复的握手次数
+     */
+    long getResumedHandshakes();
+
+    /**
+     * 最近 10 秒平均每秒完成的握手次数
+     */
+    double getHandshakesPerSecond();
+
+    double getHandshakeLatencyMean();
+
+    long getHandshakeLatencyP50();
+
+    long getHandshakeLatencyP99();
+
+    long getHandshakeLatencyMax();
+
+    /**
+     * 提交到握手线程池的 delegated task 数量，被拒绝的任务会让握手失败
+     */
+    long getDelegatedTasks();
+
+    long getRejectedDelegatedTasks();
+
+    int getPendingDelegatedTasks();
+
+    double getDelegatedTaskLatencyMean();
+
+    /**
+     * ALPN 协商结果及次数，例如 h2=10, http/1.1=3
+     */
+    String getApplicationProtocols();
+
+    void reset();
+}
@@ -0,0 +1,182 @@
+package transport;
+
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.ServerChannel;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollChannelOption;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollMode;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.group.ChannelGroup;
+import io.netty.channel.group.DefaultChannelGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.util.NettyRuntime;
+import io.netty.util.concurrent.GlobalEventExecutor;
+import io.netty.util.internal.SystemPropertyUtil;
+
+import java.net.InetSocketAddress;
+
+
+/**
+ * 传输层实现的选择。
+ *
+ * Linux 下优先使用 Epoll（JNI 直接调用 epoll，边缘触发，支持 SO_REUSEPORT），其他平台或 native 库加载失败时退回 NIO。
+ * 可以通过 -Dtransport.type=nio|epoll 强制指定。
+ *
+ * 开启 SO_REUSEPORT 后，同一个端口会绑定多个 ServerSocketChannel，每个都注册在 Boss 的不同 EventLoop 上，
+ * 由内核把新连接分散到多个 accept 线程，避免单个 Boss 线程成为瓶颈。accept 线程数通过 -Dtransport.acceptors 设置。
+ */
+public enum Transport {
+
+    EPOLL("epoll") {
+        @Override
+        public boolean isAvailable() {
+            return Epoll.isAvailable();
+        }
+
+        @Override
+        public EventLoopGroup newEventLoopGroup(int nThreads) {
+            return new EpollEventLoopGroup(nThreads);
+        }
+
+        @Override
+        public Class<? extends ServerChannel> serverChannelClass() {
+            return EpollServerSocketChannel.class;
+        }
+
+        @Override
+        public Class<? extends SocketChannel> socketChannelClass() {
+            return EpollSocketChannel.class;
+        }
+
+        @Override
+        public int acceptors() {
+            return ACCEPTORS;
+        }
+
+        @Override
+        void configure(ServerBootstrap b) {
+            b.option(EpollChannelOption.SO_REUSEPORT, acceptors() > 1)
+                    .childOption(EpollChannelOption.EPOLL_MODE, EpollMode.EDGE_TRIGGERED);
+        }
+    },
+
+    NIO("nio") {
+        @Override
+        public boolean isAvailable() {
+            return true;
+        }
+
+        @Override
+        public EventLoopGroup newEventLoopGroup(int nThreads) {
+            return new NioEventLoopGroup(nThreads);
+        }
+
+        @Override
+        public Class<? extends ServerChannel> serverChannelClass() {
+            return NioServerSocketChannel.class;
+        }
+
+        @Override
+        public Class<? extends SocketChannel> socketChannelClass() {
+            return NioSocketChannel.class;
+        }
+
+        @Override
+        public int acceptors() {
+            // JDK 的 ServerSocketChannel 不支持 SO_REUSEPORT，只能有一个 accept 线程
+            return 1;
+        }
+
+        @Override
+        void configure(ServerBootstrap b) {
+        }
+    };
+
+    private static final int ACCEPTORS = Math.max(1,
+            SystemPropertyUtil.getInt("transport.acceptors", NettyRuntime.availableProcessors()));
+
+    private final String displayName;
+
+    Transport(String displayName) {
+        this.displayName = displayName;
+    }
+
+    public abstract boolean isAvailable();
+
+    /**
+     * nThreads 为 0 时使用 Netty 的默认线程数（CPU 核数 * 2）
+     */
+    public abstract EventLoopGroup newEventLoopGroup(int nThreads);
+
+    public abstract Class<? extends ServerChannel> serverChannelClass();
+
+    public abstract Class<? extends SocketChannel> socketChannelClass();
+
+    /**
+     * 同一端口上绑定的 ServerChannel 数量
+     */
+    public abstract int acceptors();
+
+    abstract void configure(ServerBootstrap b);
+
+    /**
+     * Boss 线程数与 accept 线程数一致，每个 ServerChannel 独占一个 Boss 线程
+     */
+    public EventLoopGroup newBossGroup() {
+        return newEventLoopGroup(acceptors());
+    }
+
+    public EventLoopGroup newWorkerGroup() {
+        return newEventLoopGroup(0);
+    }
+
+    /**
+     * 按 ServerBootstrap 中设置的 localAddress 绑定端口，开启 SO_REUSEPORT 时会绑定多次。
+     * 返回的 ChannelGroup 包含所有绑定成功的 ServerChannel，可以通过 newCloseFuture() 等待全部关闭。
+     */
+    public ChannelGroup bind(ServerBootstrap b) throws InterruptedException {
+        configure(b);
+        ChannelGroup serverChannels = new DefaultChannelGroup(displayName + "-acceptors", GlobalEventExecutor.INSTANCE);
+        int acceptors = acceptors();
+        for (int i = 0; i < acceptors; i++) {
+            serverChannels.add(b.bind().sync().channel());
+        }
+        System.out.println("Transport: " + displayName + ", acceptors: " + acceptors);
+        return serverChannels;
+    }
+
+    public ChannelGroup bind(ServerBootstrap b, int port) throws InterruptedException {
+        return bind(b.localAddress(new InetSocketAddress(port)));
+    }
+
+    @Override
+    public String toString() {
+        return displayName;
+    }
+
+    /**
+     * 选择当前环境下可用的最优传输实现
+     */
+    public static Transport select() {
+        String type = SystemPropertyUtil.get("transport.type");
+        if (type != null) {
+            for (Transport transport : values()) {
+                if (transport.displayName.equalsIgnoreCase(type)) {
+                    if (!transport.isAvailable()) {
+                        throw new IllegalStateException("transport " + type + " is not available",
+                                transport == EPOLL ? Epoll.unavailabilityCause() : null);
+                    }
+                    return transport;
+                }
+            }
+            throw new IllegalArgumentException("unknown transport.type: " + type + " (expected: epoll, nio)");
+        }
+        return EPOLL.isAvailable() ? EPOLL : NIO;
+    }
+}
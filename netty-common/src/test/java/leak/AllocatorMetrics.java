@@ -0,0 +1,74 @@
+package leak;
+
+import io.netty.buffer.PoolArenaMetric;
+import io.netty.buffer.PoolChunkListMetric;
+import io.netty.buffer.PoolChunkMetric;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocatorMetric;
+
+import java.util.List;
+
+
+/**
+ * PooledByteBufAllocator 的 arena / chunk 使用情况
+ */
+public final class AllocatorMetrics {
+
+    private AllocatorMetrics() {
+    }
+
+    /**
+     * 还没有释放回 arena 的分配次数。线程缓存中的内存也算在内，精确统计时需要关闭线程缓存
+     */
+    public static long activeAllocations(PooledByteBufAllocator allocator) {
+        PooledByteBufAllocatorMetric metric = allocator.metric();
+        return activeAllocations(metric.directArenas()) + activeAllocations(metric.heapArenas());
+    }
+
+    private static long activeAllocations(List<PoolArenaMetric> arenas) {
+        long active = 0;
+        for (PoolArenaMetric arena : arenas) {
+            active += arena.numActiveAllocations();
+        }
+        return active;
+    }
+
+    public static String format(PooledByteBufAllocator allocator) {
+        PooledByteBufAllocatorMetric metric = allocator.metric();
+        StringBuilder sb = new StringBuilder();
+        sb.append("Allocator: chunkSize ").append(metric.chunkSize())
+                .append(", usedDirectMemory ").append(metric.usedDirectMemory())
+                .append(", usedHeapMemory ").append(metric.usedHeapMemory())
+                .append(", threadLocalCaches ").append(metric.numThreadLocalCaches());
+        appendArenas(sb, "direct", metric.directArenas());
+        appendArenas(sb, "heap", metric.heapArenas());
+        return sb.toString();
+    }
+
+    private static void appendArenas(StringBuilder sb, String type, List<PoolArenaMetric> arenas) {
+        for (int i = 0; i < arenas.size(); i++) {
+            PoolArenaMetric arena = arenas.get(i);
+            if (arena.numAllocations() == 0) {
+                continue;
+            }
+            sb.append(System.lineSeparator())
+                    .append("  ").append(type).append(" arena ").append(i)
+                    .append(": allocations ").append(arena.numAllocations())
+                    .append(" (tiny ").append(arena.numTinyAllocations())
+                    .append(", small ").append(arena.numSmallAllocations())
+                    .append(", normal ").append(arena.numNormalAllocations())
+                    .append(", huge ").append(arena.numHugeAllocations())
+                    .append("), deallocations ").append(arena.numDeallocations())
+                    .append(", active ").append(arena.numActiveAllocations())
+                    // 这个版本的 numActiveBytes 统计的是已分配 chunk 的大小
+                    .append(", chunk bytes ").append(arena.numActiveBytes());
+            for (PoolChunkListMetric chunkList : arena.chunkLists()) {
+                for (PoolChunkMetric chunk : chunkList) {
+                    sb.append(System.lineSeparator())
+                            .append("    chunk usage ").append(chunk.usage()).append('%')
+                            .append(", free ").append(chunk.freeBytes()).append(" / ").append(chunk.chunkSize());
+                }
+            }
+        }
+    }
+}
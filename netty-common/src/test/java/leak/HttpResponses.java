@@ -0,0 +1,140 @@
+package leak;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufOutputStream;
+import io.netty.channel.FileRegion;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.HttpContent;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpMessage;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpResponseDecoder;
+import io.netty.handler.codec.http.HttpStatusClass;
+import io.netty.handler.codec.http.LastHttpContent;
+import io.netty.util.CharsetUtil;
+import io.netty.util.ReferenceCountUtil;
+
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+
+
+/**
+ * 把 HTTP/1 服务端 EmbeddedChannel 写出的数据解码成响应，供场景检查状态码、响应头和响应体。
+ *
+ * 出站的 FileRegion 读成字节之后一起解码，读取后原来的消息都会释放。
+ * HEAD 请求的响应有 Content-Length 但没有响应体，需要先用 request 按顺序登记请求方法。
+ */
+public final class HttpResponses {
+
+    private final LeakCheck check;
+    private final Queue<HttpMethod> methods = new ArrayDeque<HttpMethod>();
+    private final EmbeddedChannel decoder;
+    private HttpResponse current;
+    private StringBuilder body;
+
+    public HttpResponses(LeakCheck check) {
+        this.check = check;
+        this.decoder = check.newChannel(new HttpResponseDecoder() {
+            @Override
+            protected boolean isContentAlwaysEmpty(HttpMessage msg) {
+                if (((HttpResponse) msg).status().codeClass() == HttpStatusClass.INFORMATIONAL) {
+                    // 1xx 之后还有这个请求的最终响应
+                    return super.isContentAlwaysEmpty(msg);
+                }
+                return HttpMethod.HEAD.equals(methods.poll()) || super.isContentAlwaysEmpty(msg);
+            }
+        });
+    }
+
+    /**
+     * 登记发出的请求的方法，和响应按顺序对应
+     */
+    public HttpResponses request(HttpMethod method) {
+        methods.add(method);
+        return this;
+    }
+
+    /**
+     * 处理完 server 中的定时任务，返回这段时间写出的完整响应
+     */
+    public List<Response> read(EmbeddedChannel server) throws IOException {
+        server.runPendingTasks();
+        List<Response> responses = new ArrayList<Response>();
+        Object msg;
+        while ((msg = server.readOutbound()) != null) {
+            decoder.writeInbound(toByteBuf(msg));
+            Object decoded;
+            while ((decoded = decoder.readInbound()) != null) {
+                try {
+                    if (decoded instanceof HttpResponse) {
+                        current = (HttpResponse) decoded;
+                        body = new StringBuilder();
+                    }
+                    if (decoded instanceof HttpContent) {
+                        body.append(((HttpContent) decoded).content().toString(CharsetUtil.UTF_8));
+                    }
+                    if (decoded instanceof LastHttpContent) {
+                        responses.add(new Response(current.status().code(), current.headers(), body.toString()));
+                        current = null;
+                    }
+                } finally {
+                    ReferenceCountUtil.release(decoded);
+                }
+            }
+        }
+        return responses;
+    }
+
+    private ByteBuf toByteBuf(Object msg) throws IOException {
+        if (!(msg instanceof FileRegion)) {
+            return (ByteBuf) msg;
+        }
+        FileRegion region = (FileRegion) msg;
+        ByteBuf bytes = check.allocator().buffer((int) region.count());
+        try {
+            WritableByteChannel out = Channels.newChannel(new ByteBufOutputStream(bytes));
+            while (region.transferred() < region.count()) {
+                region.transferTo(out, region.transferred());
+            }
+        } finally {
+            region.release();
+        }
+        return bytes;
+    }
+
+    public static final class Response {
+
+        private final int status;
+        private final HttpHeaders headers;
+        private final String body;
+
+        Response(int status, HttpHeaders headers, String body) {
+            this.status = status;
+            this.headers = headers;
+            this.body = body;
+        }
+
+        public int status() {
+            return status;
+        }
+
+        public HttpHeaders headers() {
+            return headers;
+        }
+
+        public String body() {
+            return body;
+        }
+
+        @Override
+        public String toString() {
+            return status + " " + headers + " " + body.length() + " bytes";
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package leak;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.util.ReferenceCountUtil;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+
+/**
+ * 泄漏检查：在 EmbeddedChannel 中按场景运行 Pipeline，检查 ByteBuf 是否都被正确释放，
+ * 场景中用 expect 检查响应状态、连接是否保持等行为，不满足时记为这个场景的失败。
+ *
+ * 两种检查同时进行：
+ * - 每个场景使用独立的、关闭了线程缓存的 PooledByteBufAllocator，场景结束（Channel 关闭并释放剩余消息）后
+ *   还没有归还给 arena 的内存就是泄漏，结果是确定的，并且能定位到场景
+ * - PARANOID 级别的 ResourceLeakDetector，覆盖 Unpooled 等不经过 Channel 分配器创建的 ByteBuf
+ *
+ * 必须在创建任何 ByteBuf 之前创建 LeakCheck（见 LeakDetection）。
+ * 发现泄漏时 verify 抛出 IllegalStateException，通过 exec-maven-plugin 运行时构建失败。
+ */
+public final class LeakCheck {
+
+    private final String name;
+    private final List<String> failures = new ArrayList<String>();
+    private final List<EmbeddedChannel> channels = new ArrayList<EmbeddedChannel>();
+    private PooledByteBufAllocator allocator;
+    private int scenarios;
+
+    public LeakCheck(String name) {
+        LeakDetection.install();
+        this.name = name;
+    }
+
+    /**
+     * 创建使用当前场景分配器的 EmbeddedChannel，场景结束时自动关闭
+     */
+    public EmbeddedChannel newChannel(ChannelHandler... handlers) {
+        EmbeddedChannel channel = new EmbeddedChannel();
+        channel.config().setAllocator(allocator);
+        channel.pipeline().addLast(handlers);
+        channels.add(channel);
+        return channel;
+    }
+
+    public PooledByteBufAllocator allocator() {
+        return allocator;
+    }
+
+    /**
+     * 处理完 EmbeddedChannel 中的定时任务和出站消息，返回出站消息数量。出站消息读取后直接释放
+     */
+    public int drainOutbound(EmbeddedChannel channel) {
+        channel.runPendingTasks();
+        int count = 0;
+        Object msg;
+        while ((msg = channel.readOutbound()) != null) {
+            ReferenceCountUtil.release(msg);
+            count++;
+        }
+        return count;
+    }
+
+    public ByteBuf buffer(byte[] bytes) {
+        return allocator.buffer(bytes.length).writeBytes(bytes);
+    }
+
+    public void run(String scenario, Scenario body) {
+        scenarios++;
+        // 关闭线程缓存，释放的内存立即回到 arena，activeAllocations 才准确
+        allocator = new PooledByteBufAllocator(true, 1, 1, 8192, 11, 0, 0, 0, false);
+        boolean failed = false;
+        try {
+            body.run(this);
+        } catch (Throwable cause) {
+            failures.add(scenario + ": " + cause);
+            failed = true;
+        } finally {
+            for (EmbeddedChannel channel : channels) {
+                try {
+                    channel.finishAndReleaseAll();
+                } catch (Throwable cause) {
+                    // 关闭时重新抛出的是 Pipeline 中未处理的异常，不影响泄漏检查
+                    System.out.println("[" + name + "] " + scenario + ": unhandled " + cause);
+                }
+            }
+            channels.clear();
+        }
+        long active = AllocatorMetrics.activeAllocations(allocator);
+        if (active != 0) {
+            failures.add(scenario + ": " + active + " buffers not released" + System.lineSeparator()
+                    + AllocatorMetrics.format(allocator));
+        }
+        System.out.println("[" + name + "] " + scenario + ": " + (active != 0 ? "LEAK" : failed ? "FAILED" : "ok"));
+    }
+
+    /**
+     * 场景中的检查，不相等时抛出 AssertionError，由 run 记为这个场景的失败
+     */
+    public static void expect(Object expected, Object actual, String what) {
+        if (!Objects.equals(expected, actual)) {
+            throw new AssertionError(what + ": expected " + expected + ", actual " + actual);
+        }
+    }
+
+    /**
+     * 检查 ResourceLeakDetector 的报告，输出结果，有失败时抛出异常
+     */
+    public void verify() throws InterruptedException {
+        LeakDetection.collect();
+        List<String> leaks = LeakDetection.leaks();
+        for (String leak : leaks) {
+            failures.add("ResourceLeakDetector: " + leak);
+        }
+        System.out.println("[" + name + "] " + scenarios + " scenarios, " + failures.size() + " failures");
+        if (!failures.isEmpty()) {
+            StringBuilder sb = new StringBuilder(name).append(" check failed:");
+            for (String failure : failures) {
+                sb.append(System.lineSeparator()).append(failure);
+            }
+            throw new IllegalStateException(sb.toString());
+        }
+    }
+
+    public interface Scenario {
+        void run(LeakCheck check) throws Exception;
+    }
+}
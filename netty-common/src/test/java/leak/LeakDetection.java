@@ -0,0 +1,95 @@
+package leak;
+
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import io.netty.util.ResourceLeakDetector;
+import io.netty.util.ResourceLeakDetectorFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+
+/**
+ * 记录 ResourceLeakDetector 报告的泄漏，供 LeakCheck 判断是否失败。
+ *
+ * ByteBuf 的泄漏检测器在 AbstractByteBuf 类初始化时创建，install 必须在任何 ByteBuf 被创建之前调用，
+ * 否则使用的还是默认的只打日志的检测器。
+ *
+ * 泄漏要等 ByteBuf 被 GC 回收、之后再有 ByteBuf 被创建时才会报告，所以检查之前需要调用 collect。
+ */
+public final class LeakDetection {
+
+    private static final List<String> LEAKS = new CopyOnWriteArrayList<String>();
+    private static final int COLLECT_ROUNDS = 5;
+
+    private static volatile boolean installed;
+
+    private LeakDetection() {
+    }
+
+    /**
+     * 使用 PARANOID 级别：每个 ByteBuf 都跟踪并记录访问轨迹
+     */
+    public static synchronized void install() {
+        if (installed) {
+            return;
+        }
+        ResourceLeakDetector.setLevel(ResourceLeakDetector.Level.PARANOID);
+        ResourceLeakDetectorFactory.setResourceLeakDetectorFactory(new RecordingLeakDetectorFactory());
+        installed = true;
+    }
+
+    /**
+     * 触发 GC，让已经不可达的 ByteBuf 进入引用队列，再创建 ByteBuf 让检测器处理引用队列
+     */
+    public static void collect() throws InterruptedException {
+        for (int i = 0; i < COLLECT_ROUNDS; i++) {
+            System.gc();
+            Thread.sleep(50);
+            ByteBufAllocator.DEFAULT.buffer(1).release();
+            UnpooledByteBufAllocator.DEFAULT.buffer(1).release();
+        }
+    }
+
+    public static List<String> leaks() {
+        return new ArrayList<String>(LEAKS);
+    }
+
+    public static int leakCount() {
+        return LEAKS.size();
+    }
+
+    private static final class RecordingLeakDetectorFactory extends ResourceLeakDetectorFactory {
+
+        @Override
+        @SuppressWarnings("deprecation")
+        public <T> ResourceLeakDetector<T> newResourceLeakDetector(Class<T> resource, int samplingInterval, long maxActive) {
+            return new RecordingLeakDetector<T>(resource, samplingInterval);
+        }
+
+        @Override
+        public <T> ResourceLeakDetector<T> newResourceLeakDetector(Class<T> resource, int samplingInterval) {
+            return new RecordingLeakDetector<T>(resource, samplingInterval);
+        }
+    }
+
+    private static final class RecordingLeakDetector<T> extends ResourceLeakDetector<T> {
+
+        RecordingLeakDetector(Class<?> resourceType, int samplingInterval) {
+            super(resourceType, samplingInterval);
+        }
+
+        @Override
+        protected void reportTracedLeak(String resourceType, String records) {
+            LEAKS.add(resourceType + records);
+            super.reportTracedLeak(resourceType, records);
+        }
+
+        @Override
+        protected void reportUntracedLeak(String resourceType) {
+            LEAKS.add(resourceType + " (no access records)");
+            super.reportUntracedLeak(resourceType);
+        }
+    }
+}